@@ -9,12 +9,17 @@ import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class LeaderboardController implements MessageHandler {
     @FXML private TableView<PlayerScore> leaderboardTable;
     @FXML private TableColumn<PlayerScore, Integer> rankColumn;
     @FXML private TableColumn<PlayerScore, String> usernameColumn;
     @FXML private TableColumn<PlayerScore, Integer> scoreColumn;
+    @FXML private Label titleLabel;
+    @FXML private ChoiceBox<String> windowChoice;
     @FXML private Button backToLobbyButton;
     
     private SceneManager sceneManager;
@@ -36,8 +41,12 @@ public class LeaderboardController implements MessageHandler {
         scoreColumn.setCellValueFactory(cellData -> 
             cellData.getValue().scoreProperty().asObject());
         
-        // Load sample data for now
-        loadSampleData();
+        // "all", "daily" and "weekly" always exist; GAME_OVER adds the game's event board
+        windowChoice.getItems().setAll("all", "daily", "weekly");
+        windowChoice.setValue("all");
+        windowChoice.setOnAction(event -> requestLeaderboard());
+        
+        requestLeaderboard();
     }
     
     @FXML
@@ -50,24 +59,69 @@ public class LeaderboardController implements MessageHandler {
     @Override
     public void handleMessage(Message message) {
         Platform.runLater(() -> {
-            // TODO: Handle actual leaderboard data
-            // For now, just load sample data
-            if (message.getType() == MessageType.GAME_OVER) {
-                // Load leaderboard after game ends
-                loadSampleData();
+            if (message.getType() == MessageType.LEADERBOARD) {
+                showLeaderboard((Map<?, ?>) message.getContent());
+            } else if (message.getType() == MessageType.GAME_OVER) {
+                showWindows((Map<?, ?>) message.getContent());
+                // The server records the game before announcing it, so the board is current
+                requestLeaderboard();
             }
         });
     }
     
-    private void loadSampleData() {
+    private void requestLeaderboard() {
+        Map<String, Object> request = new HashMap<>();
+        request.put("window", windowChoice.getValue());
+        networkManager.sendMessage(MessageType.LEADERBOARD_REQUEST, request);
+    }
+    
+    /**
+     * Offers every board the finished game counted towards.
+     */
+    private void showWindows(Map<?, ?> gameOver) {
+        if (gameOver == null || !(gameOver.get("leaderboards") instanceof List)) {
+            return;
+        }
+        for (Object window : (List<?>) gameOver.get("leaderboards")) {
+            if (!windowChoice.getItems().contains(window.toString())) {
+                windowChoice.getItems().add(window.toString());
+            }
+        }
+    }
+    
+    /**
+     * Shows the server's top players, followed by the rows around our own
+     * rank when we are not among them.
+     */
+    private void showLeaderboard(Map<?, ?> content) {
         scores.clear();
-        scores.addAll(
-            new PlayerScore(1, "Player1", 1000),
-            new PlayerScore(2, "Player2", 800),
-            new PlayerScore(3, "Player3", 600),
-            new PlayerScore(4, "Player4", 400),
-            new PlayerScore(5, "Player5", 200)
-        );
+        int lastRank = addRows((List<?>) content.get("top"), 0);
+        
+        Map<?, ?> me = (Map<?, ?>) content.get("me");
+        if (me != null) {
+            addRows((List<?>) content.get("around"), lastRank);
+            if (titleLabel != null) {
+                titleLabel.setText("Your rank (" + content.get("window") + "): #" + me.get("rank")
+                        + " of " + content.get("players"));
+            }
+        }
+    }
+    
+    private int addRows(List<?> rows, int afterRank) {
+        int lastRank = afterRank;
+        if (rows == null) {
+            return lastRank;
+        }
+        for (Object row : rows) {
+            Map<?, ?> entry = (Map<?, ?>) row;
+            int rank = ((Number) entry.get("rank")).intValue();
+            if (rank > lastRank) {
+                scores.add(new PlayerScore(rank, (String) entry.get("username"),
+                        ((Number) entry.get("score")).intValue()));
+                lastRank = rank;
+            }
+        }
+        return lastRank;
     }
     
     public void setSceneManager(SceneManager sceneManager) {
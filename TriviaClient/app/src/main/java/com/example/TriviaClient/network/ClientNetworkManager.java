@@ -4,14 +4,18 @@ import java.io.*;
 import java.net.Socket;
 import java.util.concurrent.*;
 import com.example.common.Message;
+import com.example.common.MessageCodec;
 import com.example.common.MessageType;
 import java.net.SocketException;
 public class ClientNetworkManager {
     private static ClientNetworkManager instance;
     
+    // Wire format; -Dtrivia.codec=java falls back to plain object serialization
+    private static final MessageCodec CODEC = MessageCodec.named(System.getProperty("trivia.codec", "binary"));
+    
     private Socket socket;
-    private ObjectOutputStream outputStream;
-    private ObjectInputStream inputStream;
+    private MessageCodec.MessageWriter outputStream;
+    private MessageCodec.MessageReader inputStream;
     private volatile boolean isConnected = false;
     private String serverHost = "localhost";
     private int serverPort = 12345;  // CHANGED: Default to 12345 to match server
@@ -45,9 +49,10 @@ public class ClientNetworkManager {
                 System.out.println("Connecting to " + host + ":" + port);
                 socket = new Socket(host, port);
                 
-                // IMPORTANT: Create ObjectOutputStream BEFORE ObjectInputStream
-                outputStream = new ObjectOutputStream(socket.getOutputStream());
-                inputStream = new ObjectInputStream(socket.getInputStream());
+                // IMPORTANT: Open the writer BEFORE the reader; the server picks
+                // its reply format from the preamble the writer sends
+                outputStream = CODEC.openWriter(socket.getOutputStream());
+                inputStream = CODEC.openReader(new BufferedInputStream(socket.getInputStream()));
                 
                 isConnected = true;
                 
@@ -83,18 +88,19 @@ public class ClientNetworkManager {
         listenerService.submit(() -> {
             while (isConnected && !Thread.currentThread().isInterrupted()) {
                 try {
-                    Object obj = inputStream.readObject();
-                    if (obj instanceof Message) {
-                        Message message = (Message) obj;
-                        if (messageHandler != null) {
-                            try {
-                                javafx.application.Platform.runLater(() -> {
-                                    messageHandler.handleMessage(message);
-                                });
-                            } catch (IllegalStateException e) {
-                                // Not in JavaFX thread, handle directly
+                    Message message = inputStream.read();
+                    if (message == null) {
+                        System.out.println("Connection closed by server");
+                        break;
+                    }
+                    if (messageHandler != null) {
+                        try {
+                            javafx.application.Platform.runLater(() -> {
                                 messageHandler.handleMessage(message);
-                            }
+                            });
+                        } catch (IllegalStateException e) {
+                            // Not in JavaFX thread, handle directly
+                            messageHandler.handleMessage(message);
                         }
                     }
                 } catch (EOFException e) {
@@ -134,9 +140,7 @@ public class ClientNetworkManager {
         
         synchronized (this) {
             try {
-                outputStream.writeObject(message);
-                outputStream.flush();
-                outputStream.reset();
+                outputStream.write(message);
             } catch (IOException e) {
                 System.err.println("Failed to send message: " + e.getMessage());
                 disconnect();
@@ -166,18 +170,6 @@ public class ClientNetworkManager {
                 }
             }
             
-            try {
-                if (inputStream != null) inputStream.close();
-            } catch (IOException e) {
-                // Ignore
-            }
-            
-            try {
-                if (outputStream != null) outputStream.close();
-            } catch (IOException e) {
-                // Ignore
-            }
-            
             try {
                 if (socket != null && !socket.isClosed()) socket.close();
             } catch (IOException e) {
@@ -0,0 +1,343 @@
+package com.example.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact length-prefixed wire format for {@link Message}.
+ *
+ * A stream starts with the four {@link #MAGIC} bytes, followed by frames:
+ * <pre>
+ *   int32  body length (big endian)
+ *   byte   MessageType ordinal
+ *   value  senderId
+ *   value  content
+ * </pre>
+ * A value is a one-byte tag followed by its payload. Integers are zig-zag
+ * varints, strings are a varint byte length plus UTF-8, and lists and maps
+ * carry a varint size. That covers the payloads we send (names, answer
+ * indexes, question maps, score maps); anything else falls back to a Java
+ * serialized blob so no message is ever rejected.
+ */
+public final class BinaryMessageCodec implements MessageCodec {
+    public static final BinaryMessageCodec INSTANCE = new BinaryMessageCodec();
+
+    /** Stream preamble. The first byte never collides with Java serialization's 0xAC. */
+    public static final byte[] MAGIC = {'T', 'R', 'V', 1};
+
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte TRUE = 5;
+    private static final byte FALSE = 6;
+    private static final byte LIST = 7;
+    private static final byte MAP = 8;
+    private static final byte SERIALIZED = 9;
+
+    private BinaryMessageCodec() {
+    }
+
+    @Override
+    public MessageWriter openWriter(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.flush();
+        return message -> {
+            out.write(encodeFrame(message));
+            out.flush();
+        };
+    }
+
+    @Override
+    public MessageReader openReader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new StreamCorruptedException("Not a binary message stream");
+        }
+        return () -> {
+            int length;
+            try {
+                length = data.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            checkLength(length);
+            byte[] body = new byte[length];
+            data.readFully(body);
+            return decodeBody(body, 0, length);
+        };
+    }
+
+    /**
+     * Encodes one message including its length prefix.
+     */
+    public static byte[] encodeFrame(Message message) throws IOException {
+        Encoder encoder = new Encoder();
+        encoder.skip(4);
+        encoder.writeByte(message.getType().ordinal());
+        encoder.writeValue(message.getSenderId());
+        encoder.writeValue(message.getContent());
+        return encoder.finishFrame();
+    }
+
+    /**
+     * Decodes a frame body (the bytes after the length prefix). A body that
+     * does not hold exactly one well-formed message is reported as a
+     * {@link StreamCorruptedException}, so readers only ever see IOExceptions.
+     */
+    public static Message decodeBody(byte[] buf, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+        Decoder decoder = new Decoder(buf, offset, offset + length);
+        int ordinal = decoder.readByte();
+        if (ordinal >= TYPES.length) {
+            throw new StreamCorruptedException("Unknown message type " + ordinal);
+        }
+        Object senderId = decoder.readValue();
+        if (senderId != null && !(senderId instanceof String)) {
+            throw new StreamCorruptedException("Sender is a " + senderId.getClass().getSimpleName() + ", not a string");
+        }
+        Message message = new Message(TYPES[ordinal], decoder.readValue());
+        message.setSenderId((String) senderId);
+        if (decoder.remaining() > 0) {
+            throw new StreamCorruptedException(decoder.remaining() + " bytes after the message");
+        }
+        return message;
+    }
+
+    public static void checkLength(int length) throws IOException {
+        if (length < 1 || length > MAX_FRAME_LENGTH) {
+            throw new StreamCorruptedException("Invalid frame length " + length);
+        }
+    }
+
+    private static final class Encoder {
+        private byte[] buf = new byte[64];
+        private int pos;
+
+        void skip(int n) {
+            ensure(n);
+            pos += n;
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeZigZag(long v) {
+            writeVarint((v << 1) ^ (v >> 63));
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeValue(Object value) throws IOException {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeByte(INT);
+                writeZigZag(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeZigZag((Long) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                writeByte(DOUBLE);
+                long bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+                ensure(8);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    buf[pos++] = (byte) (bits >>> shift);
+                }
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                writeByte(LIST);
+                writeVarint(list.size());
+                for (Object element : list) {
+                    writeValue(element);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeByte(MAP);
+                writeVarint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Serializable) {
+                writeByte(SERIALIZED);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                }
+                writeBytes(bytes.toByteArray());
+            } else {
+                throw new IOException("Cannot encode " + value.getClass().getName());
+            }
+        }
+
+        byte[] finishFrame() {
+            int length = pos - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return Arrays.copyOf(buf, pos);
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        Decoder(byte[] buf, int offset, int end) {
+            this.buf = buf;
+            this.pos = offset;
+            this.end = end;
+        }
+
+        int remaining() {
+            return end - pos;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= end) {
+                throw new StreamCorruptedException("Truncated frame");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        long readZigZag() throws IOException {
+            long v = readVarint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        int readSize() throws IOException {
+            long size = readVarint();
+            if (size < 0 || size > end - pos) {
+                throw new StreamCorruptedException("Invalid length " + size);
+            }
+            return (int) size;
+        }
+
+        Object readValue() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING: {
+                    int n = readSize();
+                    String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+                    pos += n;
+                    return s;
+                }
+                case INT:
+                    return (int) readZigZag();
+                case LONG:
+                    return readZigZag();
+                case DOUBLE: {
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return Double.longBitsToDouble(bits);
+                }
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case LIST: {
+                    int n = readSize();
+                    List<Object> list = new ArrayList<>(n);
+                    for (int i = 0; i < n; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case MAP: {
+                    int n = readSize();
+                    Map<Object, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < n; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    return map;
+                }
+                case SERIALIZED: {
+                    int n = readSize();
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf, pos, n))) {
+                        pos += n;
+                        return in.readObject();
+                    } catch (ClassNotFoundException e) {
+                        throw new IOException("Unknown class in frame", e);
+                    } catch (IOException | RuntimeException e) {
+                        // A damaged blob can fail anywhere inside ObjectInputStream
+                        StreamCorruptedException corrupt = new StreamCorruptedException("Malformed serialized value");
+                        corrupt.initCause(e);
+                        throw corrupt;
+                    }
+                }
+                default:
+                    throw new StreamCorruptedException("Unknown value tag " + tag);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Turns a socket's byte streams into a stream of {@link Message}s.
+ *
+ * Two wire formats exist: the compact {@link BinaryMessageCodec} and plain Java
+ * serialization ({@link SerializationMessageCodec}), kept as a fallback. The
+ * side that accepts a connection can tell them apart from the first byte the
+ * peer sends, see {@link #detect(InputStream)}.
+ */
+public interface MessageCodec {
+
+    MessageWriter openWriter(OutputStream out) throws IOException;
+
+    MessageReader openReader(InputStream in) throws IOException;
+
+    interface MessageWriter {
+        /** Writes and flushes one message. Callers serialize access. */
+        void write(Message message) throws IOException;
+    }
+
+    interface MessageReader {
+        /** Blocks for the next message; returns null when the peer closed the stream. */
+        Message read() throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Codec selected by name: "binary" (default) or "java".
+     */
+    static MessageCodec named(String name) {
+        if ("java".equalsIgnoreCase(name)) {
+            return SerializationMessageCodec.INSTANCE;
+        }
+        return BinaryMessageCodec.INSTANCE;
+    }
+
+    /**
+     * Peeks at the first byte of an incoming stream to pick the peer's codec.
+     * The stream must support mark/reset (wrap sockets in a BufferedInputStream).
+     */
+    static MessageCodec detect(InputStream in) throws IOException {
+        in.mark(1);
+        int first = in.read();
+        in.reset();
+        if (first < 0) {
+            throw new EOFException("Connection closed before handshake");
+        }
+        return forFirstByte((byte) first);
+    }
+
+    static MessageCodec forFirstByte(byte first) {
+        return first == BinaryMessageCodec.MAGIC[0]
+                ? BinaryMessageCodec.INSTANCE
+                : SerializationMessageCodec.INSTANCE;
+    }
+}
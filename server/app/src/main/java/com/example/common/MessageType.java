@@ -12,6 +12,9 @@ public enum MessageType {
     LOGIN_REQUEST, LOGIN_SUCCESS, LOGIN_FAILURE,
     CREATE_ROOM, JOIN_ROOM, ROOM_LIST_UPDATE,
     GAME_START, NEW_QUESTION, SUBMIT_ANSWER, ROUND_RESULT, GAME_OVER,
-    ERROR
+    ERROR,
+    // Appended so existing ordinals, which the binary codec sends, stay the same
+    LEADERBOARD_REQUEST, LEADERBOARD,
+    LEAVE_ROOM
     
 }
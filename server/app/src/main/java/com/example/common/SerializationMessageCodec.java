@@ -0,0 +1,117 @@
+package com.example.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+/**
+ * Java object serialization, the original wire format. Kept for peers that do
+ * not speak {@link BinaryMessageCodec}.
+ *
+ * Messages are framed like the binary codec: the stream starts with
+ * {@link #MAGIC}, then every message is an int32 big-endian length followed by
+ * a self-contained object stream holding just that message. The framing lets
+ * a non-blocking reader wait for a whole message and deserialize it once.
+ */
+public final class SerializationMessageCodec implements MessageCodec {
+    public static final SerializationMessageCodec INSTANCE = new SerializationMessageCodec();
+
+    /**
+     * Stream preamble. Starts with 0xAC like an object stream, so
+     * {@link MessageCodec#forFirstByte} picks this codec, but an unframed
+     * object stream from an older peer fails the handshake.
+     */
+    public static final byte[] MAGIC = {(byte) 0xAC, 'T', 'R', 'J'};
+
+    private SerializationMessageCodec() {
+    }
+
+    @Override
+    public MessageWriter openWriter(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.flush();
+        return message -> {
+            out.write(encodeFrame(message));
+            out.flush();
+        };
+    }
+
+    @Override
+    public MessageReader openReader(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new StreamCorruptedException("Not a framed object stream");
+        }
+        return () -> {
+            int length;
+            try {
+                length = data.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            BinaryMessageCodec.checkLength(length);
+            byte[] body = new byte[length];
+            data.readFully(body);
+            return decodeBody(body, 0, length);
+        };
+    }
+
+    /**
+     * Encodes one message including its length prefix.
+     */
+    public static byte[] encodeFrame(Message message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        bytes.write(new byte[4]);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - 4;
+        BinaryMessageCodec.checkLength(length);
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * Decodes a frame body (the bytes after the length prefix). As with
+     * {@link BinaryMessageCodec#decodeBody}, a body that does not hold exactly
+     * one Message is reported as a {@link StreamCorruptedException}.
+     */
+    public static Message decodeBody(byte[] buf, int offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buf.length) {
+            throw new StreamCorruptedException("Truncated frame");
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream(buf, offset, length);
+        Object input;
+        try (ObjectInputStream in = new ObjectInputStream(bytes)) {
+            input = in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in frame", e);
+        } catch (IOException | RuntimeException e) {
+            StreamCorruptedException corrupt = new StreamCorruptedException("Malformed object frame");
+            corrupt.initCause(e);
+            throw corrupt;
+        }
+        if (!(input instanceof Message)) {
+            throw new StreamCorruptedException("Frame holds a "
+                    + (input == null ? "null" : input.getClass().getSimpleName()) + ", not a Message");
+        }
+        if (bytes.available() > 0) {
+            throw new StreamCorruptedException(bytes.available() + " bytes after the message");
+        }
+        return (Message) input;
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * File format of the answer analytics export, written by
+ * {@link AnswerExport} and scanned by {@link AnswerQuery}.
+ *
+ * A segment file holds {@link #FILE_MAGIC} and a version, then row groups.
+ * Each group is framed by its magic, row count, raw and compressed lengths
+ * and a CRC32C of the compressed bytes, followed by the deflated columns. A
+ * group that is cut short or fails its checksum ends the file; it is the one
+ * being written when the server stopped.
+ *
+ * Within a group every column is stored on its own:
+ * <ul>
+ *   <li>time: the group's first time, then zig-zag varint deltas</li>
+ *   <li>game, player: a dictionary of strings, then bit-packed indexes</li>
+ *   <li>question: a dictionary of fingerprint, bank id and category, then
+ *       bit-packed indexes; categories are their own string dictionary</li>
+ *   <li>question number, option, response time, points: bit-packed at the
+ *       width of the group's largest value</li>
+ *   <li>correct: one bit per answer</li>
+ * </ul>
+ * Answers from one round share their game, question and time, so after
+ * packing most columns are runs that deflate to almost nothing.
+ */
+final class AnswerColumns {
+    static final int FILE_MAGIC = 0x54524143; // "TRAC"
+    static final int GROUP_MAGIC = 0x54524147; // "TRAG"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+    static final int GROUP_HEADER_BYTES = 20;
+
+    private AnswerColumns() {
+    }
+
+    /**
+     * Answers collected for the next row group. Used by the export's one
+     * writer thread only.
+     */
+    static final class Builder {
+        private final Dictionary games = new Dictionary();
+        private final Dictionary users = new Dictionary();
+        private final Dictionary categories = new Dictionary();
+        private final Map<Long, Integer> questionIndex = new HashMap<>();
+        private final List<Question> questions = new ArrayList<>();
+        private final int capacity;
+        private final long[] time;
+        private final int[] game;
+        private final int[] number;
+        private final int[] question;
+        private final int[] user;
+        private final int[] option;
+        private final int[] response;
+        private final int[] points;
+        private final int[] correct;
+        private int rows;
+
+        Builder(int capacity) {
+            this.capacity = capacity;
+            this.time = new long[capacity];
+            this.game = new int[capacity];
+            this.number = new int[capacity];
+            this.question = new int[capacity];
+            this.user = new int[capacity];
+            this.option = new int[capacity];
+            this.response = new int[capacity];
+            this.points = new int[capacity];
+            this.correct = new int[capacity];
+        }
+
+        int rows() {
+            return rows;
+        }
+
+        boolean isFull() {
+            return rows == capacity;
+        }
+
+        void add(long timeMillis, String gameId, int questionNumber, Question q, GameResultStore.Answer answer) {
+            time[rows] = timeMillis;
+            game[rows] = games.indexOf(gameId);
+            number[rows] = Math.max(0, questionNumber);
+            question[rows] = questionIndex.computeIfAbsent(q.fingerprint(), fingerprint -> {
+                questions.add(q);
+                return questions.size() - 1;
+            });
+            user[rows] = users.indexOf(answer.username());
+            option[rows] = Math.max(0, answer.answer());
+            response[rows] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, answer.responseMillis()));
+            points[rows] = Math.max(0, answer.points());
+            correct[rows] = answer.correct() ? 1 : 0;
+            rows++;
+        }
+
+        /**
+         * The columns, uncompressed.
+         */
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * 4 + 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(rows);
+            out.writeLong(rows > 0 ? time[0] : 0);
+            long previous = rows > 0 ? time[0] : 0;
+            for (int i = 0; i < rows; i++) {
+                writeVarLong(out, zigZag(time[i] - previous));
+                previous = time[i];
+            }
+            games.write(out);
+            writePacked(out, game, rows);
+            writePacked(out, number, rows);
+            int[] questionCategory = new int[questions.size()];
+            for (int i = 0; i < questions.size(); i++) {
+                questionCategory[i] = categories.indexOf(String.valueOf(questions.get(i).category()));
+            }
+            categories.write(out);
+            writeVarLong(out, questions.size());
+            for (int i = 0; i < questions.size(); i++) {
+                out.writeLong(questions.get(i).fingerprint());
+                out.writeInt(questions.get(i).id());
+                writeVarLong(out, questionCategory[i]);
+            }
+            writePacked(out, question, rows);
+            users.write(out);
+            writePacked(out, user, rows);
+            writePacked(out, option, rows);
+            writePacked(out, response, rows);
+            writePacked(out, points, rows);
+            writePacked(out, correct, rows);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        void clear() {
+            games.clear();
+            users.clear();
+            categories.clear();
+            questionIndex.clear();
+            questions.clear();
+            rows = 0;
+        }
+    }
+
+    /**
+     * One decoded row group. Per-row columns hold indexes into the
+     * dictionaries where the format says so.
+     */
+    static final class RowGroup {
+        int rows;
+        long[] time;
+        String[] games;
+        int[] game;
+        int[] number;
+        String[] categories;
+        long[] questionFingerprints;
+        int[] questionIds;
+        int[] questionCategories;
+        int[] question;
+        String[] users;
+        int[] user;
+        int[] option;
+        int[] response;
+        int[] points;
+        int[] correct;
+    }
+
+    static RowGroup decode(byte[] raw) {
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        RowGroup group = new RowGroup();
+        int rows = in.getInt();
+        group.rows = rows;
+        group.time = new long[rows];
+        long previous = in.getLong();
+        for (int i = 0; i < rows; i++) {
+            previous += unZigZag(readVarLong(in));
+            group.time[i] = previous;
+        }
+        group.games = readStrings(in);
+        group.game = readPacked(in, rows);
+        group.number = readPacked(in, rows);
+        group.categories = readStrings(in);
+        int questions = (int) readVarLong(in);
+        group.questionFingerprints = new long[questions];
+        group.questionIds = new int[questions];
+        group.questionCategories = new int[questions];
+        for (int i = 0; i < questions; i++) {
+            group.questionFingerprints[i] = in.getLong();
+            group.questionIds[i] = in.getInt();
+            group.questionCategories[i] = (int) readVarLong(in);
+        }
+        group.question = readPacked(in, rows);
+        group.users = readStrings(in);
+        group.user = readPacked(in, rows);
+        group.option = readPacked(in, rows);
+        group.response = readPacked(in, rows);
+        group.points = readPacked(in, rows);
+        group.correct = readPacked(in, rows);
+        return group;
+    }
+
+    // Framing
+
+    /**
+     * Header and deflated bytes of a group, ready to append to a segment.
+     */
+    static ByteBuffer frame(int rows, byte[] raw, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[Math.max(64, raw.length + raw.length / 1000 + 64)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(compressed, 0, length);
+        ByteBuffer framed = ByteBuffer.allocate(GROUP_HEADER_BYTES + length);
+        framed.putInt(GROUP_MAGIC).putInt(rows).putInt(raw.length).putInt(length).putInt((int) crc.getValue());
+        framed.put(compressed, 0, length).flip();
+        return framed;
+    }
+
+    /**
+     * Where a row group sits in its segment.
+     */
+    record GroupRef(Path file, long offset, int rows, int rawLength, int compressedLength, int crc) {
+    }
+
+    /**
+     * The complete row groups of a segment, from their headers alone.
+     */
+    static List<GroupRef> groups(Path file) throws IOException {
+        List<GroupRef> groups = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(GROUP_HEADER_BYTES);
+            header.limit(FILE_HEADER_BYTES);
+            if (!readFully(channel, header, 0) || header.getInt(0) != FILE_MAGIC || header.getInt(4) != VERSION) {
+                return groups;
+            }
+            long offset = FILE_HEADER_BYTES;
+            while (offset + GROUP_HEADER_BYTES <= size) {
+                header.clear();
+                if (!readFully(channel, header, offset) || header.getInt(0) != GROUP_MAGIC) {
+                    break;
+                }
+                int compressedLength = header.getInt(12);
+                if (compressedLength < 0 || offset + GROUP_HEADER_BYTES + compressedLength > size) {
+                    break; // Torn write
+                }
+                groups.add(new GroupRef(file, offset, header.getInt(4), header.getInt(8), compressedLength,
+                        header.getInt(16)));
+                offset += GROUP_HEADER_BYTES + compressedLength;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Reads, checks and inflates one group.
+     */
+    static byte[] read(FileChannel channel, GroupRef ref, Inflater inflater) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(ref.compressedLength());
+        if (!readFully(channel, compressed, ref.offset() + GROUP_HEADER_BYTES)) {
+            throw new IOException("Row group at " + ref.offset() + " of " + ref.file() + " is cut short");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(compressed.array(), 0, ref.compressedLength());
+        if ((int) crc.getValue() != ref.crc()) {
+            throw new IOException("Row group at " + ref.offset() + " of " + ref.file() + " is corrupt");
+        }
+        byte[] raw = new byte[ref.rawLength()];
+        inflater.reset();
+        inflater.setInput(compressed.array(), 0, ref.compressedLength());
+        try {
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Row group at " + ref.offset() + " of " + ref.file() + " is corrupt", e);
+        }
+        return raw;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Encodings
+
+    /**
+     * Non-negative ints packed LSB first at the width of the largest one;
+     * a column of zeros takes one byte.
+     */
+    static void writePacked(DataOutputStream out, int[] values, int count) throws IOException {
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max |= values[i];
+        }
+        int width = 32 - Integer.numberOfLeadingZeros(max);
+        out.writeByte(width);
+        if (width == 0) {
+            return;
+        }
+        long word = 0;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i] & 0xFFFFFFFFL;
+            word |= value << used;
+            used += width;
+            if (used >= 64) {
+                out.writeLong(word);
+                used -= 64;
+                word = used > 0 ? value >>> (width - used) : 0; // Bits that did not fit
+            }
+        }
+        if (used > 0) {
+            out.writeLong(word);
+        }
+    }
+
+    static int[] readPacked(ByteBuffer in, int count) {
+        int width = in.get() & 0xFF;
+        int[] values = new int[count];
+        if (width == 0 || count == 0) {
+            return values;
+        }
+        long mask = (1L << width) - 1;
+        int words = (int) (((long) count * width + 63) / 64);
+        long word = in.getLong();
+        words--;
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            long value = word >>> used;
+            used += width;
+            if (used >= 64) {
+                used -= 64;
+                word = words-- > 0 ? in.getLong() : 0;
+                if (used > 0) {
+                    value |= word << (width - used);
+                }
+            }
+            values[i] = (int) (value & mask);
+        }
+        return values;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        String[] strings = new String[(int) readVarLong(in)];
+        for (int i = 0; i < strings.length; i++) {
+            int length = (int) readVarLong(in);
+            strings[i] = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        return strings;
+    }
+
+    /**
+     * Strings numbered in order of first use.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> index = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value) {
+            String key = value != null ? value : "";
+            Integer existing = index.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            index.put(key, values.size());
+            values.add(key);
+            return values.size() - 1;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeVarLong(out, values.size());
+            for (String value : values) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, utf8.length);
+                out.write(utf8);
+            }
+        }
+
+        void clear() {
+            index.clear();
+            values.clear();
+        }
+    }
+}
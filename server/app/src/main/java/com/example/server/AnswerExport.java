@@ -0,0 +1,212 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only columnar export of every scored answer, for analysis with
+ * {@link AnswerQuery} (format in {@link AnswerColumns}).
+ *
+ * Rooms hand each closed round to {@link #record}, which only queues it, as
+ * {@link GameResultStore} does. One writer thread collects answers into a row
+ * group of {@link ServerConfig#ANALYTICS_ROW_GROUP_ROWS} rows, and writes it
+ * once full or {@link ServerConfig#ANALYTICS_FLUSH_SECONDS} after its first
+ * answer. Groups are appended to segment files in
+ * {@link ServerConfig#ANALYTICS_DIR}; a new segment starts at every start and
+ * past {@link ServerConfig#ANALYTICS_SEGMENT_MB}. Nothing is ever rewritten,
+ * so readers may scan while the server runs. Past
+ * {@link ServerConfig#ANALYTICS_MAX_PENDING_ROWS} queued answers further
+ * rounds are dropped and counted.
+ */
+public final class AnswerExport {
+    private final Path dir;
+    private final int rowGroupRows;
+    private final long segmentBytes;
+    private final long flushMillis;
+    private final BlockingQueue<Round> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingRows = new AtomicInteger();
+    private final LongAdder writtenRows = ServerMetrics.counter("analytics.rows.written");
+    private final LongAdder droppedRows = ServerMetrics.counter("analytics.rows.dropped");
+    private final LongAdder groups = ServerMetrics.counter("analytics.groups");
+    private final LongAdder writtenBytes = ServerMetrics.counter("analytics.bytes");
+    private final Thread writer;
+    private FileChannel segment;
+    private long segmentSize;
+    private volatile boolean running;
+
+    public AnswerExport() {
+        this(ServerConfig.ANALYTICS_DIR != null ? Paths.get(ServerConfig.ANALYTICS_DIR) : null,
+                ServerConfig.ANALYTICS_ROW_GROUP_ROWS, ServerConfig.ANALYTICS_SEGMENT_MB * 1024L * 1024L,
+                TimeUnit.SECONDS.toMillis(ServerConfig.ANALYTICS_FLUSH_SECONDS));
+    }
+
+    /**
+     * An export into {@code dir}; a null dir exports nothing.
+     */
+    public AnswerExport(Path dir, int rowGroupRows, long segmentBytes, long flushMillis) {
+        this.dir = dir;
+        this.rowGroupRows = Math.max(1, rowGroupRows);
+        this.segmentBytes = segmentBytes;
+        this.flushMillis = flushMillis;
+        this.writer = new Thread(this::drain, "answer-export");
+        this.writer.setDaemon(true);
+        ServerMetrics.gauge("analytics.rows.pending", pendingRows::get);
+    }
+
+    public void start() {
+        if (dir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            System.err.println("Cannot export answers to " + dir + ": " + e.getMessage());
+            return;
+        }
+        running = true;
+        writer.start();
+        System.out.println("📈 Exporting answers to " + dir.toAbsolutePath());
+    }
+
+    /**
+     * Stops taking answers and writes what is queued.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues one scored round's answers, which may be a single partition's
+     * share of a live round.
+     */
+    public void record(String gameId, int questionNumber, Question question, List<GameResultStore.Answer> answers) {
+        if (!running || question == null || answers.isEmpty()) {
+            return;
+        }
+        int rows = answers.size();
+        if (pendingRows.addAndGet(rows) > ServerConfig.ANALYTICS_MAX_PENDING_ROWS) {
+            pendingRows.addAndGet(-rows);
+            droppedRows.add(rows);
+            return;
+        }
+        queue.add(new Round(System.currentTimeMillis(), gameId, questionNumber, question, List.copyOf(answers)));
+    }
+
+    // Writer thread
+
+    private void drain() {
+        AnswerColumns.Builder builder = new AnswerColumns.Builder(rowGroupRows);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        long groupStarted = 0;
+        try {
+            while (running || !queue.isEmpty()) {
+                Round round;
+                try {
+                    round = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                } catch (InterruptedException e) {
+                    continue; // Only shutdown() stops the writer
+                }
+                if (round != null) {
+                    for (GameResultStore.Answer answer : round.answers()) {
+                        if (builder.rows() == 0) {
+                            groupStarted = System.currentTimeMillis();
+                        }
+                        builder.add(round.timeMillis(), round.gameId(), round.questionNumber(), round.question(), answer);
+                        if (builder.isFull()) {
+                            write(builder, deflater);
+                        }
+                    }
+                    pendingRows.addAndGet(-round.answers().size());
+                }
+                if (builder.rows() > 0 && System.currentTimeMillis() - groupStarted >= flushMillis) {
+                    write(builder, deflater);
+                }
+            }
+            if (builder.rows() > 0) {
+                write(builder, deflater);
+            }
+        } finally {
+            deflater.end();
+            closeSegment();
+        }
+    }
+
+    private void write(AnswerColumns.Builder builder, Deflater deflater) {
+        int rows = builder.rows();
+        try {
+            ByteBuffer framed = AnswerColumns.frame(rows, builder.encode(), deflater);
+            if (segment == null || (segmentSize > AnswerColumns.FILE_HEADER_BYTES
+                    && segmentSize + framed.remaining() > segmentBytes)) {
+                openSegment();
+            }
+            int length = framed.remaining();
+            while (framed.hasRemaining()) {
+                segment.write(framed);
+            }
+            segment.force(false);
+            segmentSize += length;
+            groups.increment();
+            writtenRows.add(rows);
+            writtenBytes.add(length);
+        } catch (IOException e) {
+            // The group may be half written; the next one goes to a new segment
+            System.err.println("Cannot export " + rows + " answers: " + e.getMessage());
+            droppedRows.add(rows);
+            closeSegment();
+        } finally {
+            builder.clear();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        closeSegment();
+        long stamp = System.currentTimeMillis();
+        Path path;
+        while (Files.exists(path = dir.resolve(String.format("answers-%013d.col", stamp)))) {
+            stamp++;
+        }
+        segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(AnswerColumns.FILE_HEADER_BYTES);
+        header.putInt(AnswerColumns.FILE_MAGIC).putInt(AnswerColumns.VERSION).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segmentSize = AnswerColumns.FILE_HEADER_BYTES;
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            // Every complete group was already forced to disk
+        }
+        segment = null;
+    }
+
+    private record Round(long timeMillis, String gameId, int questionNumber, Question question,
+                         List<GameResultStore.Answer> answers) {
+    }
+}
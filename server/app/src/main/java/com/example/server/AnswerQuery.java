@@ -0,0 +1,309 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+
+/**
+ * Aggregates the answer analytics export ({@link AnswerExport}) per
+ * question, per category and by response time.
+ *
+ * Segment headers are listed first; the row groups are then shared out to
+ * reader threads, each with its own channel and totals, which are merged at
+ * the end. Within a group, answers are summed per dictionary entry into
+ * arrays, so the per-answer loop does no hashing; the maps keyed by
+ * fingerprint and category are touched once per entry and group.
+ */
+public final class AnswerQuery {
+    private static final int OPTIONS = 8;
+    private static final int BUCKET_MILLIS = 250;
+    private static final int BUCKETS = 121; // Up to 30 s, then one overflow bucket
+
+    private AnswerQuery() {
+    }
+
+    /**
+     * Usage: {@code AnswerQuery <dir> [threads] [top questions]}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: AnswerQuery <analytics dir> [threads] [top questions]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int top = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        long started = System.nanoTime();
+        Result result = scan(Paths.get(args[0]), threads);
+        long millis = (System.nanoTime() - started) / 1_000_000;
+
+        System.out.printf("Scanned %,d answers in %,d row groups of %d segments (%,d KB) in %,d ms with %d threads%n",
+                result.overall.answers, result.groups, result.segments, result.bytes / 1024, millis, threads);
+        if (result.damaged > 0) {
+            System.out.println("Skipped " + result.damaged + " damaged row groups");
+        }
+        if (result.overall.answers == 0) {
+            return;
+        }
+        System.out.println();
+        System.out.println("Overall");
+        header();
+        row("all answers", result.overall);
+
+        System.out.println();
+        System.out.println("By category");
+        header();
+        result.categories.entrySet().stream()
+                .sorted(Map.Entry.<String, Totals>comparingByValue(Comparator.comparingLong(t -> t.answers)).reversed())
+                .forEach(entry -> row(entry.getKey(), entry.getValue()));
+
+        System.out.println();
+        System.out.println("Most answered questions");
+        header();
+        result.questions.entrySet().stream()
+                .sorted(Map.Entry.<Long, Totals>comparingByValue(Comparator.comparingLong(t -> t.answers)).reversed())
+                .limit(top)
+                .forEach(entry -> {
+                    Totals totals = entry.getValue();
+                    row(String.format("#%d %016x", totals.questionId, entry.getKey()), totals);
+                    System.out.printf("   %s%n", options(totals));
+                });
+
+        System.out.println();
+        System.out.println("Response times");
+        long[] histogram = result.overall.histogram;
+        int last = BUCKETS - 2;
+        while (last > 0 && histogram[last] == 0) {
+            last--;
+        }
+        for (int from = 0; from <= last; from += 4) {
+            long count = 0;
+            for (int i = from; i < from + 4; i++) {
+                count += histogram[i];
+            }
+            printBar(String.format("%4.0f-%-4.0f s", from * BUCKET_MILLIS / 1000.0, (from + 4) * BUCKET_MILLIS / 1000.0),
+                    count, result.overall.answers);
+        }
+        if (histogram[BUCKETS - 1] > 0) {
+            printBar("   30+   s", histogram[BUCKETS - 1], result.overall.answers);
+        }
+    }
+
+    /**
+     * Scans every segment in {@code dir} with {@code threads} readers.
+     */
+    static Result scan(Path dir, int threads) throws IOException, InterruptedException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(dir)) {
+            segments = files.filter(path -> path.getFileName().toString().endsWith(".col")).sorted().toList();
+        }
+        List<AnswerColumns.GroupRef> refs = new ArrayList<>();
+        long bytes = 0;
+        for (Path segment : segments) {
+            refs.addAll(AnswerColumns.groups(segment));
+            bytes += Files.size(segment);
+        }
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "answer-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Result>> readers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, threads); i++) {
+            readers.add(pool.submit(() -> read(refs, next)));
+        }
+        Result result = new Result();
+        try {
+            for (Future<Result> reader : readers) {
+                result.merge(reader.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot read answers", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        result.segments = segments.size();
+        result.bytes = bytes;
+        return result;
+    }
+
+    /**
+     * One reader: takes row groups until none are left.
+     */
+    private static Result read(List<AnswerColumns.GroupRef> refs, AtomicInteger next) throws IOException {
+        Result result = new Result();
+        Map<Path, FileChannel> channels = new HashMap<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (int i = next.getAndIncrement(); i < refs.size(); i = next.getAndIncrement()) {
+                AnswerColumns.GroupRef ref = refs.get(i);
+                FileChannel channel = channels.get(ref.file());
+                if (channel == null) {
+                    channel = FileChannel.open(ref.file(), StandardOpenOption.READ);
+                    channels.put(ref.file(), channel);
+                }
+                AnswerColumns.RowGroup group;
+                try {
+                    group = AnswerColumns.decode(AnswerColumns.read(channel, ref, inflater));
+                } catch (IOException | RuntimeException e) {
+                    result.damaged++;
+                    continue;
+                }
+                result.add(group);
+            }
+        } finally {
+            inflater.end();
+            for (FileChannel channel : channels.values()) {
+                channel.close();
+            }
+        }
+        return result;
+    }
+
+    private static void header() {
+        System.out.printf("  %-40s %12s %8s %8s %8s %8s %8s%n",
+                "", "answers", "correct", "avg ms", "p50 ms", "p90 ms", "points");
+    }
+
+    private static void row(String name, Totals totals) {
+        System.out.printf("  %-40s %,12d %7.1f%% %8d %8d %8d %8.1f%n",
+                name.length() > 40 ? name.substring(0, 40) : name, totals.answers,
+                100.0 * totals.correct / totals.answers, totals.responseMillis / totals.answers,
+                totals.percentileMillis(0.5), totals.percentileMillis(0.9), (double) totals.points / totals.answers);
+    }
+
+    private static String options(Totals totals) {
+        StringBuilder shares = new StringBuilder();
+        for (int i = 0; i < OPTIONS; i++) {
+            if (totals.options[i] > 0) {
+                shares.append(String.format("%s%d: %.1f%%", shares.length() > 0 ? "  " : "", i,
+                        100.0 * totals.options[i] / totals.answers));
+            }
+        }
+        return shares.toString();
+    }
+
+    private static void printBar(String label, long count, long total) {
+        double share = (double) count / total;
+        System.out.printf("  %s %6.2f%% %s%n", label, 100 * share, "#".repeat((int) Math.round(share * 60)));
+    }
+
+    /**
+     * Everything one reader, or all of them merged, has counted.
+     */
+    static final class Result {
+        final Totals overall = new Totals();
+        final Map<Long, Totals> questions = new HashMap<>();
+        final Map<String, Totals> categories = new HashMap<>();
+        long groups;
+        long damaged;
+        int segments;
+        long bytes;
+
+        void add(AnswerColumns.RowGroup group) {
+            Totals[] byQuestion = new Totals[group.questionFingerprints.length];
+            Totals[] byCategory = new Totals[group.categories.length];
+            for (int i = 0; i < byQuestion.length; i++) {
+                byQuestion[i] = new Totals();
+            }
+            for (int i = 0; i < byCategory.length; i++) {
+                byCategory[i] = new Totals();
+            }
+            int[] question = group.question;
+            int[] categoryOf = group.questionCategories;
+            for (int row = 0; row < group.rows; row++) {
+                int q = question[row];
+                byQuestion[q].add(group.option[row], group.correct[row], group.response[row], group.points[row]);
+                byCategory[categoryOf[q]].add(group.option[row], group.correct[row], group.response[row],
+                        group.points[row]);
+            }
+            for (int i = 0; i < byQuestion.length; i++) {
+                byQuestion[i].questionId = group.questionIds[i];
+                questions.computeIfAbsent(group.questionFingerprints[i], fingerprint -> new Totals()).merge(byQuestion[i]);
+            }
+            for (int i = 0; i < byCategory.length; i++) {
+                overall.merge(byCategory[i]);
+                categories.computeIfAbsent(group.categories[i], category -> new Totals()).merge(byCategory[i]);
+            }
+            groups++;
+        }
+
+        void merge(Result other) {
+            overall.merge(other.overall);
+            other.questions.forEach((fingerprint, totals) ->
+                    questions.computeIfAbsent(fingerprint, key -> new Totals()).merge(totals));
+            other.categories.forEach((category, totals) ->
+                    categories.computeIfAbsent(category, key -> new Totals()).merge(totals));
+            groups += other.groups;
+            damaged += other.damaged;
+        }
+    }
+
+    /**
+     * Answer counts, option shares and a response time histogram.
+     */
+    static final class Totals {
+        long answers;
+        long correct;
+        long responseMillis;
+        long points;
+        int questionId;
+        final long[] options = new long[OPTIONS];
+        final long[] histogram = new long[BUCKETS];
+
+        void add(int option, int isCorrect, int response, int score) {
+            answers++;
+            correct += isCorrect;
+            responseMillis += response;
+            points += score;
+            options[Math.min(option, OPTIONS - 1)]++;
+            histogram[Math.min(response / BUCKET_MILLIS, BUCKETS - 1)]++;
+        }
+
+        void merge(Totals other) {
+            answers += other.answers;
+            correct += other.correct;
+            responseMillis += other.responseMillis;
+            points += other.points;
+            if (other.questionId != 0) {
+                questionId = other.questionId;
+            }
+            for (int i = 0; i < OPTIONS; i++) {
+                options[i] += other.options[i];
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+
+        /**
+         * Upper edge of the histogram bucket holding the {@code quantile}.
+         */
+        long percentileMillis(double quantile) {
+            long rank = (long) Math.ceil(quantile * answers);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return (long) (i + 1) * BUCKET_MILLIS;
+                }
+            }
+            return (long) BUCKETS * BUCKET_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.server;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answer counts per question and per option, plus total answer time.
+ *
+ * Every counter is a {@link LongAdder}, so rooms on different shards record
+ * answers without contending on a shared lock or cache line. Questions are
+ * keyed by {@link Question#fingerprint()} so the numbers survive bank reloads.
+ * Aggregates are written to {@link ServerConfig#STATS_FILE} every
+ * {@link ServerConfig#STATS_FLUSH_SECONDS} seconds and on shutdown, and read
+ * back at startup.
+ *
+ * {@link #levelOf(Question)} turns the measured accuracy into a difficulty
+ * level that game sampling can target.
+ */
+public final class AnswerStatistics {
+    public static final String EASY = "easy";
+    public static final String MEDIUM = "medium";
+    public static final String HARD = "hard";
+
+    private static final double EASY_ACCURACY = 0.70;
+    private static final double HARD_ACCURACY = 0.35;
+
+    private final Map<Long, QuestionStats> stats = new ConcurrentHashMap<>();
+    private final Path file;
+    private final int minAnswers;
+    private final LongAdder recorded = ServerMetrics.counter("answers.recorded");
+    private ScheduledExecutorService flusher;
+
+    public AnswerStatistics() {
+        this(ServerConfig.STATS_FILE != null ? Paths.get(ServerConfig.STATS_FILE) : null, ServerConfig.STATS_MIN_ANSWERS);
+    }
+
+    public AnswerStatistics(Path file, int minAnswers) {
+        this.file = file;
+        this.minAnswers = minAnswers;
+        ServerMetrics.gauge("answers.questionsTracked", stats::size);
+        if (file != null && Files.exists(file)) {
+            load();
+        }
+    }
+
+    /**
+     * Writes the aggregates periodically on a background thread.
+     */
+    public void startPersisting(long periodSeconds) {
+        if (file == null || flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "answer-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records one answer. {@code option} outside the question's options
+     * (for example a timeout) still counts as a wrong answer.
+     */
+    public void record(Question question, int option, long answerMillis) {
+        QuestionStats s = statsFor(question);
+        s.answers.increment();
+        if (question.isCorrect(option)) {
+            s.correct.increment();
+        }
+        if (option >= 0 && option < s.options.length) {
+            s.options[option].increment();
+        }
+        s.answerMillis.add(Math.max(0, answerMillis));
+        recorded.increment();
+    }
+
+    /**
+     * Measured difficulty ({@link #EASY}, {@link #MEDIUM} or {@link #HARD}), or
+     * the question's own label until it has been answered often enough.
+     */
+    public String levelOf(Question question) {
+        QuestionStats s = stats.get(question.fingerprint());
+        long answers = s != null ? s.answers.sum() : 0;
+        if (answers < minAnswers) {
+            return question.difficulty();
+        }
+        double accuracy = (double) s.correct.sum() / answers;
+        if (accuracy >= EASY_ACCURACY) {
+            return EASY;
+        }
+        return accuracy <= HARD_ACCURACY ? HARD : MEDIUM;
+    }
+
+    /**
+     * Share of correct answers, or NaN if the question was never answered.
+     */
+    public double accuracy(Question question) {
+        QuestionStats s = stats.get(question.fingerprint());
+        long answers = s != null ? s.answers.sum() : 0;
+        return answers == 0 ? Double.NaN : (double) s.correct.sum() / answers;
+    }
+
+    public long answers(Question question) {
+        QuestionStats s = stats.get(question.fingerprint());
+        return s != null ? s.answers.sum() : 0;
+    }
+
+    public double averageAnswerMillis(Question question) {
+        QuestionStats s = stats.get(question.fingerprint());
+        long answers = s != null ? s.answers.sum() : 0;
+        return answers == 0 ? Double.NaN : (double) s.answerMillis.sum() / answers;
+    }
+
+    /**
+     * Answers per option, in option order.
+     */
+    public long[] optionCounts(Question question) {
+        QuestionStats s = stats.get(question.fingerprint());
+        long[] counts = new long[question.options().size()];
+        if (s != null) {
+            for (int i = 0; i < Math.min(counts.length, s.options.length); i++) {
+                counts[i] = s.options[i].sum();
+            }
+        }
+        return counts;
+    }
+
+    private QuestionStats statsFor(Question question) {
+        long key = question.fingerprint();
+        // Plain get first: computeIfAbsent may lock the bin even when the entry exists
+        QuestionStats s = stats.get(key);
+        if (s == null) {
+            s = stats.computeIfAbsent(key, k -> new QuestionStats(question.options().size()));
+        }
+        return s;
+    }
+
+    public void shutdown() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Writes a snapshot of every counter; concurrent answers land in the next flush.
+     */
+    public synchronized void flush() {
+        if (file == null) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            json.beginArray();
+            for (Map.Entry<Long, QuestionStats> entry : stats.entrySet()) {
+                QuestionStats s = entry.getValue();
+                json.beginObject();
+                json.name("fingerprint").value(entry.getKey());
+                json.name("answers").value(s.answers.sum());
+                json.name("correct").value(s.correct.sum());
+                json.name("answerMillis").value(s.answerMillis.sum());
+                json.name("options").beginArray();
+                for (LongAdder option : s.options) {
+                    json.value(option.sum());
+                }
+                json.endArray();
+                json.endObject();
+            }
+            json.endArray();
+        } catch (IOException e) {
+            System.err.println("Cannot write answer statistics: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Cannot replace answer statistics: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        int loaded = 0;
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(in)) {
+            json.beginArray();
+            while (json.hasNext()) {
+                long fingerprint = 0;
+                long answers = 0;
+                long correct = 0;
+                long answerMillis = 0;
+                long[] options = new long[0];
+                json.beginObject();
+                while (json.hasNext()) {
+                    switch (json.nextName()) {
+                        case "fingerprint":
+                            fingerprint = json.nextLong();
+                            break;
+                        case "answers":
+                            answers = json.nextLong();
+                            break;
+                        case "correct":
+                            correct = json.nextLong();
+                            break;
+                        case "answerMillis":
+                            answerMillis = json.nextLong();
+                            break;
+                        case "options":
+                            json.beginArray();
+                            while (json.hasNext()) {
+                                options = Arrays.copyOf(options, options.length + 1);
+                                options[options.length - 1] = json.nextLong();
+                            }
+                            json.endArray();
+                            break;
+                        default:
+                            json.skipValue();
+                    }
+                }
+                json.endObject();
+
+                QuestionStats s = new QuestionStats(options.length);
+                s.answers.add(answers);
+                s.correct.add(correct);
+                s.answerMillis.add(answerMillis);
+                for (int i = 0; i < options.length; i++) {
+                    s.options[i].add(options[i]);
+                }
+                stats.put(fingerprint, s);
+                loaded++;
+            }
+            json.endArray();
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Cannot read answer statistics " + file + ": " + e.getMessage());
+        }
+        System.out.println("📊 Loaded answer statistics for " + loaded + " questions");
+    }
+
+    private static final class QuestionStats {
+        final LongAdder answers = new LongAdder();
+        final LongAdder correct = new LongAdder();
+        final LongAdder answerMillis = new LongAdder();
+        final LongAdder[] options;
+
+        QuestionStats(int optionCount) {
+            options = new LongAdder[optionCount];
+            for (int i = 0; i < optionCount; i++) {
+                options[i] = new LongAdder();
+            }
+        }
+    }
+}
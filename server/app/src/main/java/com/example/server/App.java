@@ -11,32 +11,89 @@ public class App {
         
         // 1. Load Questions
         QuestionManager qm = new QuestionManager();
+        qm.watchForChanges();
         System.out.println("📚 Questions loaded: " + qm.getQuestions().size());
         
-        // 2. Start WebSocket Server (for HTML/Web clients)
-        final TriviaWebSocketServer webSocketServer = new TriviaWebSocketServer(qm);
+        // 2. Load the server-wide leaderboard
+        final Leaderboard leaderboard = new Leaderboard();
+        leaderboard.start(ServerConfig.LEADERBOARD_FLUSH_SECONDS);
+        
+        // 3. Open the game results database; rows are written behind on their own thread
+        final GameResultStore results = new GameResultStore();
+        results.start();
+        
+        // 4. Open the room event journal
+        final RoomJournal journal = new RoomJournal();
+        journal.start();
+        
+        // 5. Cache player profiles in front of the results database
+        final ProfileCache profiles = new ProfileCache(new JdbcProfileStore());
+        profiles.start(ServerConfig.PROFILE_FLUSH_MS);
+        
+        // 6. Export every scored answer for analysis, written behind like the results
+        final AnswerExport analytics = new AnswerExport();
+        analytics.start();
+        
+        // 7. Start WebSocket Server (for HTML/Web clients)
+        final HashedWheelTimer gameTimer = new HashedWheelTimer("game-timer");
+        final RoomShards roomShards = new RoomShards();
+        final TriviaWebSocketServer webSocketServer = new TriviaWebSocketServer(qm, gameTimer, roomShards, leaderboard,
+                results, journal, profiles, analytics);
+        
+        // Bring back the rooms that were in flight if the last run crashed, then keep snapshotting them
+        final RoomRecovery recovery = new RoomRecovery(journal);
+        webSocketServer.restoreRooms(recovery.recover());
+        recovery.start(webSocketServer::captureRooms);
         new Thread(() -> {
             webSocketServer.start();
         }).start();
         
-        // 3. Start Socket Network (for Java clients)
-        final ServerNetworkManager server = new ServerNetworkManager();
+        // 8. Start Socket Network (for Java clients)
+        final ServerNetworkManager server = new ServerNetworkManager(leaderboard);
         
         // Add shutdown hook for graceful termination
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n🛑 Shutdown signal received...");
+            recovery.shutdown();
             try {
                 webSocketServer.stop(1000);
             } catch (Exception e) {
                 System.err.println("Error stopping WebSocket server: " + e.getMessage());
             }
             server.shutdown();
+            gameTimer.stop();
+            roomShards.shutdown();
+            results.shutdown(); // After the rooms, so their last results are queued
+            profiles.shutdown(); // Likewise, then saves their last games
+            analytics.shutdown();
+            journal.shutdown();
+            qm.shutdown();
+            leaderboard.shutdown();
+            ServerMetrics.print();
         }));
         
+        // Operator console: type "reload" to load a new question bank version,
+        // or "event NAME" to let rooms count towards a new event leaderboard
+        Thread console = new Thread(() -> {
+            java.util.Scanner in = new java.util.Scanner(System.in);
+            while (in.hasNextLine()) {
+                String line = in.nextLine().trim();
+                if ("reload".equalsIgnoreCase(line)) {
+                    qm.reloadAsync();
+                } else if (line.toLowerCase().startsWith("event ")) {
+                    String event = line.substring(6).trim();
+                    System.out.println(leaderboard.openEvent(event)
+                            ? "🏆 Event opened: " + event : "Not a valid event name: " + event);
+                }
+            }
+        }, "console");
+        console.setDaemon(true);
+        console.start();
+        
         System.out.println("🌐 Starting servers...");
         System.out.println("   - Socket Server (Java clients): Port 12345");
         System.out.println("   - WebSocket Server (HTML clients): Port 8081");
-        System.out.println("   - Max concurrent connections: 20 per server");
+        System.out.println("   - Java client transport: " + server.getTransport());
         server.startServer();
     }
 }
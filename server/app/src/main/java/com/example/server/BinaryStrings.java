@@ -0,0 +1,41 @@
+package com.example.server;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Strings in the server's own binary files, written as an int byte count
+ * (-1 for null) followed by UTF-8. Reading refuses counts past
+ * {@link #MAX_BYTES}, so a damaged file cannot ask for a huge buffer.
+ */
+final class BinaryStrings {
+    static final int MAX_BYTES = 1 << 20;
+
+    private BinaryStrings() {
+    }
+
+    static void write(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String read(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > MAX_BYTES) {
+            throw new IOException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
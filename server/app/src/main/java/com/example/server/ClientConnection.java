@@ -0,0 +1,44 @@
+package com.example.server;
+
+import com.example.common.Message;
+
+/**
+ * A Java client's connection, whatever transport carries it: a blocking
+ * {@link ClientHandler} on its own thread or a {@link NioClientHandler}
+ * driven by an event loop. {@link MessageProcessor} and
+ * {@link ServerNetworkManager} only need to send to it and know who is on it.
+ */
+public abstract class ClientConnection {
+    private final ServerNetworkManager server;
+    private volatile String username;
+
+    protected ClientConnection(ServerNetworkManager server) {
+        this.server = server;
+    }
+
+    /**
+     * Queues the message for the client. Never blocks; a client that stays
+     * above its outbound budget is disconnected instead.
+     */
+    public abstract void sendMessage(Message message);
+
+    /**
+     * Closes the connection and drops whatever is still queued for it.
+     */
+    protected abstract void disconnect();
+
+    /**
+     * Drops a client that cannot keep up. Shared by every transport so
+     * evictions are counted in one place.
+     */
+    protected void evictSlowConsumer(int queued) {
+        ServerMetrics.counter("tcp.slowConsumer.evicted").increment();
+        System.out.println("🐢 Disconnecting slow client " + (username != null ? username : "")
+                + " (" + queued + " messages queued)");
+        disconnect();
+    }
+
+    public void setUsername(String username) { this.username = username; }
+    public String getUsername() { return username; }
+    protected ServerNetworkManager getServer() { return server; }
+}
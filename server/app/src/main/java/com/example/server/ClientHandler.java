@@ -5,50 +5,97 @@
 package com.example.server;
 
 import com.example.common.Message;
+import com.example.common.MessageCodec;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 
-public class ClientHandler implements Runnable {
+public class ClientHandler extends ClientConnection implements Runnable {
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
-    private ServerNetworkManager server;
-    private String username;
+    private MessageCodec.MessageWriter out;
+    private MessageCodec.MessageReader in;
+    // Drained only by this connection's writer thread, so a stalled socket
+    // never blocks whoever called sendMessage
+    private final BlockingQueue<Message> outbound = new LinkedBlockingQueue<>();
+    private final OutboundBudget budget = new OutboundBudget();
+    private Thread writer;
+    private volatile boolean closed;
 
     public ClientHandler(Socket socket, ServerNetworkManager server) {
+        super(server);
         this.socket = socket;
-        this.server = server;
     }
 
    
     @Override
     public void run() {
         try {
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
-            Object input;
-            while ((input = in.readObject()) != null) {
-                if (input instanceof Message) {
-                    MessageProcessor.process(this, (Message) input);
-                }
+            // Answer in whichever format the client opened with
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            MessageCodec codec = MessageCodec.detect(input);
+            out = codec.openWriter(socket.getOutputStream());
+            in = codec.openReader(input);
+            writer = Thread.ofVirtual().name("tcp-writer").start(this::drainOutbound);
+            Message message;
+            while ((message = in.read()) != null) {
+                MessageProcessor.process(this, message);
             }
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Client disconnected.");
         } finally {
-            server.removeClient(this);
+            getServer().removeClient(this);
+            if (writer != null) {
+                writer.interrupt();
+            }
+            closeSocket();
         }
     }
 
+    /**
+     * Queues the message for this connection's writer thread.
+     */
+    @Override
     public void sendMessage(Message message) {
+        if (closed) {
+            return;
+        }
+        outbound.add(message);
+        if (!budget.onEnqueue()) {
+            evictSlowConsumer(budget.size());
+        }
+    }
+
+    private void drainOutbound() {
         try {
-            out.writeObject(message);
-            out.flush();
-        } catch (IOException e) { e.printStackTrace(); }
+            while (true) {
+                Message message = outbound.take();
+                budget.onDequeue();
+                out.write(message);
+            }
+        } catch (InterruptedException e) {
+            // Connection closed
+        } catch (IOException e) {
+            closeSocket();
+        }
+    }
+
+    @Override
+    protected void disconnect() {
+        outbound.clear();
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
     }
-    
-    public void setUsername(String username) { this.username = username; }
 }
\ No newline at end of file
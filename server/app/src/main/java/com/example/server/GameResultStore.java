@@ -0,0 +1,392 @@
+package com.example.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind store for finished games, per-round answers and final scores
+ * in an embedded H2 database ({@link ServerConfig#RESULTS_DB}).
+ *
+ * Rooms hand results to {@code record*} methods, which only queue them; no
+ * database I/O ever runs on a WebSocket or room thread. One writer thread
+ * drains the queue and commits whatever has piled up, up to
+ * {@link ServerConfig#RESULTS_BATCH_ROWS} rows, in a single transaction
+ * (group commit). When the queue runs dry it waits
+ * {@link ServerConfig#RESULTS_LINGER_MS} for more before committing.
+ *
+ * The queue is bounded by rows. Past half of
+ * {@link ServerConfig#RESULTS_MAX_PENDING_ROWS} {@link #isBackedUp()} tells
+ * the server to turn away new rooms; at the limit further results are
+ * dropped and counted. A failed batch is rolled back and retried as a whole,
+ * unless the database refused a value (SQLState class 22 or 23): then its
+ * items are committed one at a time and the one that still fails is dropped
+ * and counted as rejected, so a bad row cannot hold up the queue. Every
+ * write is a MERGE on the row's key, so a retried batch never duplicates
+ * rows. {@link #shutdown()} drains the queue before closing.
+ *
+ * The queue lives only in memory: if the JVM dies, whatever was queued and
+ * not yet committed is lost. Normally that is the last
+ * {@link ServerConfig#RESULTS_LINGER_MS} ms or so of results; while the
+ * database is failing or behind it can be up to
+ * {@link ServerConfig#RESULTS_MAX_PENDING_ROWS} rows. Those games can still
+ * be read from the {@link RoomJournal}, but are not written back here.
+ */
+public final class GameResultStore {
+    private static final long MAX_RETRY_DELAY_MS = 5_000;
+    // Attempts per batch once shutting down, before its rows are given up
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS games ("
+            + "game_id VARCHAR(36) PRIMARY KEY, room_name VARCHAR(255), mode VARCHAR(16), event VARCHAR(255), "
+            + "players INT, questions INT, started_at TIMESTAMP, ended_at TIMESTAMP)",
+        "CREATE TABLE IF NOT EXISTS round_answers ("
+            + "game_id VARCHAR(36), question_number INT, question_fingerprint BIGINT, category VARCHAR(255), "
+            + "username VARCHAR(255), answer INT, correct BOOLEAN, response_millis BIGINT, points INT, "
+            + "PRIMARY KEY (game_id, question_number, username))",
+        "CREATE TABLE IF NOT EXISTS final_scores ("
+            + "game_id VARCHAR(36), username VARCHAR(255), score INT, "
+            + "PRIMARY KEY (game_id, username))"
+    };
+    private static final String MERGE_GAME = "MERGE INTO games "
+            + "(game_id, room_name, mode, event, players, questions, started_at, ended_at) KEY (game_id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_ANSWER = "MERGE INTO round_answers "
+            + "(game_id, question_number, question_fingerprint, category, username, answer, correct, "
+            + "response_millis, points) KEY (game_id, question_number, username) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String MERGE_SCORE = "MERGE INTO final_scores (game_id, username, score) "
+            + "KEY (game_id, username) VALUES (?, ?, ?)";
+
+    private final String url;
+    private final BlockingQueue<Item> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingRows = new AtomicInteger();
+    private final LongAdder committedRows = ServerMetrics.counter("results.rows.committed");
+    private final LongAdder droppedRows = ServerMetrics.counter("results.rows.dropped");
+    private final LongAdder rejectedRows = ServerMetrics.counter("results.rows.rejected");
+    private final LongAdder batches = ServerMetrics.counter("results.batches");
+    private final LongAdder failedBatches = ServerMetrics.counter("results.batches.failed");
+    private final Thread writer;
+    private Connection connection;
+    private volatile boolean running;
+
+    public GameResultStore() {
+        this(ServerConfig.RESULTS_DB);
+    }
+
+    /**
+     * A store writing to the JDBC {@code url}; a null url keeps nothing.
+     */
+    public GameResultStore(String url) {
+        this.url = url;
+        this.writer = new Thread(this::drain, "results-writer");
+        this.writer.setDaemon(true);
+        ServerMetrics.gauge("results.rows.pending", pendingRows::get);
+    }
+
+    /**
+     * Opens the database, creates the tables and starts the writer. Results
+     * are discarded if the database cannot be opened.
+     */
+    public void start() {
+        if (url == null) {
+            return;
+        }
+        try {
+            connect();
+        } catch (SQLException e) {
+            System.err.println("Cannot open results database " + url + ": " + e.getMessage());
+            return;
+        }
+        running = true;
+        writer.start();
+        System.out.println("💾 Saving game results to " + url);
+    }
+
+    /**
+     * Stops taking results, waits for the queue to be written and closes the database.
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false; // The writer notices within a second, drains the queue and exits
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly();
+    }
+
+    /**
+     * True while so many rows are waiting that new rooms should be turned away.
+     */
+    public boolean isBackedUp() {
+        return pendingRows.get() > ServerConfig.RESULTS_MAX_PENDING_ROWS / 2;
+    }
+
+    /**
+     * Queues a finished game; its final scores are queued separately with
+     * {@link #recordScores}.
+     */
+    public void recordGame(String gameId, String roomName, String mode, String event, int players,
+                           int questions, long startedAtMillis, long endedAtMillis) {
+        enqueue(new Game(gameId, roomName, mode, event, players, questions, startedAtMillis, endedAtMillis));
+    }
+
+    /**
+     * Queues one round's answers, which may be a single partition's share of a live round.
+     */
+    public void recordRound(String gameId, int questionNumber, Question question, List<Answer> answers) {
+        if (!answers.isEmpty()) {
+            enqueue(new Round(gameId, questionNumber, question.fingerprint(), question.category(), answers));
+        }
+    }
+
+    public void recordScores(String gameId, Map<String, Integer> scores) {
+        Map<String, Integer> copy = new HashMap<>();
+        for (Map.Entry<String, Integer> score : scores.entrySet()) {
+            if (score.getKey() != null && score.getValue() != null) {
+                copy.put(score.getKey(), score.getValue());
+            }
+        }
+        if (!copy.isEmpty()) {
+            enqueue(new Scores(gameId, copy));
+        }
+    }
+
+    private void enqueue(Item item) {
+        if (!running) {
+            return;
+        }
+        int rows = item.rows();
+        if (pendingRows.addAndGet(rows) > ServerConfig.RESULTS_MAX_PENDING_ROWS) {
+            pendingRows.addAndGet(-rows);
+            droppedRows.add(rows);
+            return;
+        }
+        queue.add(item);
+    }
+
+    // Writer thread
+
+    private void drain() {
+        List<Item> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            Item first;
+            try {
+                first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+            } catch (InterruptedException e) {
+                continue; // Only shutdown() stops the writer
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            int rows = first.rows();
+            long lingerEnds = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ServerConfig.RESULTS_LINGER_MS);
+            while (rows < ServerConfig.RESULTS_BATCH_ROWS) {
+                Item next = queue.poll();
+                long wait = lingerEnds - System.nanoTime();
+                if (next == null && running && wait > 0) {
+                    try {
+                        next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    } catch (InterruptedException e) {
+                        // Commit what we have
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+                rows += next.rows();
+            }
+            commit(batch, rows);
+            pendingRows.addAndGet(-rows);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction, retrying with backoff until it
+     * commits. Gives up only on a bad value, or when shutting down and the
+     * database keeps failing.
+     */
+    private void commit(List<Item> batch, int rows) {
+        long delay = 100;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (connection == null || connection.isClosed()) {
+                    connect();
+                }
+                write(batch);
+                connection.commit();
+                batches.increment();
+                committedRows.add(rows);
+                return;
+            } catch (SQLException e) {
+                failedBatches.increment();
+                System.err.println("Cannot save " + rows + " result rows: " + e.getMessage());
+                rollbackQuietly();
+                if (isDataError(e)) {
+                    // Retrying cannot fix a bad value: commit the items one by one to set aside the bad one
+                    if (batch.size() == 1) {
+                        rejectedRows.add(rows);
+                    } else {
+                        for (Item item : batch) {
+                            commit(List.of(item), item.rows());
+                        }
+                    }
+                    return;
+                }
+                closeQuietly();
+                if (!running && attempt >= SHUTDOWN_ATTEMPTS) {
+                    droppedRows.add(rows);
+                    return;
+                }
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                // Retry now
+            }
+            delay = Math.min(MAX_RETRY_DELAY_MS, delay * 2);
+        }
+    }
+
+    /**
+     * True for SQLState classes 22 (data exception) and 23 (constraint
+     * violation), which fail the same way however often they are retried.
+     */
+    static boolean isDataError(SQLException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            for (SQLException next = cause instanceof SQLException sql ? sql : null; next != null;
+                 next = next.getNextException()) {
+                String state = next.getSQLState();
+                if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write(List<Item> batch) throws SQLException {
+        try (PreparedStatement games = connection.prepareStatement(MERGE_GAME);
+             PreparedStatement answers = connection.prepareStatement(MERGE_ANSWER);
+             PreparedStatement scores = connection.prepareStatement(MERGE_SCORE)) {
+            for (Item item : batch) {
+                if (item instanceof Game game) {
+                    games.setString(1, game.gameId());
+                    games.setString(2, game.roomName());
+                    games.setString(3, game.mode());
+                    games.setString(4, game.event());
+                    games.setInt(5, game.players());
+                    games.setInt(6, game.questions());
+                    games.setTimestamp(7, new Timestamp(game.startedAtMillis()));
+                    games.setTimestamp(8, new Timestamp(game.endedAtMillis()));
+                    games.addBatch();
+                } else if (item instanceof Round round) {
+                    for (Answer answer : round.answers()) {
+                        answers.setString(1, round.gameId());
+                        answers.setInt(2, round.questionNumber());
+                        answers.setLong(3, round.fingerprint());
+                        answers.setString(4, round.category());
+                        answers.setString(5, answer.username());
+                        answers.setInt(6, answer.answer());
+                        answers.setBoolean(7, answer.correct());
+                        answers.setLong(8, answer.responseMillis());
+                        answers.setInt(9, answer.points());
+                        answers.addBatch();
+                    }
+                } else if (item instanceof Scores gameScores) {
+                    for (Map.Entry<String, Integer> score : gameScores.scores().entrySet()) {
+                        scores.setString(1, gameScores.gameId());
+                        scores.setString(2, score.getKey());
+                        scores.setInt(3, score.getValue());
+                        scores.addBatch();
+                    }
+                }
+            }
+            games.executeBatch();
+            answers.executeBatch();
+            scores.executeBatch();
+        }
+    }
+
+    private void connect() throws SQLException {
+        connection = DriverManager.getConnection(url, "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    private void rollbackQuietly() {
+        try {
+            if (connection != null) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            // Closing the connection discards the transaction as well
+        }
+    }
+
+    private void closeQuietly() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Already broken; the next batch reconnects
+        }
+        connection = null;
+    }
+
+    /**
+     * One player's scored answer to a round.
+     */
+    public record Answer(String username, int answer, boolean correct, long responseMillis, int points) {
+    }
+
+    private sealed interface Item permits Game, Round, Scores {
+        int rows();
+    }
+
+    private record Game(String gameId, String roomName, String mode, String event, int players,
+                        int questions, long startedAtMillis, long endedAtMillis) implements Item {
+        public int rows() {
+            return 1;
+        }
+    }
+
+    private record Round(String gameId, int questionNumber, long fingerprint, String category,
+                         List<Answer> answers) implements Item {
+        public int rows() {
+            return answers.size();
+        }
+    }
+
+    private record Scores(String gameId, Map<String, Integer> scores) implements Item {
+        public int rows() {
+            return scores.size();
+        }
+    }
+}
@@ -1,53 +1,74 @@
 package com.example.server;
 
-import com.example.server.QuestionManager.Question;
 import org.java_websocket.WebSocket;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 /**
- * Manages a game room with players, questions, and scoring
+ * Manages a game room with players, questions, and scoring.
+ *
+ * A room is confined to its {@link RoomShards} thread: every method must be
+ * called from that shard, which is why plain collections are enough here.
  */
 public class GameRoom {
+    public static final int QUESTIONS_PER_GAME = 10;
+    private static final ScoreCalculator SCORE_CALCULATOR = new ScoreCalculator();
+
     private final String roomId;
     private final String roomName;
     private final String hostUsername;
     private final List<WebSocket> players;
     private final Map<String, Integer> scores;
-    private final List<Question> questions;
+    // The bank version this room was created with; a reload does not affect it
+    private final QuestionBank questionBank;
+    // Sampled when the game starts, so creating a room costs nothing
+    private List<Question> questions = Collections.emptyList();
     private int currentQuestionIndex;
     private final Map<WebSocket, Integer> currentAnswers;
+    // Response time of each player's latest answer, measured on the server's monotonic clock
+    private final Map<WebSocket, Long> responseMillis = new HashMap<>();
+    // Answers per option for the open question, kept up to date as answers arrive
+    private int[] answerCounts = new int[0];
     private Question currentQuestion;
     private boolean gameStarted;
+    // True between a question being sent and its results being processed
+    private boolean roundOpen;
+    // True once the current question's results have been processed
+    private boolean roundClosed;
+    private long roundOpenedNanos;
+    private long roundDeadlineNanos;
+    private long roundMillis;
+    // Measured difficulty the host asked for, or null for any
+    private String targetDifficulty;
+    // Event whose leaderboard the game counts towards, or null
+    private String event;
+    // Identifies this game in the results database
+    private final String gameId;
+    private long startedAtMillis;
+    // Players of a recovered room who have not reconnected yet, and their unscored answers
+    private final Set<String> awaiting = new LinkedHashSet<>();
+    private final Map<String, RoomRecovery.PendingAnswer> restoredAnswers = new LinkedHashMap<>();
+    private final Map<String, WebSocket> rejoined = new HashMap<>();
     private final int maxPlayers;
-    private final int questionsPerGame;
+    // The next step of the game flow (start, question, results, cleanup) waiting on the timer
+    private HashedWheelTimer.Timeout pendingStep;
+    
+    public GameRoom(String roomId, String roomName, String hostUsername, QuestionBank questionBank) {
+        this(roomId, UUID.randomUUID().toString(), roomName, hostUsername, questionBank);
+    }
     
-    public GameRoom(String roomId, String roomName, String hostUsername, List<Question> allQuestions) {
+    GameRoom(String roomId, String gameId, String roomName, String hostUsername, QuestionBank questionBank) {
         this.roomId = roomId;
+        this.gameId = gameId;
         this.roomName = roomName;
         this.hostUsername = hostUsername;
-        this.players = new CopyOnWriteArrayList<>();
-        this.scores = new ConcurrentHashMap<>();
-        this.currentAnswers = new ConcurrentHashMap<>();
+        this.players = new ArrayList<>();
+        this.scores = new LinkedHashMap<>();
+        this.currentAnswers = new HashMap<>();
         this.currentQuestionIndex = 0;
         this.gameStarted = false;
         this.maxPlayers = 6;
-        this.questionsPerGame = 10;
-        
-        // Select random questions
-        this.questions = selectRandomQuestions(allQuestions, questionsPerGame);
-    }
-    
-    private List<Question> selectRandomQuestions(List<Question> allQuestions, int count) {
-        List<Question> selected = new ArrayList<>();
-        List<Question> copy = new ArrayList<>(allQuestions);
-        Collections.shuffle(copy);
-        
-        int actualCount = Math.min(count, copy.size());
-        for (int i = 0; i < actualCount; i++) {
-            selected.add(copy.get(i));
-        }
-        return selected;
+        this.questionBank = questionBank;
     }
     
     public boolean addPlayer(WebSocket conn, String username) {
@@ -64,14 +85,38 @@ public class GameRoom {
     
     public void removePlayer(WebSocket conn) {
         players.remove(conn);
+        uncount(currentAnswers.remove(conn));
+        responseMillis.remove(conn);
+    }
+    
+    public String getTargetDifficulty() {
+        return targetDifficulty;
+    }
+    
+    public void setTargetDifficulty(String targetDifficulty) {
+        this.targetDifficulty = targetDifficulty;
+    }
+    
+    public String getEvent() {
+        return event;
+    }
+    
+    public void setEvent(String event) {
+        this.event = event;
     }
     
     public boolean canStart() {
         return players.size() >= 1 && !gameStarted; // At least 1 player
     }
     
-    public void startGame() {
+    /**
+     * Starts the game with questions drawn from the room's bank version,
+     * skipping those matched by {@code exclude} where possible.
+     */
+    public void startGame(Predicate<Question> exclude) {
+        questions = questionBank.sampleQuestions(QUESTIONS_PER_GAME, null, null, exclude);
         gameStarted = true;
+        startedAtMillis = System.currentTimeMillis();
         currentQuestionIndex = 0;
     }
     
@@ -85,57 +130,289 @@ public class GameRoom {
     
     public void nextQuestion() {
         currentQuestionIndex++;
+        roundClosed = false;
         currentAnswers.clear();
+        responseMillis.clear();
+    }
+    
+    /**
+     * Starts accepting answers for the current question until {@code durationMillis}
+     * from now. The deadline uses {@link System#nanoTime()}, so wall clock changes
+     * cannot stretch or cut a round.
+     */
+    public void openRound(long durationMillis) {
+        currentAnswers.clear();
+        responseMillis.clear();
+        Question question = getCurrentQuestion();
+        answerCounts = new int[question != null ? question.options().size() : 0];
+        roundOpen = true;
+        roundClosed = false;
+        roundMillis = durationMillis;
+        roundOpenedNanos = System.nanoTime();
+        roundDeadlineNanos = roundOpenedNanos + durationMillis * 1_000_000;
+    }
+    
+    /**
+     * Stops accepting answers. Returns false if the round was already closed,
+     * so results are processed exactly once per question.
+     */
+    public boolean closeRound() {
+        if (!roundOpen) {
+            return false;
+        }
+        roundOpen = false;
+        roundClosed = true;
+        return true;
+    }
+    
+    public boolean isRoundOpen() {
+        return roundOpen;
+    }
+    
+    public boolean isRoundClosed() {
+        return roundClosed;
+    }
+    
+    /**
+     * Records the player's answer and response time; returns false if no
+     * question is open or its deadline has passed, even if the round has not
+     * been closed yet.
+     */
+    public boolean submitAnswer(WebSocket conn, String username, int answerIndex) {
+        long now = System.nanoTime();
+        if (!roundOpen || now - roundDeadlineNanos > 0) {
+            return false;
+        }
+        responseMillis.put(conn, (now - roundOpenedNanos) / 1_000_000);
+        uncount(currentAnswers.put(conn, answerIndex));
+        if (answerIndex >= 0 && answerIndex < answerCounts.length) {
+            answerCounts[answerIndex]++;
+        }
+        return true;
+    }
+    
+    private void uncount(Integer answerIndex) {
+        if (answerIndex != null && answerIndex >= 0 && answerIndex < answerCounts.length) {
+            answerCounts[answerIndex]--;
+        }
     }
     
-    public void submitAnswer(WebSocket conn, String username, int answerIndex) {
-        currentAnswers.put(conn, answerIndex);
+    /**
+     * Answers per option for the current question, in option order. Its size
+     * depends only on the question, not on how many players are in the room.
+     */
+    public int[] getAnswerCounts() {
+        return answerCounts.clone();
+    }
+    
+    public int getAnswerCount() {
+        return currentAnswers.size();
+    }
+    
+    /**
+     * The player's answer to the current question, or null if they have not answered.
+     */
+    public Integer getAnswer(WebSocket conn) {
+        return currentAnswers.get(conn);
+    }
+    
+    /**
+     * How long the player took to give their latest answer, or -1 if they have not answered.
+     */
+    public long getResponseMillis(WebSocket conn) {
+        return responseMillis.getOrDefault(conn, -1L);
+    }
+    
+    /**
+     * Points the player's answer to the current question is worth: nothing if
+     * wrong, otherwise base points plus a speed bonus, scaled by difficulty.
+     */
+    public int getPoints(WebSocket conn) {
+        Integer answer = currentAnswers.get(conn);
+        if (currentQuestion == null || answer == null || !currentQuestion.isCorrect(answer)) {
+            return 0;
+        }
+        return points(responseMillis.get(conn), roundMillis, currentQuestion.difficulty());
+    }
+    
+    /**
+     * Points for a correct answer given after {@code responseMillis} of a round.
+     */
+    static int points(long responseMillis, long roundMillis, String difficulty) {
+        return SCORE_CALCULATOR.calculateScoreWithDifficulty(responseMillis, roundMillis, difficulty);
+    }
+    
+    public int getScore(String username) {
+        return scores.getOrDefault(username, 0);
     }
     
     public boolean allPlayersAnswered() {
         return currentAnswers.size() >= players.size();
     }
     
-    public Map<String, Boolean> checkAnswers(Map<WebSocket, String> usernames) {
-        Map<String, Boolean> results = new HashMap<>();
-        
+    /**
+     * Awards points for the current question's correct answers.
+     */
+    public void scoreAnswers(Map<WebSocket, String> usernames) {
         if (currentQuestion == null) {
-            return results;
+            return;
         }
         
-        String correctAnswer = currentQuestion.getCorrectAnswer();
-        List<String> options = currentQuestion.getOptions();
-        int correctIndex = options.indexOf(correctAnswer);
-        
-        for (Map.Entry<WebSocket, Integer> entry : currentAnswers.entrySet()) {
-            String username = usernames.get(entry.getKey());
-            boolean isCorrect = entry.getValue() == correctIndex;
-            results.put(username, isCorrect);
-            
-            if (isCorrect) {
-                scores.put(username, scores.getOrDefault(username, 0) + 10);
+        for (WebSocket conn : currentAnswers.keySet()) {
+            int points = getPoints(conn);
+            if (points > 0) {
+                String username = usernames.get(conn);
+                scores.put(username, scores.getOrDefault(username, 0) + points);
             }
         }
-        
-        return results;
     }
     
+    /**
+     * Remembers the room's next scheduled step so it can be cancelled if the room empties.
+     */
+    public void setPendingStep(HashedWheelTimer.Timeout step) {
+        this.pendingStep = step;
+    }
+
+    public void cancelPendingStep() {
+        HashedWheelTimer.Timeout step = pendingStep;
+        if (step != null) {
+            step.cancel();
+        }
+    }
+
     public boolean isGameOver() {
         return currentQuestionIndex >= questions.size();
     }
     
+    /**
+     * Copies the room's state for a recovery snapshot, or returns null once
+     * the game is over. {@code mark} is the journal position right now.
+     */
+    public RoomRecovery.RoomState snapshot(Map<WebSocket, String> usernames, RoomJournal.Mark mark) {
+        if (gameStarted && isGameOver()) {
+            return null;
+        }
+        RoomRecovery.RoomState state = new RoomRecovery.RoomState(roomId);
+        state.gameId = gameId;
+        state.roomName = roomName;
+        state.host = hostUsername;
+        state.event = event;
+        state.difficulty = targetDifficulty;
+        state.started = gameStarted;
+        state.startedAtMillis = startedAtMillis;
+        state.questionIndex = currentQuestionIndex;
+        state.roundClosed = roundClosed;
+        state.roundMillis = roundMillis;
+        state.mark = mark;
+        for (Question question : questions) {
+            state.questions.add(new RoomRecovery.QuestionRef(question.id(), question.fingerprint()));
+        }
+        state.scores.putAll(scores);
+        // Players still expected back keep their seats and answers
+        state.seats.addAll(awaiting);
+        state.answers.putAll(restoredAnswers);
+        for (WebSocket player : players) {
+            String username = usernames.get(player);
+            if (username == null) {
+                continue;
+            }
+            state.seats.add(username);
+            Integer answer = roundClosed ? null : currentAnswers.get(player); // Scored already
+            if (answer != null) {
+                state.answers.put(username, new RoomRecovery.PendingAnswer(username, answer,
+                        responseMillis.get(player)));
+            }
+        }
+        return state;
+    }
+    
+    /**
+     * Puts a recovered room back where it was, with every player waiting to
+     * reconnect. {@code questions} are the game's questions in order. The
+     * open round, if any, stays closed until {@link #openRound} reopens it.
+     */
+    public void restore(RoomRecovery.RoomState state, List<Question> questions) {
+        this.questions = questions;
+        this.targetDifficulty = state.difficulty;
+        this.event = state.event;
+        this.gameStarted = state.started;
+        this.startedAtMillis = state.startedAtMillis;
+        this.currentQuestionIndex = state.questionIndex;
+        this.roundClosed = state.roundClosed;
+        this.roundMillis = state.roundMillis;
+        scores.putAll(state.scores);
+        awaiting.addAll(state.seats);
+        restoredAnswers.putAll(state.answers);
+    }
+    
+    /**
+     * Gives a recovered player their seat back on a new connection; returns
+     * false if the room was not holding one for them.
+     */
+    public boolean rejoin(WebSocket conn, String username) {
+        if (!awaiting.remove(username)) {
+            return false;
+        }
+        players.add(conn);
+        rejoined.put(username, conn);
+        return true;
+    }
+    
+    public int getAwaitingCount() {
+        return awaiting.size();
+    }
+    
+    /**
+     * Gives up on the players who have not reconnected and returns their usernames.
+     */
+    public List<String> dropAwaiting() {
+        List<String> dropped = new ArrayList<>(awaiting);
+        awaiting.clear();
+        return dropped;
+    }
+    
+    /**
+     * Counts the answers reconnected players gave before the restart in the
+     * round just opened, and returns them. Only the first round after a
+     * recovery has any.
+     */
+    public List<RoomRecovery.PendingAnswer> restoreAnswers() {
+        List<RoomRecovery.PendingAnswer> restored = new ArrayList<>();
+        for (RoomRecovery.PendingAnswer answer : restoredAnswers.values()) {
+            WebSocket conn = rejoined.get(answer.username());
+            if (conn == null || !players.contains(conn) || !roundOpen) {
+                continue;
+            }
+            responseMillis.put(conn, answer.responseMillis());
+            uncount(currentAnswers.put(conn, answer.answer()));
+            if (answer.answer() >= 0 && answer.answer() < answerCounts.length) {
+                answerCounts[answer.answer()]++;
+            }
+            restored.add(answer);
+        }
+        restoredAnswers.clear();
+        rejoined.clear();
+        return restored;
+    }
+    
     public Map<String, Integer> getFinalScores() {
         return new HashMap<>(scores);
     }
     
     // Getters
     public String getRoomId() { return roomId; }
+    public String getGameId() { return gameId; }
+    public long getStartedAtMillis() { return startedAtMillis; }
     public String getRoomName() { return roomName; }
     public String getHostUsername() { return hostUsername; }
     public List<WebSocket> getPlayers() { return new ArrayList<>(players); }
+    /** Read-only live view for iteration; no copy is made. */
+    public List<WebSocket> playersView() { return Collections.unmodifiableList(players); }
     public int getPlayerCount() { return players.size(); }
     public boolean isGameStarted() { return gameStarted; }
     public int getCurrentQuestionNumber() { return currentQuestionIndex + 1; }
     public int getTotalQuestions() { return questions.size(); }
+    public QuestionBank getQuestionBank() { return questionBank; }
     public Map<String, Integer> getScores() { return new HashMap<>(scores); }
 }
@@ -0,0 +1,260 @@
+package com.example.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hashed timing wheel: one thread owns every pending deadline in the server
+ * (game start, question, result and cleanup delays) instead of a sleeping
+ * thread per delay.
+ *
+ * Deadlines are rounded up to the tick. Scheduling and cancelling are O(1)
+ * and lock-free; the worker moves new timeouts into their slot at the next
+ * tick and runs expired tasks on its own thread, so tasks must be short or
+ * hand off to another executor.
+ */
+public final class HashedWheelTimer {
+
+    /**
+     * Handle for a scheduled task.
+     */
+    public interface Timeout {
+        /** Returns true if this call prevented the task from running. */
+        boolean cancel();
+
+        boolean isCancelled();
+    }
+
+    private static final int ST_PENDING = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder fired = new LongAdder();
+    private final LongAdder latenessNanos = new LongAdder();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    public HashedWheelTimer(String name) {
+        this(name, ServerConfig.TIMER_TICK_MS, TimeUnit.MILLISECONDS, 512);
+    }
+
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int slots) {
+        int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::runWorker, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+
+        ServerMetrics.gauge(name + ".pending", pending::get);
+        ServerMetrics.gauge(name + ".fired", fired::sum);
+        ServerMetrics.gauge(name + ".lateness.avgMs", () -> {
+            long count = fired.sum();
+            return count == 0 ? 0.0 : latenessNanos.sum() / 1e6 / count;
+        });
+        ServerMetrics.gauge(name + ".lateness.maxMs", () -> maxLatenessNanos.get() / 1e6);
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer stopped");
+        }
+        Entry entry = new Entry(task, System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay)));
+        pending.incrementAndGet();
+        added.add(entry);
+        return entry;
+    }
+
+    public int pendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the worker; tasks still pending never run.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void runWorker() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                break;
+            }
+            Bucket bucket = wheel[(int) (tick & mask)];
+            removeCancelled();
+            transferAdded();
+            bucket.expire(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the current tick ends; returns its deadline relative to startTime.
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long now = System.nanoTime() - startTime;
+            long sleepNanos = deadline - now;
+            if (sleepNanos <= 0) {
+                return now;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void transferAdded() {
+        Entry entry;
+        while ((entry = added.poll()) != null) {
+            if (entry.state.get() != ST_PENDING) {
+                continue;
+            }
+            long ticks = entry.deadline / tickNanos;
+            entry.remainingRounds = (ticks - tick) / wheel.length;
+            // Deadlines already in the past go into the current slot
+            wheel[(int) (Math.max(ticks, tick) & mask)].add(entry);
+        }
+    }
+
+    private void removeCancelled() {
+        Entry entry;
+        while ((entry = cancelled.poll()) != null) {
+            if (entry.bucket != null) {
+                entry.bucket.remove(entry);
+            }
+        }
+    }
+
+    private void recordFired(Entry entry, long now) {
+        long late = Math.max(0, now - entry.deadline);
+        fired.increment();
+        latenessNanos.add(late);
+        maxLatenessNanos.accumulateAndGet(late, Math::max);
+    }
+
+    private final class Entry implements Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_PENDING);
+        private long remainingRounds;
+        private Bucket bucket;
+        private Entry prev;
+        private Entry next;
+
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_PENDING, ST_CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            // Unlinking is left to the worker so buckets stay single-threaded
+            cancelled.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        void expire(long now) {
+            if (!state.compareAndSet(ST_PENDING, ST_EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+            recordFired(this, now);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Timer task failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of entries hashed to one slot; touched only by the worker.
+     */
+    private static final class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            if (head == null) {
+                head = tail = entry;
+            } else {
+                tail.next = entry;
+                entry.prev = tail;
+                tail = entry;
+            }
+        }
+
+        void expire(long now) {
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.remainingRounds <= 0) {
+                    remove(entry);
+                    entry.expire(now);
+                } else if (entry.isCancelled()) {
+                    remove(entry);
+                } else {
+                    entry.remainingRounds--;
+                }
+                entry = next;
+            }
+        }
+
+        void remove(Entry entry) {
+            if (entry.bucket != this) {
+                return;
+            }
+            if (entry.prev != null) {
+                entry.prev.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            } else {
+                tail = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+    }
+}
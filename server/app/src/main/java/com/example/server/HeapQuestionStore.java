@@ -0,0 +1,113 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Questions held as {@link Question} objects, with per-category and
+ * per-difficulty position arrays built once up front.
+ */
+final class HeapQuestionStore implements QuestionStore {
+    private final List<Question> questions;
+    private final Map<String, Positions> byCategory;
+    private final Map<String, Positions> byDifficulty;
+    private final long heapBytes;
+
+    HeapQuestionStore(List<Question> questions) {
+        this.questions = questions;
+
+        Map<String, List<Integer>> categories = new HashMap<>();
+        Map<String, List<Integer>> difficulties = new HashMap<>();
+        for (int i = 0; i < questions.size(); i++) {
+            Question q = questions.get(i);
+            if (q.category() != null) {
+                categories.computeIfAbsent(q.category(), key -> new ArrayList<>()).add(i);
+            }
+            if (q.difficulty() != null) {
+                difficulties.computeIfAbsent(q.difficulty(), key -> new ArrayList<>()).add(i);
+            }
+        }
+        this.byCategory = toIndex(categories);
+        this.byDifficulty = toIndex(difficulties);
+        this.heapBytes = estimateBytes(questions);
+    }
+
+    private static Map<String, Positions> toIndex(Map<String, List<Integer>> lists) {
+        Map<String, Positions> index = new HashMap<>();
+        lists.forEach((key, list) -> index.put(key, of(list.stream().mapToInt(Integer::intValue).toArray())));
+        return index;
+    }
+
+    static Positions of(int[] positions) {
+        return new Positions() {
+            @Override
+            public int size() {
+                return positions.length;
+            }
+
+            @Override
+            public int at(int i) {
+                return positions[i];
+            }
+        };
+    }
+
+    /**
+     * Rough retained heap of the questions, counting each shared string once.
+     */
+    private static long estimateBytes(List<Question> questions) {
+        Set<String> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 16L + 4L * questions.size();
+        for (Question q : questions) {
+            bytes += 40 + 16 + 4L * q.options().size();
+            bytes += stringBytes(q.text(), seen) + stringBytes(q.category(), seen)
+                    + stringBytes(q.difficulty(), seen);
+            for (String option : q.options()) {
+                bytes += stringBytes(option, seen);
+            }
+        }
+        return bytes;
+    }
+
+    private static long stringBytes(String s, Set<String> seen) {
+        if (s == null || !seen.add(s)) {
+            return 0;
+        }
+        boolean latin1 = s.chars().allMatch(c -> c < 256);
+        return 40 + (long) s.length() * (latin1 ? 1 : 2);
+    }
+
+    List<Question> questions() {
+        return questions;
+    }
+
+    @Override
+    public int size() {
+        return questions.size();
+    }
+
+    @Override
+    public Question get(int index) {
+        return questions.get(index);
+    }
+
+    @Override
+    public Positions byCategory(String category) {
+        return byCategory.get(category);
+    }
+
+    @Override
+    public Positions byDifficulty(String difficulty) {
+        return byDifficulty.get(difficulty);
+    }
+
+    @Override
+    public long heapBytes() {
+        return heapBytes;
+    }
+}
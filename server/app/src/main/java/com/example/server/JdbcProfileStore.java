@@ -0,0 +1,185 @@
+package com.example.server;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Player profiles in a {@code players} table of the results database
+ * ({@link ServerConfig#RESULTS_DB}).
+ *
+ * Every thread calling it gets its own connection, so the cache's loaders
+ * read in parallel. Saves add to the stored totals with an UPDATE, then
+ * INSERT the players it found no row for; only the cache's one writer thread
+ * saves, so nothing can insert the same player in between. A null url
+ * stores nothing and every player loads as new.
+ */
+public final class JdbcProfileStore implements ProfileStore {
+    private static final String SCHEMA = "CREATE TABLE IF NOT EXISTS players ("
+            + "username VARCHAR(255) PRIMARY KEY, score BIGINT, games INT, last_played TIMESTAMP, seen VARBINARY)";
+    private static final String SELECT = "SELECT username, score, games, last_played, seen FROM players";
+    private static final String SELECT_ONE = SELECT + " WHERE username = ?";
+    private static final String SELECT_RECENT = SELECT + " ORDER BY last_played DESC LIMIT ?";
+    private static final String UPDATE = "UPDATE players SET score = score + ?, games = games + ?, "
+            + "last_played = GREATEST(last_played, ?), seen = COALESCE(?, seen) WHERE username = ?";
+    private static final String INSERT = "INSERT INTO players (username, score, games, last_played, seen) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private final String url;
+    private final ThreadLocal<Connection> connections = new ThreadLocal<>();
+    private final Queue<Connection> opened = new ConcurrentLinkedQueue<>();
+
+    public JdbcProfileStore() {
+        this(ServerConfig.RESULTS_DB);
+    }
+
+    public JdbcProfileStore(String url) {
+        this.url = url;
+    }
+
+    @Override
+    public PlayerProfile load(String username) throws SQLException {
+        if (url == null) {
+            return null;
+        }
+        try (PreparedStatement select = connection().prepareStatement(SELECT_ONE)) {
+            select.setString(1, username);
+            try (ResultSet rows = select.executeQuery()) {
+                return rows.next() ? profile(rows) : null;
+            }
+        } catch (SQLException e) {
+            discardConnection();
+            throw e;
+        }
+    }
+
+    @Override
+    public List<PlayerProfile> loadRecent(int limit) throws SQLException {
+        List<PlayerProfile> profiles = new ArrayList<>();
+        if (url == null) {
+            return profiles;
+        }
+        try (PreparedStatement select = connection().prepareStatement(SELECT_RECENT)) {
+            select.setInt(1, limit);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    profiles.add(profile(rows));
+                }
+            }
+        } catch (SQLException e) {
+            discardConnection();
+            throw e;
+        }
+        return profiles;
+    }
+
+    @Override
+    public void save(Collection<Update> updates) throws SQLException {
+        if (url == null || updates.isEmpty()) {
+            return;
+        }
+        Connection connection = connection();
+        try {
+            connection.setAutoCommit(false);
+            List<Update> ordered = new ArrayList<>(updates);
+            int[] updated;
+            try (PreparedStatement update = connection.prepareStatement(UPDATE)) {
+                for (Update u : ordered) {
+                    update.setLong(1, u.score());
+                    update.setInt(2, u.games());
+                    update.setTimestamp(3, new Timestamp(u.lastPlayedMillis()));
+                    setSeen(update, 4, u.seen());
+                    update.setString(5, u.username());
+                    update.addBatch();
+                }
+                updated = update.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                boolean any = false;
+                for (int i = 0; i < ordered.size(); i++) {
+                    if (updated[i] != 0) {
+                        continue;
+                    }
+                    Update u = ordered.get(i);
+                    insert.setString(1, u.username());
+                    insert.setLong(2, u.score());
+                    insert.setInt(3, u.games());
+                    insert.setTimestamp(4, new Timestamp(u.lastPlayedMillis()));
+                    setSeen(insert, 5, u.seen());
+                    insert.addBatch();
+                    any = true;
+                }
+                if (any) {
+                    insert.executeBatch();
+                }
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            discardConnection(); // Closing rolls the transaction back
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = opened.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Nothing left to do with it
+            }
+        }
+    }
+
+    private static PlayerProfile profile(ResultSet rows) throws SQLException {
+        Timestamp lastPlayed = rows.getTimestamp(4);
+        return new PlayerProfile(rows.getString(1), rows.getLong(2), rows.getInt(3),
+                lastPlayed != null ? lastPlayed.getTime() : 0, rows.getBytes(5));
+    }
+
+    private static void setSeen(PreparedStatement statement, int index, byte[] seen) throws SQLException {
+        if (seen != null) {
+            statement.setBytes(index, seen);
+        } else {
+            statement.setNull(index, Types.VARBINARY);
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        Connection connection = connections.get();
+        if (connection == null || connection.isClosed()) {
+            connection = DriverManager.getConnection(url, "sa", "");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(SCHEMA);
+            }
+            connections.set(connection);
+            opened.add(connection);
+        }
+        return connection;
+    }
+
+    private void discardConnection() {
+        Connection connection = connections.get();
+        connections.remove();
+        if (connection != null) {
+            opened.remove(connection);
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                // Already broken; the next call reconnects
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.example.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-wide leaderboards: total points over all games ("all"), the last 24
+ * hours ("daily"), the last 7 days ("weekly") and one per named event
+ * ("event:NAME"). Only events the server knows of get a board: those
+ * configured in {@link ServerConfig#LEADERBOARD_EVENT_NAMES}, opened by the
+ * operator with {@link #openEvent} or already in the saved file. Otherwise
+ * any client could push real events out of the bounded set with made-up names.
+ *
+ * Each board is a {@link RankedScores} skip list, so a player's rank, the top
+ * N and the neighbors around someone take O(log n) steps instead of sorting.
+ * The daily and weekly boards are {@link LeaderboardWindow}s that roll games
+ * into time buckets and take expired buckets back out a slice at a time.
+ *
+ * Rooms report their final scores as games end, from any shard. A whole game
+ * is applied under one write lock; queries share a read lock. The boards are
+ * written to {@link ServerConfig#LEADERBOARD_FILE} every
+ * {@link ServerConfig#LEADERBOARD_FLUSH_SECONDS} seconds when they have
+ * changed, and on shutdown.
+ */
+public final class Leaderboard {
+    public static final String ALL_TIME = "all";
+    public static final String DAILY = "daily";
+    public static final String WEEKLY = "weekly";
+    private static final String EVENT_PREFIX = "event:";
+    private static final int DEFAULT_TOP = 10;
+    private static final int DEFAULT_RADIUS = 5;
+    private static final int MAX_ROWS = 100;
+    // Expired bucket entries taken out per window per tick, to keep write lock holds short
+    private static final int EXPIRE_BATCH = 10_000;
+    private static final int FILE_MAGIC = 0x54524c42; // "TRLB"
+    private static final int FILE_VERSION = 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RankedScores allTime = new RankedScores();
+    private final Map<String, LeaderboardWindow> windows = new LinkedHashMap<>();
+    // Least recently played event first
+    private final Map<String, LeaderboardWindow> events = new LinkedHashMap<>();
+    private final Set<String> knownEvents = ConcurrentHashMap.newKeySet();
+    private final Path file;
+    private final LongSupplier clock;
+    private final LongAdder updates = ServerMetrics.counter("leaderboard.updates");
+    private final LongAdder expiredEntries = ServerMetrics.counter("leaderboard.expired");
+    private volatile boolean dirty;
+    private ScheduledExecutorService maintenance;
+
+    public Leaderboard() {
+        this(ServerConfig.LEADERBOARD_FILE != null ? Paths.get(ServerConfig.LEADERBOARD_FILE) : null);
+    }
+
+    public Leaderboard(Path file) {
+        this(file, System::currentTimeMillis);
+    }
+
+    Leaderboard(Path file, LongSupplier clock) {
+        this.file = file;
+        this.clock = clock;
+        int maxPlayers = ServerConfig.LEADERBOARD_WINDOW_MAX_PLAYERS;
+        windows.put(DAILY, new LeaderboardWindow(DAILY, TimeUnit.HOURS.toMillis(1), 24, maxPlayers));
+        windows.put(WEEKLY, new LeaderboardWindow(WEEKLY, TimeUnit.DAYS.toMillis(1), 7, maxPlayers));
+        ServerMetrics.gauge("leaderboard.players", () -> size(ALL_TIME));
+        for (String event : ServerConfig.LEADERBOARD_EVENT_NAMES.split(",")) {
+            if (Names.isValidEvent(event.trim())) {
+                knownEvents.add(event.trim());
+            }
+        }
+        if (file != null && Files.exists(file)) {
+            load();
+        }
+    }
+
+    /**
+     * Adds one game's final scores to every board; {@code event} may be null.
+     */
+    public void recordGame(Map<String, Integer> scores, String event) {
+        long now = clock.getAsLong();
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+                if (entry.getKey() != null) {
+                    allTime.add(entry.getKey(), entry.getValue(), 1);
+                }
+            }
+            for (LeaderboardWindow window : windows.values()) {
+                window.record(scores, now);
+            }
+            if (event != null && knownEvents.contains(event)) {
+                eventWindow(EVENT_PREFIX + event).record(scores, now);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        updates.add(scores.size());
+        dirty = true;
+    }
+
+    /**
+     * True when rooms may count towards {@code event}.
+     */
+    public boolean isKnownEvent(String event) {
+        return event != null && knownEvents.contains(event);
+    }
+
+    /**
+     * Lets rooms count towards {@code event} from now on; false if the name
+     * is not a valid event name.
+     */
+    public boolean openEvent(String event) {
+        if (!Names.isValidEvent(event)) {
+            return false;
+        }
+        knownEvents.add(event);
+        return true;
+    }
+
+    /**
+     * The boards a game in {@code event} counted towards, for GAME_OVER.
+     */
+    public List<String> windowsFor(String event) {
+        List<String> ids = new ArrayList<>();
+        ids.add(ALL_TIME);
+        ids.addAll(windows.keySet());
+        if (isKnownEvent(event)) {
+            ids.add(EVENT_PREFIX + event);
+        }
+        return ids;
+    }
+
+    /**
+     * The player's standing on a board, or null if they are not on it.
+     */
+    public Standing standing(String window, String username) {
+        lock.readLock().lock();
+        try {
+            RankedScores ranking = ranking(window);
+            return ranking != null ? ranking.standing(username) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The best {@code count} players on a board, best first.
+     */
+    public List<Standing> top(String window, int count) {
+        lock.readLock().lock();
+        try {
+            RankedScores ranking = ranking(window);
+            return ranking != null ? ranking.top(count) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The player and up to {@code radius} players on either side of them, best
+     * first; empty if the player is not on the board.
+     */
+    public List<Standing> around(String window, String username, int radius) {
+        lock.readLock().lock();
+        try {
+            RankedScores ranking = ranking(window);
+            return ranking != null ? ranking.around(username, radius) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size(String window) {
+        lock.readLock().lock();
+        try {
+            RankedScores ranking = ranking(window);
+            return ranking != null ? ranking.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Answers a LEADERBOARD_REQUEST whose content is null or {window, top, around}.
+     */
+    public Map<String, Object> report(String username, Object request) {
+        String window = ALL_TIME;
+        int topCount = DEFAULT_TOP;
+        int radius = DEFAULT_RADIUS;
+        if (request instanceof Map) {
+            Map<?, ?> options = (Map<?, ?>) request;
+            if (options.get("window") != null) {
+                window = options.get("window").toString();
+            }
+            if (options.get("top") instanceof Number) {
+                topCount = ((Number) options.get("top")).intValue();
+            }
+            if (options.get("around") instanceof Number) {
+                radius = ((Number) options.get("around")).intValue();
+            }
+        }
+        return report(username, window, Math.max(0, Math.min(MAX_ROWS, topCount)),
+                Math.max(0, Math.min(MAX_ROWS, radius)));
+    }
+
+    /**
+     * Content of a LEADERBOARD message: the top players of a board and, for a
+     * player on it, their own standing and neighbors. An unknown board (such
+     * as an event nobody has finished yet) is reported empty.
+     */
+    public Map<String, Object> report(String username, String window, int topCount, int radius) {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("window", window);
+        content.put("players", size(window));
+        content.put("top", toMaps(top(window, topCount)));
+        Standing me = username != null ? standing(window, username) : null;
+        if (me != null) {
+            content.put("me", me.toMap());
+            content.put("around", toMaps(around(window, username, radius)));
+        }
+        return content;
+    }
+
+    private static List<Map<String, Object>> toMaps(List<Standing> standings) {
+        List<Map<String, Object>> maps = new ArrayList<>(standings.size());
+        for (Standing standing : standings) {
+            maps.add(standing.toMap());
+        }
+        return maps;
+    }
+
+    // Callers hold the lock
+
+    private RankedScores ranking(String id) {
+        if (ALL_TIME.equals(id)) {
+            return allTime;
+        }
+        LeaderboardWindow window = windows.get(id);
+        if (window == null) {
+            window = events.get(id);
+        }
+        return window != null ? window.ranking() : null;
+    }
+
+    /**
+     * The event's board, created if needed and moved to most recently played;
+     * the least recently played event is dropped past
+     * {@link ServerConfig#LEADERBOARD_EVENTS}.
+     */
+    private LeaderboardWindow eventWindow(String id) {
+        LeaderboardWindow window = events.remove(id);
+        if (window == null) {
+            // One bucket that never expires
+            window = new LeaderboardWindow(id, Long.MAX_VALUE, 1, ServerConfig.LEADERBOARD_WINDOW_MAX_PLAYERS);
+        }
+        events.put(id, window);
+        Iterator<String> eldest = events.keySet().iterator();
+        while (events.size() > ServerConfig.LEADERBOARD_EVENTS) {
+            eldest.next();
+            eldest.remove();
+        }
+        return window;
+    }
+
+    /**
+     * Moves the daily and weekly boards on to the current bucket and takes a
+     * slice of expired entries back out of them.
+     */
+    void expireWindows() {
+        long now = clock.getAsLong();
+        int drained = 0;
+        boolean moved = false;
+        lock.writeLock().lock();
+        try {
+            for (LeaderboardWindow window : windows.values()) {
+                moved |= window.advance(now);
+                drained += window.drain(EXPIRE_BATCH);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        expiredEntries.add(drained);
+        if (moved) {
+            dirty = true;
+        }
+    }
+
+    // Persistence
+
+    /**
+     * Expires windowed boards every second and writes the boards periodically,
+     * on a background thread.
+     */
+    public void start(long flushSeconds) {
+        if (maintenance != null) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "leaderboard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::expireWindows, 1, 1, TimeUnit.SECONDS);
+        if (file != null) {
+            maintenance.scheduleWithFixedDelay(() -> {
+                if (dirty) {
+                    flush();
+                }
+            }, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public void shutdown() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Copies the boards under the read lock, then writes them without holding
+     * the lock. The all-time standings are followed by every windowed board as
+     * its buckets; that section is always written, even when it is empty.
+     */
+    public synchronized void flush() {
+        if (file == null) {
+            return;
+        }
+        dirty = false;
+        List<Standing> standings = new ArrayList<>();
+        Map<String, List<LeaderboardWindow.BucketCopy>> copies = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            allTime.forEach(standings::add);
+            for (LeaderboardWindow window : windows.values()) {
+                copies.put(window.id(), window.copy());
+            }
+            for (LeaderboardWindow window : events.values()) {
+                copies.put(window.id(), window.copy());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(standings.size());
+            for (Standing standing : standings) {
+                BinaryStrings.write(out, standing.username());
+                out.writeLong(standing.score());
+                out.writeInt(standing.games());
+            }
+            out.writeInt(copies.size());
+            for (Map.Entry<String, List<LeaderboardWindow.BucketCopy>> window : copies.entrySet()) {
+                BinaryStrings.write(out, window.getKey());
+                out.writeInt(window.getValue().size());
+                for (LeaderboardWindow.BucketCopy bucket : window.getValue()) {
+                    out.writeLong(bucket.start());
+                    out.writeInt(bucket.names().length);
+                    for (int i = 0; i < bucket.names().length; i++) {
+                        BinaryStrings.write(out, bucket.names()[i]);
+                        out.writeLong(bucket.scores()[i]);
+                        out.writeInt(bucket.games()[i]);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Cannot write leaderboard: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Cannot replace leaderboard: " + e.getMessage());
+        }
+    }
+
+    private void load() {
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                System.err.println("Not a leaderboard file: " + file);
+                return;
+            }
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                System.err.println("Unsupported leaderboard file version " + version + ": " + file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String username = BinaryStrings.read(in);
+                long score = in.readLong();
+                int games = in.readInt();
+                allTime.add(username, score, games);
+            }
+            int windowCount = in.readInt();
+            for (int w = 0; w < windowCount; w++) {
+                loadWindow(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read leaderboard " + file + ": " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("🏆 Loaded leaderboard with " + allTime.size() + " players and "
+                + events.size() + " events");
+    }
+
+    private void loadWindow(DataInputStream in) throws IOException {
+        String id = BinaryStrings.read(in);
+        LeaderboardWindow window = windows.get(id);
+        if (window == null && id.startsWith(EVENT_PREFIX)) {
+            knownEvents.add(id.substring(EVENT_PREFIX.length()));
+            window = eventWindow(id);
+        }
+        int bucketCount = in.readInt();
+        for (int b = 0; b < bucketCount; b++) {
+            long start = in.readLong();
+            int size = in.readInt();
+            String[] names = new String[size];
+            long[] scores = new long[size];
+            int[] games = new int[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = BinaryStrings.read(in);
+                scores[i] = in.readLong();
+                games[i] = in.readInt();
+            }
+            if (window != null) { // Skips windows this server does not keep
+                window.restore(new LeaderboardWindow.BucketCopy(start, names, scores, games));
+            }
+        }
+    }
+
+    /**
+     * A player's place on a board at the time of the query.
+     */
+    public record Standing(int rank, String username, long score, int games) {
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("rank", rank);
+            map.put("username", username);
+            map.put("score", score);
+            map.put("games", games);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Standings over the last {@code bucketCount} buckets of {@code bucketMillis}
+ * each (for example 24 one-hour buckets for "daily").
+ *
+ * Games are rolled into the current bucket as they end and added to a
+ * {@link RankedScores} holding the window totals, so top-N never looks at
+ * raw results. A bucket that falls out of the window is queued and its
+ * points are taken back out a slice at a time by {@link #drain(int)}.
+ *
+ * At most {@code maxPlayers} players are ranked; past that the lowest ranked
+ * player is dropped along with their bucket entries, which bounds memory at
+ * about {@code maxPlayers * bucketCount} entries.
+ *
+ * Not thread-safe; {@link Leaderboard} guards every window with its lock.
+ */
+final class LeaderboardWindow {
+    private final String id;
+    private final long bucketMillis;
+    private final int bucketCount;
+    private final int maxPlayers;
+    private final RankedScores ranking = new RankedScores();
+    // Oldest first
+    private final ArrayDeque<Bucket> buckets = new ArrayDeque<>();
+    // Out of the window, points not yet taken back out of the ranking
+    private final ArrayDeque<Bucket> expired = new ArrayDeque<>();
+
+    LeaderboardWindow(String id, long bucketMillis, int bucketCount, int maxPlayers) {
+        this.id = id;
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+        this.maxPlayers = maxPlayers;
+    }
+
+    String id() {
+        return id;
+    }
+
+    RankedScores ranking() {
+        return ranking;
+    }
+
+    /**
+     * Adds one game's final scores to the current bucket.
+     */
+    void record(Map<String, Integer> scores, long now) {
+        advance(now);
+        Bucket bucket = buckets.peekLast();
+        for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+            if (entry.getKey() != null) {
+                bucket.add(entry.getKey(), entry.getValue(), 1);
+                ranking.add(entry.getKey(), entry.getValue(), 1);
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Opens the bucket for {@code now} and queues buckets that left the
+     * window; returns true if anything moved.
+     */
+    boolean advance(long now) {
+        long start = now - Math.floorMod(now, bucketMillis);
+        long oldest = start - (bucketCount - 1) * bucketMillis;
+        boolean moved = false;
+        while (!buckets.isEmpty() && buckets.peekFirst().start < oldest) {
+            expired.add(buckets.pollFirst());
+            moved = true;
+        }
+        // A clock stepping backwards keeps using the newest bucket
+        if (buckets.isEmpty() || buckets.peekLast().start < start) {
+            buckets.add(new Bucket(start));
+        }
+        return moved;
+    }
+
+    /**
+     * Takes up to {@code budget} expired entries back out of the ranking;
+     * returns how many were taken.
+     */
+    int drain(int budget) {
+        int done = 0;
+        while (done < budget && !expired.isEmpty()) {
+            Bucket bucket = expired.peekFirst();
+            if (bucket.pending == null) {
+                bucket.pending = bucket.entries.values().toArray(new Entry[0]);
+            }
+            while (done < budget && bucket.drained < bucket.pending.length) {
+                Entry entry = bucket.pending[bucket.drained];
+                bucket.pending[bucket.drained++] = null;
+                if (entry.games > 0) {
+                    ranking.add(entry.username, -entry.score, -entry.games);
+                }
+                done++;
+            }
+            if (bucket.drained == bucket.pending.length) {
+                expired.pollFirst();
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Drops the lowest ranked players while over {@code maxPlayers}.
+     */
+    private void trim() {
+        while (ranking.size() > maxPlayers) {
+            String username = ranking.last();
+            ranking.remove(username);
+            forget(buckets, username);
+            forget(expired, username);
+        }
+    }
+
+    private static void forget(ArrayDeque<Bucket> buckets, String username) {
+        for (Bucket bucket : buckets) {
+            Entry entry = bucket.entries.remove(username);
+            if (entry != null) {
+                entry.games = 0; // An expired bucket may still list it for draining
+            }
+        }
+    }
+
+    // Persistence: only buckets still in the window are saved
+
+    List<BucketCopy> copy() {
+        List<BucketCopy> copies = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            int size = bucket.entries.size();
+            String[] names = new String[size];
+            long[] scores = new long[size];
+            int[] games = new int[size];
+            int i = 0;
+            for (Entry entry : bucket.entries.values()) {
+                names[i] = entry.username;
+                scores[i] = entry.score;
+                games[i] = entry.games;
+                i++;
+            }
+            copies.add(new BucketCopy(bucket.start, names, scores, games));
+        }
+        return copies;
+    }
+
+    /**
+     * Re-adds a saved bucket; buckets must be restored oldest first.
+     */
+    void restore(BucketCopy copy) {
+        Bucket bucket = new Bucket(copy.start());
+        for (int i = 0; i < copy.names().length; i++) {
+            bucket.add(copy.names()[i], copy.scores()[i], copy.games()[i]);
+            ranking.add(copy.names()[i], copy.scores()[i], copy.games()[i]);
+        }
+        buckets.add(bucket);
+        trim();
+    }
+
+    record BucketCopy(long start, String[] names, long[] scores, int[] games) {
+    }
+
+    private static final class Bucket {
+        final long start;
+        final Map<String, Entry> entries = new HashMap<>();
+        // Set once the bucket has expired
+        Entry[] pending;
+        int drained;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void add(String username, long score, int games) {
+            Entry entry = entries.computeIfAbsent(username, Entry::new);
+            entry.score += score;
+            entry.games += games;
+        }
+    }
+
+    private static final class Entry {
+        final String username;
+        long score;
+        int games;
+
+        Entry(String username) {
+            this.username = username;
+        }
+    }
+}
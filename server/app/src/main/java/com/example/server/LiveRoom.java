@@ -0,0 +1,551 @@
+package com.example.server;
+
+import com.example.common.Message;
+import com.example.common.MessageType;
+import com.google.gson.Gson;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.framing.Framedata;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A "live show" room for tens of thousands of players.
+ *
+ * A {@link GameRoom} lives on one shard and waits for every answer, which does
+ * not scale past a few hundred players. Here players are spread over one
+ * partition per {@link RoomShards} shard. Each partition owns its players'
+ * answers, per-option counts and scores, confined to that shard, so answers
+ * are taken on every core in parallel. The room itself (questions, round
+ * state, timers) stays on the room's own shard.
+ *
+ * A round closes after {@link ServerConfig#LIVE_ROUND_SECONDS} or once every
+ * player has answered; answers past the {@link System#nanoTime()} deadline are
+ * rejected. At close each partition reports its counts and the room merges
+ * them into one histogram. Messages fan out in two levels: the room
+ * serializes a message once, and each partition frames it once and writes it
+ * to its own players.
+ */
+public final class LiveRoom {
+    private static final Gson GSON = new Gson();
+    private static final int TOP_SCORES = 10;
+    private static final ScoreCalculator SCORE_CALCULATOR = new ScoreCalculator();
+    private static final String ANSWER_ACCEPTED = GSON.toJson(serverMessage(MessageType.ROUND_RESULT, "Answer submitted!"));
+    private static final String ROUND_CLOSED = GSON.toJson(serverMessage(MessageType.ERROR, "Round closed"));
+
+    private static final LongAdder ANSWERS = ServerMetrics.counter("live.answers.accepted");
+    private static final LongAdder LATE_ANSWERS = ServerMetrics.counter("live.answers.late");
+    private static final LongAdder FRAMES_SENT = ServerMetrics.counter("live.frames.sent");
+
+    private final String roomId;
+    private final String roomName;
+    private final String hostUsername;
+    private final QuestionBank questionBank;
+    private final RoomShards shards;
+    private final HashedWheelTimer timer;
+    private final AnswerStatistics statistics;
+    private final Leaderboard leaderboard;
+    private final GameResultStore results;
+    private final RoomJournal journal;
+    private final ProfileCache profiles;
+    private final AnswerExport analytics;
+    // Identifies this show in the results database
+    private final String gameId = UUID.randomUUID().toString();
+    // Event whose leaderboard the show counts towards, or null
+    private final String event;
+    private final Partition[] partitions;
+    // Read by network threads to route each answer to the player's partition
+    private final Map<WebSocket, Partition> members = new ConcurrentHashMap<>();
+    // The round taking answers, or null between rounds; read by every partition
+    private volatile Round openRound;
+
+    // Confined to the room's own shard
+    private List<Question> questions = Collections.emptyList();
+    private int currentQuestionIndex;
+    private boolean gameStarted;
+    private long startedAtMillis;
+    private int nextPartition;
+    private HashedWheelTimer.Timeout pendingStep;
+    private Consumer<LiveRoom> onFinished;
+
+    public LiveRoom(String roomId, String roomName, String hostUsername, QuestionBank questionBank,
+                    RoomShards shards, HashedWheelTimer timer, AnswerStatistics statistics,
+                    Leaderboard leaderboard, GameResultStore results, RoomJournal journal, ProfileCache profiles,
+                    AnswerExport analytics, String event) {
+        this.roomId = roomId;
+        this.roomName = roomName;
+        this.hostUsername = hostUsername;
+        this.questionBank = questionBank;
+        this.shards = shards;
+        this.timer = timer;
+        this.statistics = statistics;
+        this.leaderboard = leaderboard;
+        this.results = results;
+        this.journal = journal;
+        this.profiles = profiles;
+        this.analytics = analytics;
+        this.event = event;
+        this.partitions = new Partition[shards.size()];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    /**
+     * Adds a player to the next partition in turn; returns false if the game
+     * has started or the room is full. Called on the room's shard.
+     */
+    public boolean addPlayer(WebSocket conn, String username) {
+        if (gameStarted || members.size() >= ServerConfig.LIVE_MAX_PLAYERS) {
+            return false;
+        }
+        Partition partition = partitions[nextPartition++ % partitions.length];
+        members.put(conn, partition);
+        shards.execute(partition.shard, "Live room " + roomId, () -> partition.add(conn, username));
+        return true;
+    }
+
+    /**
+     * Called on the room's shard.
+     */
+    public void removePlayer(WebSocket conn) {
+        Partition partition = members.remove(conn);
+        if (partition != null) {
+            shards.execute(partition.shard, "Live room " + roomId, () -> partition.remove(conn));
+        }
+    }
+
+    /**
+     * Queues an answer on the player's partition, bypassing the room's shard.
+     * Safe to call from any thread; returns false if the player is not in the room.
+     */
+    public boolean submitAnswer(WebSocket conn, int answerIndex) {
+        Partition partition = members.get(conn);
+        if (partition == null) {
+            return false;
+        }
+        shards.execute(partition.shard, "Live room " + roomId, () -> partition.answer(conn, answerIndex));
+        return true;
+    }
+
+    /**
+     * Opens the lobby; the game starts after {@code lobbyMs} with questions not
+     * matched by {@code exclude} where possible. {@code onFinished} runs on the
+     * room's shard once the game is over or everyone has left.
+     */
+    public void start(Predicate<Question> exclude, long lobbyMs, Consumer<LiveRoom> onFinished) {
+        this.onFinished = onFinished;
+        schedule(() -> startGame(exclude), lobbyMs);
+    }
+
+    private void startGame(Predicate<Question> exclude) {
+        if (members.isEmpty()) {
+            finish();
+            return;
+        }
+        questions = questionBank.sampleQuestions(GameRoom.QUESTIONS_PER_GAME, null, null, exclude);
+        gameStarted = true;
+        startedAtMillis = System.currentTimeMillis();
+        System.out.println("📺 Starting live show " + roomName + " with " + members.size() + " players");
+
+        fanOut(serverMessage(MessageType.GAME_START, "Game starting!"));
+        schedule(this::sendNextQuestion, 2000);
+    }
+
+    private void sendNextQuestion() {
+        if (currentQuestionIndex >= questions.size()) {
+            endGame();
+            return;
+        }
+        Question question = questions.get(currentQuestionIndex);
+
+        Map<String, Object> questionData = new HashMap<>();
+        questionData.put("questionNumber", currentQuestionIndex + 1);
+        questionData.put("totalQuestions", questions.size());
+        questionData.put("question", question.text());
+        questionData.put("options", question.options());
+        questionData.put("category", question.category());
+        questionData.put("seconds", ServerConfig.LIVE_ROUND_SECONDS);
+
+        long roundMillis = TimeUnit.SECONDS.toMillis(ServerConfig.LIVE_ROUND_SECONDS);
+        Round round = new Round(currentQuestionIndex + 1, question, System.nanoTime(), roundMillis);
+        openRound = round;
+        journal.newQuestion(roomId, round.number, question, roundMillis);
+        fanOut(serverMessage(MessageType.NEW_QUESTION, questionData));
+        schedule(() -> closeRound(round), roundMillis);
+    }
+
+    /**
+     * Stops taking answers and merges every partition's counts. Runs at the
+     * deadline, or earlier once everyone has answered; only the first call counts.
+     */
+    private void closeRound(Round round) {
+        if (openRound != round) {
+            return;
+        }
+        openRound = null;
+        cancelPendingStep(); // The deadline, if everyone answered early
+        long closedAt = System.nanoTime();
+        gather(partition -> partition.tally(round), counts -> publishResults(round, counts, closedAt));
+    }
+
+    private void publishResults(Round round, List<int[]> partitionCounts, long closedAt) {
+        int[] histogram = new int[round.question.options().size()];
+        int answered = 0;
+        for (int[] counts : partitionCounts) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += counts[i];
+                answered += counts[i];
+            }
+        }
+
+        Map<String, Object> resultData = new HashMap<>();
+        resultData.put("histogram", histogram);
+        resultData.put("answered", answered);
+        resultData.put("players", members.size());
+        resultData.put("correctAnswer", (int) round.question.correctIndex());
+        resultData.put("questionNumber", round.number);
+        resultData.put("totalQuestions", questions.size());
+        String json = GSON.toJson(serverMessage(MessageType.ROUND_RESULT, resultData));
+        journal.roundResult(roomId, round.number, round.question.correctIndex(), histogram);
+        for (Partition partition : partitions) {
+            shards.execute(partition.shard, "Live room " + roomId, () -> partition.sendResults(json, round));
+        }
+        System.out.println("📣 Live round " + round.number + ": " + answered + " answers from "
+                + members.size() + " players merged in " + (System.nanoTime() - closedAt) / 1_000_000 + " ms");
+
+        schedule(() -> {
+            currentQuestionIndex++;
+            sendNextQuestion();
+        }, 3000);
+    }
+
+    private void endGame() {
+        // Each partition reports its own players to the leaderboard
+        gather(partition -> partition.finish(TOP_SCORES), tops -> {
+            List<Map.Entry<String, Integer>> all = new ArrayList<>();
+            for (List<Map.Entry<String, Integer>> top : tops) {
+                all.addAll(top);
+            }
+            all.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+            // Only the top scores go to everyone; each player already has their own
+            Map<String, Integer> finalScores = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : all.subList(0, Math.min(TOP_SCORES, all.size()))) {
+                finalScores.put(entry.getKey(), entry.getValue());
+            }
+            Map<String, Object> gameOverData = new HashMap<>();
+            gameOverData.put("finalScores", finalScores);
+            gameOverData.put("winner", all.isEmpty() ? "No winner" : all.get(0).getKey());
+            gameOverData.put("players", members.size());
+            gameOverData.put("leaderboards", leaderboard.windowsFor(event));
+            results.recordGame(gameId, roomName, "LIVE", event, members.size(), questions.size(),
+                    startedAtMillis, System.currentTimeMillis());
+            fanOut(serverMessage(MessageType.GAME_OVER, gameOverData));
+
+            System.out.println("🏁 Live show over: " + roomName);
+            schedule(this::finish, 10000);
+        });
+    }
+
+    private void finish() {
+        if (onFinished != null) {
+            onFinished.accept(this);
+            onFinished = null;
+        }
+    }
+
+    /**
+     * Serializes the message once and has every partition write it to its players.
+     */
+    private void fanOut(Message message) {
+        String json = GSON.toJson(message);
+        for (Partition partition : partitions) {
+            shards.execute(partition.shard, "Live room " + roomId, () -> partition.sendAll(json));
+        }
+    }
+
+    /**
+     * Runs {@code task} on every partition's shard, then hands the results, in
+     * partition order, to {@code then} on the room's shard.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void gather(Function<Partition, T> task, Consumer<List<T>> then) {
+        Object[] results = new Object[partitions.length];
+        AtomicInteger remaining = new AtomicInteger(partitions.length);
+        for (Partition partition : partitions) {
+            shards.execute(partition.shard, "Live room " + roomId, () -> {
+                try {
+                    results[partition.shard] = task.apply(partition);
+                } finally {
+                    // The last partition hands over; the decrement publishes every result
+                    if (remaining.decrementAndGet() == 0) {
+                        shards.execute(roomId, () -> then.accept((List<T>) Arrays.asList(results)));
+                    }
+                }
+            });
+        }
+    }
+
+    private void schedule(Runnable step, long delayMs) {
+        pendingStep = timer.schedule(() -> shards.execute(roomId, step), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void cancelPendingStep() {
+        HashedWheelTimer.Timeout step = pendingStep;
+        if (step != null) {
+            step.cancel();
+        }
+    }
+
+    private static Message serverMessage(MessageType type, Object content) {
+        Message message = new Message(type, content);
+        message.setSenderId("SERVER");
+        return message;
+    }
+
+    // Getters
+    public String getRoomId() { return roomId; }
+    public String getRoomName() { return roomName; }
+    public String getGameId() { return gameId; }
+    public String getEvent() { return event; }
+    public String getHostUsername() { return hostUsername; }
+    public int getPlayerCount() { return members.size(); }
+    public boolean isGameStarted() { return gameStarted; }
+    public QuestionBank getQuestionBank() { return questionBank; }
+
+    /**
+     * A question as published to the partitions.
+     */
+    private static final class Round {
+        final int number;
+        final Question question;
+        final long openedNanos;
+        final long deadlineNanos;
+        final long millis;
+        // Players in the room who have answered; one who leaves is taken back out
+        final AtomicInteger answered = new AtomicInteger();
+
+        Round(int number, Question question, long openedNanos, long millis) {
+            this.number = number;
+            this.question = question;
+            this.openedNanos = openedNanos;
+            this.deadlineNanos = openedNanos + millis * 1_000_000;
+            this.millis = millis;
+        }
+
+        long elapsedMillis(long now) {
+            return (now - openedNanos) / 1_000_000;
+        }
+    }
+
+    /**
+     * The players that share one shard. Every method runs on that shard.
+     */
+    private final class Partition {
+        final int shard;
+        final Map<WebSocket, String> players = new HashMap<>();
+        final Map<String, Integer> scores = new HashMap<>();
+        final Map<WebSocket, Integer> answers = new HashMap<>();
+        final Map<WebSocket, Long> responseMillis = new HashMap<>();
+        int[] counts = new int[0];
+        // Round that answers and counts belong to; they are reset lazily when it changes
+        int round;
+
+        Partition(int shard) {
+            this.shard = shard;
+        }
+
+        void add(WebSocket conn, String username) {
+            players.put(conn, username);
+            scores.putIfAbsent(username, 0);
+        }
+
+        /**
+         * Drops the player and their answer to the open round, which may leave
+         * everyone still here having answered.
+         */
+        void remove(WebSocket conn) {
+            players.remove(conn);
+            Integer previous = answers.remove(conn);
+            uncount(previous);
+            responseMillis.remove(conn);
+            Round open = openRound;
+            if (open != null) {
+                if (previous != null && round == open.number) {
+                    open.answered.decrementAndGet();
+                }
+                closeIfAllAnswered(open);
+            }
+        }
+
+        void answer(WebSocket conn, int answerIndex) {
+            Round open = openRound;
+            long now = System.nanoTime();
+            if (open == null || now - open.deadlineNanos > 0) {
+                LATE_ANSWERS.increment();
+                journal.submitAnswer(roomId, players.get(conn), open != null ? open.number : round, answerIndex,
+                        -1, false);
+                send(conn, ROUND_CLOSED);
+                return;
+            }
+            if (round != open.number) {
+                reset(open);
+            }
+            Integer previous = answers.put(conn, answerIndex);
+            responseMillis.put(conn, open.elapsedMillis(now));
+            uncount(previous);
+            if (answerIndex >= 0 && answerIndex < counts.length) {
+                counts[answerIndex]++;
+            }
+            journal.submitAnswer(roomId, players.get(conn), open.number, answerIndex, open.elapsedMillis(now), true);
+            ANSWERS.increment();
+            send(conn, ANSWER_ACCEPTED);
+
+            if (previous == null) {
+                open.answered.incrementAndGet();
+                closeIfAllAnswered(open);
+            }
+        }
+
+        private void closeIfAllAnswered(Round open) {
+            if (open.answered.get() >= members.size()) {
+                shards.execute(roomId, () -> closeRound(open));
+            }
+        }
+
+        private void uncount(Integer answerIndex) {
+            if (answerIndex != null && answerIndex >= 0 && answerIndex < counts.length) {
+                counts[answerIndex]--;
+            }
+        }
+
+        private void reset(Round open) {
+            answers.clear();
+            responseMillis.clear();
+            counts = new int[open.question.options().size()];
+            round = open.number;
+        }
+
+        /**
+         * Scores the closed round, queues its answers for saving and returns
+         * this partition's answer counts.
+         */
+        int[] tally(Round closed) {
+            if (round != closed.number) {
+                reset(closed); // Nobody here answered
+            }
+            List<GameResultStore.Answer> saved = new ArrayList<>(answers.size());
+            for (Map.Entry<WebSocket, Integer> answer : answers.entrySet()) {
+                int points = points(answer.getKey(), closed);
+                String username = players.get(answer.getKey());
+                if (username == null) {
+                    continue;
+                }
+                if (points > 0) {
+                    scores.merge(username, points, Integer::sum);
+                }
+                // The answer that was scored, not the first one given
+                statistics.record(closed.question, answer.getValue(), responseMillis.get(answer.getKey()));
+                saved.add(new GameResultStore.Answer(username, answer.getValue(),
+                        closed.question.isCorrect(answer.getValue()), responseMillis.get(answer.getKey()), points));
+            }
+            results.recordRound(gameId, closed.number, closed.question, saved);
+            analytics.record(gameId, closed.number, closed.question, saved);
+            return counts.clone();
+        }
+
+        /**
+         * Base points plus speed bonus for a correct answer to the round, scaled by difficulty.
+         */
+        private int points(WebSocket conn, Round closed) {
+            Integer answer = round == closed.number ? answers.get(conn) : null;
+            if (answer == null || !closed.question.isCorrect(answer)) {
+                return 0;
+            }
+            return SCORE_CALCULATOR.calculateScoreWithDifficulty(responseMillis.get(conn), closed.millis,
+                    closed.question.difficulty());
+        }
+
+        /**
+         * Sends the shared histogram frame, then each player's own result.
+         */
+        void sendResults(String sharedJson, Round closed) {
+            sendAll(sharedJson);
+            for (Map.Entry<WebSocket, String> player : players.entrySet()) {
+                Integer answer = round == closed.number ? answers.get(player.getKey()) : null;
+                Map<String, Object> ownResult = new HashMap<>();
+                ownResult.put("answer", answer != null ? answer : -1);
+                ownResult.put("correct", answer != null && closed.question.isCorrect(answer));
+                ownResult.put("points", points(player.getKey(), closed));
+                ownResult.put("responseMillis", answer != null ? responseMillis.get(player.getKey()) : -1L);
+                ownResult.put("score", scores.getOrDefault(player.getValue(), 0));
+                send(player.getKey(), GSON.toJson(serverMessage(MessageType.ROUND_RESULT, ownResult)));
+            }
+        }
+
+        /**
+         * Records this partition's final scores and returns the best of them.
+         */
+        List<Map.Entry<String, Integer>> finish(int limit) {
+            leaderboard.recordGame(scores, event);
+            results.recordScores(gameId, scores);
+            journal.gameOver(roomId, gameId, scores);
+            for (Map.Entry<String, Integer> score : scores.entrySet()) {
+                profiles.recordGame(score.getKey(), score.getValue(), null);
+            }
+            return topScores(limit);
+        }
+
+        List<Map.Entry<String, Integer>> topScores(int limit) {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(scores.entrySet());
+            entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+            List<Map.Entry<String, Integer>> top = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(limit, entries.size()))) {
+                top.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+            return top;
+        }
+
+        /**
+         * Frames the message once per draft and writes it to every player here.
+         */
+        void sendAll(String json) {
+            Map<Draft, List<Framedata>> framesByDraft = new HashMap<>(2);
+            int sent = 0;
+            for (WebSocket player : players.keySet()) {
+                if (!player.isOpen()) {
+                    continue;
+                }
+                try {
+                    List<Framedata> frames = framesByDraft.computeIfAbsent(player.getDraft(),
+                            draft -> draft.createFrames(json, false));
+                    player.sendFrame(frames);
+                    sent++;
+                } catch (Exception e) {
+                    System.err.println("Error sending message: " + e.getMessage());
+                }
+            }
+            FRAMES_SENT.add(sent);
+        }
+
+        private void send(WebSocket conn, String json) {
+            if (!conn.isOpen()) {
+                return;
+            }
+            try {
+                conn.send(json);
+                FRAMES_SENT.increment();
+            } catch (Exception e) {
+                System.err.println("Error sending message: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -15,13 +15,26 @@ import com.example.common.MessageType;
 
 
 public class MessageProcessor {
-    public static void process(ClientHandler client, Message msg) {
+    public static void process(ClientConnection client, Message msg) {
         switch (msg.getType()) {
             case LOGIN_REQUEST:
-                client.setUsername((String) msg.getContent());
-                System.out.println("User logged in: " + msg.getContent());
+                if (!(msg.getContent() instanceof String username)) {
+                    client.sendMessage(new Message(MessageType.LOGIN_FAILURE, "Username is required"));
+                    break;
+                }
+                String invalid = Names.usernameError(username);
+                if (invalid != null) {
+                    client.sendMessage(new Message(MessageType.LOGIN_FAILURE, invalid));
+                    break;
+                }
+                client.setUsername(username);
+                System.out.println("User logged in: " + username);
                 client.sendMessage(new Message(MessageType.LOGIN_SUCCESS, "Welcome!"));
                 break;
+            case LEADERBOARD_REQUEST:
+                client.sendMessage(new Message(MessageType.LEADERBOARD,
+                        client.getServer().getLeaderboard().report(client.getUsername(), msg.getContent())));
+                break;
             // Member 2 will add GAME_START, SUBMIT_ANSWER logic here later
             default:
                 System.out.println("Unknown command");
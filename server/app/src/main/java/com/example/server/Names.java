@@ -0,0 +1,70 @@
+package com.example.server;
+
+/**
+ * Limits on the names clients pick: usernames, room names and event names.
+ *
+ * These names become database keys (VARCHAR(255)), leaderboard entries and
+ * journal and snapshot records, so they are checked once where they enter
+ * the server rather than in every store that keeps them. Usernames and
+ * event names are refused when they break the rules; room names are only
+ * shown to players, so they are trimmed to fit instead.
+ */
+final class Names {
+    static final int MAX_USERNAME_LENGTH = 32;
+    static final int MAX_ROOM_NAME_LENGTH = 64;
+    static final int MAX_EVENT_LENGTH = 64;
+
+    private Names() {
+    }
+
+    /**
+     * Why {@code username} cannot be used, or null when it can.
+     */
+    static String usernameError(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            return "Username is required";
+        }
+        if (username.length() > MAX_USERNAME_LENGTH || hasControlCharacters(username)) {
+            return "Username must be at most " + MAX_USERNAME_LENGTH + " printable characters";
+        }
+        return null;
+    }
+
+    /**
+     * {@code roomName} cut down to {@link #MAX_ROOM_NAME_LENGTH}; a blank name becomes the default.
+     */
+    static String roomName(String roomName) {
+        if (roomName == null || roomName.trim().isEmpty()) {
+            return "Game Room";
+        }
+        return truncate(roomName.trim(), MAX_ROOM_NAME_LENGTH);
+    }
+
+    /**
+     * True when {@code event} is short enough and printable.
+     */
+    static boolean isValidEvent(String event) {
+        return event != null && !event.trim().isEmpty() && event.length() <= MAX_EVENT_LENGTH
+                && !hasControlCharacters(event);
+    }
+
+    /**
+     * The first {@code max} characters of {@code value}, without splitting a surrogate pair.
+     */
+    static String truncate(String value, int max) {
+        if (value == null || value.length() <= max) {
+            return value;
+        }
+        int end = Character.isHighSurrogate(value.charAt(max - 1)) ? max - 1 : max;
+        return value.substring(0, end);
+    }
+
+    private static boolean hasControlCharacters(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (Character.isISOControl(value.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.server;
+
+import com.example.common.BinaryMessageCodec;
+import com.example.common.Message;
+import com.example.common.MessageCodec;
+import com.example.common.SerializationMessageCodec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking counterpart of {@link ClientHandler}. Bytes are read and written
+ * by the owning {@link NioEventLoop}; {@link #sendMessage(Message)} may be called
+ * from any thread and only queues the encoded message.
+ *
+ * The codec is picked from the first byte the client sends, as in the blocking
+ * handler. Both formats are length-prefixed, so a message is decoded exactly
+ * once, straight from the read buffer, after its whole frame has arrived.
+ */
+class NioClientHandler extends ClientConnection {
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final OutboundBudget budget = new OutboundBudget();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private SelectionKey key;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    // Set once by the loop thread after the client's preamble has arrived
+    private volatile MessageCodec codec;
+    // Messages sent before the client's codec was known; guarded by this
+    private List<Message> early;
+
+    NioClientHandler(SocketChannel channel, NioEventLoop loop, ServerNetworkManager server) {
+        super(server);
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+        onWritable();
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        if (closed.get()) {
+            return;
+        }
+        if (codec == null) {
+            synchronized (this) {
+                if (codec == null) {
+                    if (early == null) {
+                        early = new ArrayList<>();
+                    }
+                    early.add(message);
+                    return;
+                }
+            }
+        }
+        try {
+            enqueue(encode(codec, message));
+        } catch (IOException e) {
+            System.err.println("Error encoding message: " + e.getMessage());
+            return;
+        }
+        scheduleFlush();
+    }
+
+    private void enqueue(byte[] bytes) {
+        outbound.add(ByteBuffer.wrap(bytes));
+        if (!budget.onEnqueue()) {
+            loop.execute(() -> {
+                if (!closed.get()) {
+                    evictSlowConsumer(budget.size());
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void disconnect() {
+        close();
+    }
+
+    private void scheduleFlush() {
+        if (loop.inEventLoop()) {
+            onWritable();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(() -> {
+                flushScheduled.set(false);
+                onWritable();
+            });
+        }
+    }
+
+    void onReadable() {
+        try {
+            if (!readBuffer.hasRemaining()) {
+                growReadBuffer();
+            }
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            try {
+                if (codec != null || detectCodec()) {
+                    decodeFrames();
+                }
+            } finally {
+                readBuffer.compact();
+            }
+        } catch (IOException e) {
+            System.out.println("Client disconnected.");
+            close();
+        }
+    }
+
+    void onWritable() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        try {
+            ByteBuffer head;
+            while ((head = outbound.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    // Socket buffer is full; resume when the selector says we can write
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+                budget.onDequeue();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already closed by the peer
+        }
+        outbound.clear();
+        getServer().removeClient(this);
+    }
+
+    /**
+     * Consumes the client's stream preamble, answers with ours and releases any
+     * messages that were queued before the format was known.
+     */
+    private boolean detectCodec() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            return false;
+        }
+        MessageCodec detected = MessageCodec.forFirstByte(readBuffer.get(readBuffer.position()));
+        byte[] preamble = detected == BinaryMessageCodec.INSTANCE
+                ? BinaryMessageCodec.MAGIC
+                : SerializationMessageCodec.MAGIC;
+        if (readBuffer.remaining() < preamble.length) {
+            return false;
+        }
+        for (byte b : preamble) {
+            if (readBuffer.get() != b) {
+                throw new IOException("Invalid stream header");
+            }
+        }
+        synchronized (this) {
+            enqueue(preamble);
+            if (early != null) {
+                for (Message message : early) {
+                    enqueue(encode(detected, message));
+                }
+                early = null;
+            }
+            codec = detected;
+        }
+        onWritable();
+        return true;
+    }
+
+    private void decodeFrames() throws IOException {
+        while (readBuffer.remaining() >= 4) {
+            int length = readBuffer.getInt(readBuffer.position());
+            BinaryMessageCodec.checkLength(length);
+            if (readBuffer.remaining() < 4 + length) {
+                return;
+            }
+            int body = readBuffer.position() + 4;
+            readBuffer.position(body + length);
+            MessageProcessor.process(this, codec == BinaryMessageCodec.INSTANCE
+                    ? BinaryMessageCodec.decodeBody(readBuffer.array(), body, length)
+                    : SerializationMessageCodec.decodeBody(readBuffer.array(), body, length));
+        }
+    }
+
+    private void growReadBuffer() {
+        ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+        readBuffer.flip();
+        bigger.put(readBuffer);
+        readBuffer = bigger;
+    }
+
+    private static byte[] encode(MessageCodec codec, Message message) throws IOException {
+        if (codec == BinaryMessageCodec.INSTANCE) {
+            return BinaryMessageCodec.encodeFrame(message);
+        }
+        return SerializationMessageCodec.encodeFrame(message);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread multiplexing many {@link NioClientHandler} connections.
+ * All channel I/O for a connection happens on the loop that owns it; other
+ * threads hand work over through {@link #execute(Runnable)}.
+ */
+final class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the task on this loop's thread; wakes the selector if called from elsewhere.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Adopts a freshly accepted channel. Registration happens on the loop thread
+     * so the selector is never contended.
+     */
+    void register(SocketChannel channel, ServerNetworkManager server) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                NioClientHandler handler = new NioClientHandler(channel, this, server);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, handler);
+                handler.attach(key);
+                server.addClient(handler);
+            } catch (IOException e) {
+                System.err.println("Error registering client: " + e.getMessage());
+                closeQuietly(channel);
+                server.releaseAdmission();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+                processSelectedKeys();
+            } catch (IOException e) {
+                System.err.println("Event loop error: " + e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Event loop task failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            NioClientHandler handler = (NioClientHandler) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    handler.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    handler.onWritable();
+                }
+            } catch (CancelledKeyException e) {
+                handler.close();
+            } catch (RuntimeException e) {
+                // A bad message from one client must not take the loop and its other clients down
+                System.err.println("Closing client after handler error: " + e);
+                handler.close();
+            }
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioClientHandler) {
+                ((NioClientHandler) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watermark accounting for one connection's outbound queue.
+ *
+ * Reaching the high watermark starts a grace period; draining to the low
+ * watermark ends it. A consumer still over budget when the grace period runs
+ * out, or one that reaches twice the high watermark, should be evicted.
+ */
+final class OutboundBudget {
+    private final int highWatermark;
+    private final int lowWatermark;
+    private final long graceNanos;
+    private final AtomicInteger queued = new AtomicInteger();
+    // 0 while within budget, otherwise System.nanoTime() when the budget was exceeded
+    private volatile long overBudgetSince;
+
+    OutboundBudget() {
+        this(ServerConfig.OUTBOUND_HIGH_WATERMARK, ServerConfig.OUTBOUND_LOW_WATERMARK,
+                ServerConfig.OUTBOUND_GRACE_MS * 1_000_000L);
+    }
+
+    OutboundBudget(int highWatermark, int lowWatermark, long graceNanos) {
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+        this.graceNanos = graceNanos;
+    }
+
+    /**
+     * Accounts for one queued message.
+     *
+     * @return false if the consumer has been over budget for too long
+     */
+    boolean onEnqueue() {
+        int size = queued.incrementAndGet();
+        if (size < highWatermark) {
+            return true;
+        }
+        if (size >= 2 * highWatermark) {
+            return false;
+        }
+        long now = System.nanoTime();
+        long since = overBudgetSince;
+        if (since == 0) {
+            overBudgetSince = now | 1;
+            ServerMetrics.counter("tcp.outbound.overBudget").increment();
+            return true;
+        }
+        return now - since < graceNanos;
+    }
+
+    void onDequeue() {
+        if (queued.decrementAndGet() <= lowWatermark) {
+            overBudgetSince = 0;
+        }
+    }
+
+    int size() {
+        return queued.get();
+    }
+}
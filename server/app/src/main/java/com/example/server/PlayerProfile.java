@@ -0,0 +1,25 @@
+package com.example.server;
+
+/**
+ * What the server remembers about a player between visits: lifetime points,
+ * games played, when they last played and their seen-question history as
+ * exported by {@link SeenQuestions#export}, or null if none was saved.
+ */
+public record PlayerProfile(String username, long score, int games, long lastPlayedMillis, byte[] seen) {
+
+    /**
+     * A player the store has never seen.
+     */
+    static PlayerProfile empty(String username) {
+        return new PlayerProfile(username, 0, 0, 0, null);
+    }
+
+    /**
+     * This profile with {@code update} applied: points and games are added,
+     * the last played time and seen history replaced.
+     */
+    PlayerProfile plus(ProfileStore.Update update) {
+        return new PlayerProfile(username, score + update.score(), games + update.games(),
+                Math.max(lastPlayedMillis, update.lastPlayedMillis()), update.seen() != null ? update.seen() : seen);
+    }
+}
@@ -0,0 +1,458 @@
+package com.example.server;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bounded in-memory cache of {@link PlayerProfile}s in front of a
+ * {@link ProfileStore}, so logins and finished games rarely wait for the
+ * database.
+ *
+ * Eviction follows W-TinyLFU. New profiles enter a small LRU window (1% of
+ * the capacity); what falls out of the window competes for a place in the
+ * main space, a segmented LRU whose protected part (80%) holds profiles used
+ * again while on probation. A candidate is admitted only if a
+ * {@link FrequencySketch} says it has been used more often than the entry it
+ * would evict. Players who log in once do not push out the regulars, which
+ * is what keeps an event-start login storm mostly in memory. A quarter of
+ * the capacity is loaded from the store's most recent players at start.
+ *
+ * {@link #get} never blocks: a miss loads on a loader thread, and concurrent
+ * misses for the same player share the load. A profile older than
+ * {@link ServerConfig#PROFILE_REFRESH_SECONDS} is served as it is and
+ * reloaded in the background.
+ *
+ * {@link #recordGame} updates the cached profile at once and coalesces the
+ * change with the player's other unsaved games. A writer thread saves
+ * everything unsaved every {@link ServerConfig#PROFILE_FLUSH_MS} in one
+ * batch; a failed batch is retried with the next, except for an update the
+ * database refuses outright, which is dropped. Loads add unsaved changes to
+ * what they read, and the store lock makes a load read either before a
+ * batch is saved (the batch is still pending and gets added) or after (it is
+ * in the row), never both.
+ */
+public final class ProfileCache {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    // Flush attempts on shutdown before unsaved changes are given up
+    private static final int SHUTDOWN_ATTEMPTS = 3;
+
+    private final ProfileStore store;
+    private final int capacity;
+    private final int windowMax;
+    private final int protectedMax;
+    private final long refreshAfterMillis;
+    private final FrequencySketch sketch;
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final NodeList window = new NodeList();
+    private final NodeList probation = new NodeList();
+    private final NodeList protectedList = new NodeList();
+    private final Map<String, CompletableFuture<PlayerProfile>> loading = new HashMap<>();
+    // Coalesced changes not yet handed to the store, and the batch being saved
+    private Map<String, ProfileStore.Update> unsaved = new HashMap<>();
+    private Map<String, ProfileStore.Update> saving = Map.of();
+    // Loads hold the read lock, a save the write lock
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private final ExecutorService loaders;
+    private ScheduledExecutorService writer;
+
+    private final LongAdder hits = ServerMetrics.counter("profiles.hits");
+    private final LongAdder misses = ServerMetrics.counter("profiles.misses");
+    private final LongAdder evictions = ServerMetrics.counter("profiles.evictions");
+    private final LongAdder refreshes = ServerMetrics.counter("profiles.refreshes");
+    private final LongAdder failedLoads = ServerMetrics.counter("profiles.loads.failed");
+    private final LongAdder coalesced = ServerMetrics.counter("profiles.writes.coalesced");
+    private final LongAdder savedRows = ServerMetrics.counter("profiles.rows.saved");
+    private final LongAdder failedSaves = ServerMetrics.counter("profiles.saves.failed");
+    private final LongAdder rejectedRows = ServerMetrics.counter("profiles.rows.rejected");
+
+    public ProfileCache(ProfileStore store) {
+        this(store, ServerConfig.PROFILE_CACHE_SIZE, ServerConfig.PROFILE_LOADERS,
+                TimeUnit.SECONDS.toMillis(ServerConfig.PROFILE_REFRESH_SECONDS));
+    }
+
+    public ProfileCache(ProfileStore store, int capacity, int loaderThreads, long refreshAfterMillis) {
+        this.store = store;
+        this.capacity = Math.max(2, capacity);
+        this.windowMax = Math.max(1, this.capacity / 100);
+        this.protectedMax = (this.capacity - windowMax) * 4 / 5;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.sketch = new FrequencySketch(this.capacity);
+        AtomicInteger threads = new AtomicInteger();
+        this.loaders = Executors.newFixedThreadPool(Math.max(1, loaderThreads), r -> {
+            Thread thread = new Thread(r, "profile-loader-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ServerMetrics.gauge("profiles.size", this::size);
+        ServerMetrics.gauge("profiles.unsaved", this::unsavedCount);
+        ServerMetrics.gauge("profiles.hitRate", () -> {
+            long h = hits.sum();
+            long total = h + misses.sum();
+            return total == 0 ? 0 : h * 100 / total;
+        });
+    }
+
+    /**
+     * Warms the cache with recent players and starts the writer.
+     */
+    public void start(long flushMillis) {
+        if (writer != null) {
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "profile-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        loaders.execute(this::warm);
+    }
+
+    /**
+     * Stops the writer and saves what is left.
+     */
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdownNow();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        loaders.shutdownNow();
+        for (int attempt = 0; attempt < SHUTDOWN_ATTEMPTS && unsavedCount() > 0; attempt++) {
+            flush();
+        }
+        int lost = unsavedCount();
+        if (lost > 0) {
+            System.err.println("Could not save " + lost + " player profiles");
+        }
+        store.close();
+    }
+
+    /**
+     * The player's profile, empty for a player the store has never seen. The
+     * future fails only if the store cannot be read.
+     */
+    public CompletableFuture<PlayerProfile> get(String username) {
+        CompletableFuture<PlayerProfile> future;
+        Node refresh = null;
+        synchronized (this) {
+            sketch.increment(username);
+            Node node = nodes.get(username);
+            if (node != null) {
+                hits.increment();
+                onHit(node);
+                if (!node.refreshing && System.currentTimeMillis() - node.loadedAt >= refreshAfterMillis) {
+                    node.refreshing = true;
+                    refresh = node;
+                }
+                future = CompletableFuture.completedFuture(node.profile);
+            } else {
+                misses.increment();
+                future = loading.get(username);
+                if (future != null) {
+                    return future; // Already being loaded for someone else
+                }
+                future = new CompletableFuture<>();
+                loading.put(username, future);
+                CompletableFuture<PlayerProfile> loaded = future;
+                loaders.execute(() -> load(username, loaded));
+            }
+        }
+        if (refresh != null) {
+            Node stale = refresh;
+            loaders.execute(() -> refresh(stale));
+        }
+        return future;
+    }
+
+    /**
+     * Adds a finished game to the player's profile. {@code seen} is their
+     * seen-question history to keep, or null to keep the one saved.
+     */
+    public void recordGame(String username, int points, byte[] seen) {
+        ProfileStore.Update update = new ProfileStore.Update(username, points, 1, System.currentTimeMillis(), seen);
+        synchronized (this) {
+            Node node = nodes.get(username);
+            if (node != null) {
+                node.profile = node.profile.plus(update);
+            }
+            ProfileStore.Update earlier = unsaved.get(username);
+            if (earlier != null) {
+                coalesced.increment();
+                update = earlier.plus(update);
+            }
+            unsaved.put(username, update);
+        }
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized int unsavedCount() {
+        return unsaved.size() + saving.size();
+    }
+
+    // Loader threads
+
+    private void load(String username, CompletableFuture<PlayerProfile> future) {
+        PlayerProfile profile;
+        storeLock.readLock().lock();
+        try {
+            PlayerProfile stored = store.load(username);
+            synchronized (this) {
+                profile = withUnsaved(stored != null ? stored : PlayerProfile.empty(username));
+                loading.remove(username);
+                Node node = nodes.get(username);
+                if (node == null) {
+                    insert(new Node(username, profile));
+                } else {
+                    node.profile = profile; // Warmed meanwhile
+                    node.loadedAt = System.currentTimeMillis();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            failedLoads.increment();
+            synchronized (this) {
+                loading.remove(username);
+            }
+            future.completeExceptionally(e);
+            return;
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        future.complete(profile);
+    }
+
+    private void refresh(Node node) {
+        storeLock.readLock().lock();
+        try {
+            PlayerProfile stored = store.load(node.username);
+            synchronized (this) {
+                if (nodes.get(node.username) == node) {
+                    node.profile = withUnsaved(stored != null ? stored : PlayerProfile.empty(node.username));
+                    node.loadedAt = System.currentTimeMillis();
+                    refreshes.increment();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            failedLoads.increment(); // Keep serving the old profile
+        } finally {
+            synchronized (this) {
+                node.refreshing = false;
+            }
+            storeLock.readLock().unlock();
+        }
+    }
+
+    private void warm() {
+        storeLock.readLock().lock();
+        try {
+            List<PlayerProfile> recent = store.loadRecent(capacity / 4);
+            synchronized (this) {
+                for (PlayerProfile stored : recent) {
+                    if (!nodes.containsKey(stored.username())) {
+                        insert(new Node(stored.username(), withUnsaved(stored)));
+                    }
+                }
+            }
+            if (!recent.isEmpty()) {
+                System.out.println("👤 Loaded " + recent.size() + " recent player profiles");
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Cannot load recent player profiles: " + e.getMessage());
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@code stored} plus the changes the store does not have yet. Called
+     * under the read lock, so no batch can be saved in between.
+     */
+    private PlayerProfile withUnsaved(PlayerProfile stored) {
+        ProfileStore.Update batched = saving.get(stored.username());
+        ProfileStore.Update pending = unsaved.get(stored.username());
+        PlayerProfile profile = batched != null ? stored.plus(batched) : stored;
+        return pending != null ? profile.plus(pending) : profile;
+    }
+
+    // Writer thread
+
+    /**
+     * Hands everything unsaved to the store in one batch.
+     */
+    void flush() {
+        synchronized (this) {
+            if (unsaved.isEmpty()) {
+                return;
+            }
+            saving = unsaved;
+            unsaved = new HashMap<>();
+        }
+        storeLock.writeLock().lock();
+        try {
+            Collection<ProfileStore.Update> failed = save(saving.values());
+            synchronized (this) {
+                // Back in front of anything recorded since, to be retried with it
+                for (ProfileStore.Update batched : failed) {
+                    unsaved.merge(batched.username(), batched, (later, earlier) -> earlier.plus(later));
+                }
+                saving = Map.of();
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves {@code updates} and returns the ones to retry. A batch refused
+     * for a bad value is saved one update at a time, so only the update
+     * holding it is given up rather than the whole batch being retried forever.
+     */
+    private Collection<ProfileStore.Update> save(Collection<ProfileStore.Update> updates) {
+        try {
+            store.save(updates);
+            savedRows.add(updates.size());
+            return List.of();
+        } catch (SQLException | RuntimeException e) {
+            failedSaves.increment();
+            System.err.println("Cannot save " + updates.size() + " player profiles: " + e.getMessage());
+            if (!(e instanceof SQLException sql) || !GameResultStore.isDataError(sql)) {
+                return updates;
+            }
+            if (updates.size() == 1) {
+                rejectedRows.add(1);
+                return List.of();
+            }
+            List<ProfileStore.Update> retry = new ArrayList<>();
+            for (ProfileStore.Update update : updates) {
+                retry.addAll(save(List.of(update)));
+            }
+            return retry;
+        }
+    }
+
+    // Eviction policy, always under the cache lock
+
+    private void onHit(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedList.addBack(node);
+                while (protectedList.size > protectedMax) {
+                    Node demoted = protectedList.front();
+                    protectedList.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addBack(demoted);
+                }
+                break;
+            default:
+                protectedList.moveToBack(node);
+        }
+    }
+
+    private void insert(Node node) {
+        nodes.put(node.username, node);
+        node.queue = WINDOW;
+        window.addBack(node);
+        if (window.size <= windowMax) {
+            return;
+        }
+        Node candidate = window.front();
+        window.remove(candidate);
+        candidate.queue = PROBATION;
+        probation.addBack(candidate);
+        if (probation.size + protectedList.size <= capacity - windowMax) {
+            return;
+        }
+        // The main space is full: the candidate stays only if it is used more than its coldest entry
+        Node victim = probation.front() != candidate ? probation.front() : protectedList.front();
+        if (victim == null || sketch.frequency(candidate.username) <= sketch.frequency(victim.username)) {
+            victim = candidate;
+        }
+        evict(victim);
+    }
+
+    private void evict(Node node) {
+        (node.queue == PROTECTED ? protectedList : probation).remove(node);
+        nodes.remove(node.username);
+        evictions.increment();
+    }
+
+    private static final class Node {
+        final String username;
+        PlayerProfile profile;
+        long loadedAt = System.currentTimeMillis();
+        boolean refreshing;
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(String username, PlayerProfile profile) {
+            this.username = username;
+            this.profile = profile;
+        }
+    }
+
+    /**
+     * Doubly linked LRU list through the nodes themselves; the front is the
+     * least recently used.
+     */
+    private static final class NodeList {
+        private final Node head = new Node(null, null);
+        int size;
+
+        NodeList() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Node front() {
+            return head.next != head ? head.next : null;
+        }
+
+        void addBack(Node node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToBack(Node node) {
+            remove(node);
+            addBack(node);
+        }
+    }
+}
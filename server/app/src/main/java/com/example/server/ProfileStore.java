@@ -0,0 +1,43 @@
+package com.example.server;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Where player profiles are kept between runs. Only {@link ProfileCache}
+ * calls it, from its own loader and writer threads, so its methods may block.
+ */
+public interface ProfileStore {
+
+    /**
+     * The stored profile, or null for a player who was never saved.
+     */
+    PlayerProfile load(String username) throws SQLException;
+
+    /**
+     * Up to {@code limit} profiles, most recently played first, to warm the cache.
+     */
+    List<PlayerProfile> loadRecent(int limit) throws SQLException;
+
+    /**
+     * Applies the updates in one transaction: points and games are added to
+     * what is stored, the last played time and seen history replaced.
+     */
+    void save(Collection<Update> updates) throws SQLException;
+
+    default void close() {
+    }
+
+    /**
+     * Changes to one player's profile since the last save; several games are
+     * coalesced into one update.
+     */
+    record Update(String username, long score, int games, long lastPlayedMillis, byte[] seen) {
+
+        Update plus(Update later) {
+            return new Update(username, score + later.score, games + later.games,
+                    Math.max(lastPlayedMillis, later.lastPlayedMillis), later.seen != null ? later.seen : seen);
+        }
+    }
+}
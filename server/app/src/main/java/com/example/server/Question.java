@@ -0,0 +1,44 @@
+package com.example.server;
+
+import java.util.List;
+
+/**
+ * Immutable, normalized trivia question.
+ *
+ * Built once by {@link QuestionManager} at load time: the category and option
+ * strings are shared through the bank's dictionary, and the correct option is
+ * stored as its index so checking an answer is a plain comparison.
+ */
+public record Question(int id, String category, String text, List<String> options,
+                       byte correctIndex, String difficulty) {
+
+    public Question {
+        options = List.copyOf(options);
+        if (correctIndex < 0 || correctIndex >= options.size()) {
+            throw new IllegalArgumentException("Correct option out of range: " + correctIndex);
+        }
+    }
+
+    public boolean isCorrect(int answerIndex) {
+        return answerIndex == correctIndex;
+    }
+
+    public String correctAnswer() {
+        return options.get(correctIndex);
+    }
+
+    /**
+     * 64-bit hash of the question text. Unlike {@link #id()} it stays the
+     * same across bank versions, so it can identify a question in player history.
+     */
+    public long fingerprint() {
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < text.length(); i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        // Final avalanche so both halves are usable as independent hashes
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.server;
+
+import com.example.server.QuestionStore.Positions;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * One immutable version of the question bank, backed by a {@link QuestionStore}.
+ *
+ * {@link QuestionManager} publishes a new instance on every reload. Rooms keep
+ * a reference to the version they were created with, so a reload never
+ * changes the questions of a game in progress; the old version becomes
+ * garbage once its last room is gone.
+ */
+public final class QuestionBank {
+    // Draws per requested question before exclusions are given up
+    private static final int MAX_DRAWS_PER_QUESTION = 32;
+
+    private final int version;
+    private final String source;
+    private final long loadMillis;
+    private final QuestionStore store;
+    private final List<Question> questions;
+    // Rooms currently playing from this version; -1 once the version is retired
+    private final AtomicInteger rooms = new AtomicInteger();
+
+    QuestionBank(int version, String source, QuestionStore store, long loadMillis) {
+        this.version = version;
+        this.source = source;
+        this.loadMillis = loadMillis;
+        this.store = store;
+        this.questions = new AbstractList<Question>() {
+            @Override
+            public Question get(int index) {
+                return store.get(index);
+            }
+
+            @Override
+            public int size() {
+                return store.size();
+            }
+        };
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public long loadMillis() {
+        return loadMillis;
+    }
+
+    public long estimatedBytes() {
+        return store.heapBytes();
+    }
+
+    public long offHeapBytes() {
+        return store.offHeapBytes();
+    }
+
+    public int activeRooms() {
+        return Math.max(0, rooms.get());
+    }
+
+    public List<Question> questions() {
+        return questions;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    QuestionStore store() {
+        return store;
+    }
+
+    /**
+     * Pins this version for a room; fails once it has been retired.
+     */
+    boolean retain() {
+        while (true) {
+            int n = rooms.get();
+            if (n < 0) {
+                return false;
+            }
+            if (rooms.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    int release() {
+        return rooms.decrementAndGet();
+    }
+
+    /**
+     * Closes the store if no room uses this version; it cannot be pinned again.
+     */
+    boolean retire() {
+        if (!rooms.compareAndSet(0, -1)) {
+            return false;
+        }
+        store.close();
+        return true;
+    }
+
+    /**
+     * Draws up to {@code count} distinct random questions in O(count) time,
+     * independent of the bank size.
+     */
+    public List<Question> sampleQuestions(int count) {
+        return sampleQuestions(count, null, null);
+    }
+
+    /**
+     * Draws up to {@code count} distinct random questions, optionally limited
+     * to a category and/or difficulty (null means any). Draws from the smaller
+     * of the two precomputed indexes and checks the other attribute per draw.
+     */
+    public List<Question> sampleQuestions(int count, String category, String difficulty) {
+        return sampleQuestions(count, category, difficulty, question -> false);
+    }
+
+    /**
+     * Like {@link #sampleQuestions(int, String, String)} but skips questions
+     * matching {@code exclude} (for example ones the players have seen). Gives
+     * up on exclusions after a bounded number of draws and fills the rest
+     * with excluded questions, so a small or exhausted bank still yields a game.
+     */
+    public List<Question> sampleQuestions(int count, String category, String difficulty,
+                                          Predicate<Question> exclude) {
+        Positions pool = null;
+        if (category != null) {
+            pool = orEmpty(store.byCategory(category));
+        }
+        if (difficulty != null) {
+            Positions byLevel = orEmpty(store.byDifficulty(difficulty));
+            if (pool == null || byLevel.size() < pool.size()) {
+                pool = byLevel;
+            }
+        }
+        // Questions decoded while testing, so snapshot stores decode each one once
+        Map<Integer, Question> decoded = new HashMap<>();
+        IntPredicate matches = i -> {
+            Question q = decoded.computeIfAbsent(i, store::get);
+            return (category == null || category.equals(q.category()))
+                    && (difficulty == null || difficulty.equals(q.difficulty()));
+        };
+        int size = pool == null ? store.size() : pool.size();
+        int maxDraws = (int) Math.min(size, (long) count * MAX_DRAWS_PER_QUESTION);
+
+        int[] picked = sample(size, pool, count, maxDraws,
+                i -> matches.test(i) && !exclude.test(decoded.get(i)), ThreadLocalRandom.current());
+        if (picked.length < count && picked.length < size) {
+            // Not enough unseen questions: allow repeats for the remaining slots
+            ServerMetrics.counter("questions.sample.repeats").add(count - picked.length);
+            Set<Integer> taken = new HashSet<>();
+            for (int i : picked) {
+                taken.add(i);
+            }
+            int[] more = sample(size, pool, count - picked.length, size,
+                    i -> !taken.contains(i) && matches.test(i), ThreadLocalRandom.current());
+            int[] all = Arrays.copyOf(picked, picked.length + more.length);
+            System.arraycopy(more, 0, all, picked.length, more.length);
+            picked = all;
+        }
+        List<Question> selected = new ArrayList<>(picked.length);
+        for (int i : picked) {
+            selected.add(decoded.computeIfAbsent(i, store::get));
+        }
+        return selected;
+    }
+
+    private static Positions orEmpty(Positions positions) {
+        return positions != null ? positions : HeapQuestionStore.of(new int[0]);
+    }
+
+    /**
+     * Partial Fisher–Yates shuffle over positions 0..size-1 that only
+     * materializes the swapped slots, so it costs O(draws) instead of O(size).
+     * Positions map through {@code pool} when given; at most {@code maxDraws}
+     * positions are tried.
+     */
+    static int[] sample(int size, Positions pool, int count, int maxDraws, IntPredicate accept, Random random) {
+        int wanted = Math.min(count, size);
+        int[] picked = new int[wanted];
+        Map<Integer, Integer> swapped = new HashMap<>();
+        int found = 0;
+        for (int i = 0; i < Math.min(size, maxDraws) && found < wanted; i++) {
+            int j = i + random.nextInt(size - i);
+            int atJ = swapped.getOrDefault(j, j);
+            swapped.put(j, swapped.getOrDefault(i, i));
+            int index = pool != null ? pool.at(atJ) : atJ;
+            if (accept.test(index)) {
+                picked[found++] = index;
+            }
+        }
+        return found == wanted ? picked : Arrays.copyOf(picked, found);
+    }
+}
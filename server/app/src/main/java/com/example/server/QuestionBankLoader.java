@@ -0,0 +1,399 @@
+package com.example.server;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StreamCorruptedException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streaming loader for question banks (a JSON array of question objects).
+ *
+ * The input is scanned once, sequentially, only to find where each top-level
+ * record starts and ends. Records are grouped into chunks of roughly
+ * {@link #CHUNK_BYTES} and each chunk is parsed with a {@link JsonReader} and
+ * validated on a worker thread. A bounded number of chunks is in flight, so
+ * heap use stays proportional to the parsed questions rather than the file.
+ *
+ * Every record is parsed on its own; a malformed one is reported with its
+ * position and skipped, and loading carries on.
+ */
+final class QuestionBankLoader {
+    static final int CHUNK_BYTES = 1 << 20;
+    private static final int MAX_OPTIONS = Byte.MAX_VALUE;
+    // Files are mapped in windows so banks over 2 GB still work
+    private static final long MAP_WINDOW = 1L << 30;
+
+    /**
+     * Loaded questions in file order, plus one message per rejected record.
+     */
+    static final class Result {
+        final List<Question> questions;
+        final List<String> errors;
+
+        Result(List<Question> questions, List<String> errors) {
+            this.questions = questions;
+            this.errors = errors;
+        }
+    }
+
+    private final int parallelism;
+    // Shared by all chunks so equal categories and options end up as one String
+    private final Map<String, String> dictionary = new ConcurrentHashMap<>();
+
+    QuestionBankLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    QuestionBankLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Loads a bank from the classpath; returns null if the resource is missing.
+     */
+    Result loadResource(String name) throws IOException {
+        try (InputStream in = QuestionBankLoader.class.getClassLoader().getResourceAsStream(name)) {
+            return in == null ? null : load(in);
+        }
+    }
+
+    /**
+     * Loads a bank from an external file, reading it through memory mappings.
+     */
+    Result loadFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return load(new MappedInputStream(channel));
+        }
+    }
+
+    Result load(InputStream in) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "question-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        List<Future<ChunkResult>> chunks = new ArrayList<>();
+        try {
+            RecordScanner scanner = new RecordScanner(in);
+            Chunk chunk;
+            while ((chunk = scanner.nextChunk()) != null) {
+                Chunk work = chunk;
+                inFlight.acquireUninterruptibly();
+                chunks.add(workers.submit(() -> {
+                    try {
+                        return parse(work);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            return collect(chunks, scanner.errors);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private Result collect(List<Future<ChunkResult>> chunks, List<String> errors) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        for (Future<ChunkResult> future : chunks) {
+            ChunkResult result;
+            try {
+                result = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading questions", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Question chunk failed", e.getCause());
+            }
+            // IDs are positions in the bank, so they are only known once chunks are back in order
+            for (Question q : result.questions) {
+                questions.add(new Question(questions.size(), q.category(), q.text(), q.options(),
+                        q.correctIndex(), q.difficulty()));
+            }
+            errors.addAll(result.errors);
+        }
+        return new Result(questions, errors);
+    }
+
+    private ChunkResult parse(Chunk chunk) {
+        ChunkResult result = new ChunkResult();
+        for (int i = 0; i < chunk.count; i++) {
+            int start = chunk.bounds[2 * i];
+            int end = chunk.bounds[2 * i + 1];
+            long record = chunk.firstRecord + i;
+            try (JsonReader reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(chunk.bytes, start, end - start), StandardCharsets.UTF_8))) {
+                Question q = readQuestion(reader);
+                result.questions.add(q);
+            } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+                // Gson appends a troubleshooting link on a second line
+                String message = String.valueOf(e.getMessage()).split("\\R", 2)[0];
+                result.errors.add("record " + record + ": " + message);
+            }
+        }
+        return result;
+    }
+
+    private Question readQuestion(JsonReader reader) throws IOException {
+        String category = null;
+        String text = null;
+        String correctAnswer = null;
+        String difficulty = null;
+        List<String> options = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "category":
+                    category = reader.nextString();
+                    break;
+                case "question":
+                    text = reader.nextString();
+                    break;
+                case "correctAnswer":
+                    correctAnswer = reader.nextString();
+                    break;
+                case "difficulty":
+                    difficulty = reader.nextString();
+                    break;
+                case "options":
+                    options = new ArrayList<>(4);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        options.add(intern(reader.nextString()));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("missing question text");
+        }
+        if (options == null || options.size() < 2 || options.size() > MAX_OPTIONS) {
+            throw new IllegalArgumentException("needs between 2 and " + MAX_OPTIONS + " options");
+        }
+        int correct = options.indexOf(correctAnswer);
+        if (correct < 0) {
+            throw new IllegalArgumentException("correct answer is not one of the options");
+        }
+        return new Question(-1, intern(category), text, options, (byte) correct, intern(difficulty));
+    }
+
+    private String intern(String value) {
+        return value == null ? null : dictionary.computeIfAbsent(value, v -> v);
+    }
+
+    private static final class Chunk {
+        final byte[] bytes;
+        // start/end offset pairs of each record in bytes
+        final int[] bounds;
+        final int count;
+        final long firstRecord;
+
+        Chunk(byte[] bytes, int[] bounds, int count, long firstRecord) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.count = count;
+            this.firstRecord = firstRecord;
+        }
+    }
+
+    private static final class ChunkResult {
+        final List<Question> questions = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+    }
+
+    /**
+     * Finds the byte range of each element of the top-level array by tracking
+     * nesting depth and string state, without building any JSON values.
+     */
+    private static final class RecordScanner {
+        private final InputStream in;
+        final List<String> errors = new ArrayList<>();
+        private byte[] buf = new byte[CHUNK_BYTES + 8192];
+        private int len;
+        private int pos;
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        private boolean started;
+        private boolean eof;
+        private int recordStart = -1;
+        private int[] bounds = new int[256];
+        private int count;
+        private long nextRecord;
+
+        RecordScanner(InputStream in) {
+            this.in = in;
+        }
+
+        Chunk nextChunk() throws IOException {
+            while (true) {
+                if (pos == len) {
+                    if (eof || !fill()) {
+                        eof = true;
+                        if (recordStart >= 0 || depth > 0) {
+                            errors.add("record " + (nextRecord + count) + ": truncated at end of input");
+                            recordStart = -1;
+                            depth = 0;
+                        }
+                        return count > 0 ? cut() : null;
+                    }
+                }
+                scan();
+                if (count > 0 && pos >= CHUNK_BYTES) {
+                    return cut();
+                }
+            }
+        }
+
+        private void scan() throws IOException {
+            while (pos < len) {
+                byte b = buf[pos];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\') {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inString = false;
+                    }
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    if (!started) {
+                        if (b != '[') {
+                            throw new StreamCorruptedException("Question bank must be a JSON array");
+                        }
+                        started = true;
+                    } else if (++depth == 1) {
+                        recordStart = pos;
+                    }
+                } else if (b == '}' || b == ']') {
+                    if (depth == 0) {
+                        // Closing bracket of the top-level array
+                        pos = len;
+                        eof = true;
+                        return;
+                    }
+                    if (--depth == 0) {
+                        addRecord(recordStart, pos + 1);
+                        recordStart = -1;
+                        if (pos + 1 >= CHUNK_BYTES) {
+                            pos++;
+                            return;
+                        }
+                    }
+                }
+                pos++;
+            }
+        }
+
+        private void addRecord(int start, int end) {
+            if (bounds.length < 2 * (count + 1)) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[2 * count] = start;
+            bounds[2 * count + 1] = end;
+            count++;
+        }
+
+        /**
+         * Hands the completed records off as a chunk and carries any partial
+         * record over into a fresh buffer.
+         */
+        private Chunk cut() {
+            int consumed = bounds[2 * count - 1];
+            Chunk chunk = new Chunk(buf, Arrays.copyOf(bounds, 2 * count), count, nextRecord);
+            nextRecord += count;
+            count = 0;
+
+            byte[] next = new byte[Math.max(CHUNK_BYTES + 8192, len - consumed + 8192)];
+            System.arraycopy(buf, consumed, next, 0, len - consumed);
+            len -= consumed;
+            pos -= consumed;
+            if (recordStart >= 0) {
+                recordStart -= consumed;
+            }
+            buf = next;
+            return chunk;
+        }
+
+        private boolean fill() throws IOException {
+            if (len == buf.length) {
+                // A single record larger than the buffer
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = in.read(buf, len, buf.length - len);
+            if (n <= 0) {
+                return false;
+            }
+            len += n;
+            return true;
+        }
+    }
+
+    /**
+     * Reads a file through consecutive read-only mappings of up to {@link #MAP_WINDOW} bytes.
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long size;
+        private long mappedUpTo;
+        private MappedByteBuffer window;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (window == null || !window.hasRemaining()) {
+                if (mappedUpTo >= size) {
+                    return -1;
+                }
+                long length = Math.min(MAP_WINDOW, size - mappedUpTo);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, mappedUpTo, length);
+                mappedUpTo += length;
+            }
+            int n = Math.min(len, window.remaining());
+            window.get(b, off, n);
+            return n;
+        }
+    }
+}
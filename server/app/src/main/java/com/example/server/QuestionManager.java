@@ -4,15 +4,24 @@
  */
 package com.example.server;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.lang.reflect.Type;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 
 /**
  *
@@ -21,48 +30,304 @@ import java.util.List;
 
 
 public class QuestionManager {
-   
 
+    private static final long WATCH_DEBOUNCE_MS = 500;
 
-    private List<Question> questions;
+    // The version handed to new rooms; replaced atomically on reload
+    private final AtomicReference<QuestionBank> current = new AtomicReference<>();
+    // Reloads run one at a time off the game threads
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "question-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<CompletableFuture<QuestionBank>> pendingReload = new AtomicReference<>();
+    private volatile WatchService watcher;
+    private final SeenQuestions seenQuestions = new SeenQuestions();
+    private final AnswerStatistics answerStatistics = new AnswerStatistics();
 
     public QuestionManager() {
-        loadQuestions();
+        QuestionBank bank = loadBank(1);
+        publish(bank != null ? bank : new QuestionBank(1, "empty", new HeapQuestionStore(new ArrayList<>()), 0));
+
+        ServerMetrics.gauge("questions.version", () -> current.get().version());
+        ServerMetrics.gauge("questions.count", () -> current.get().size());
+        answerStatistics.startPersisting(ServerConfig.STATS_FLUSH_SECONDS);
     }
 
-    private void loadQuestions() {
-        // This is the FIX: Load from the "Resources" folder (Classpath)
-        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("questions.json")) {
-            
-            if (inputStream == null) {
-                System.out.println("ERROR: Could not find questions.json in Resources!");
-                questions = new ArrayList<>();
+    /**
+     * Builds the next version of the bank in the background and swaps it in
+     * once it is complete. Rooms already running keep the version they started
+     * with. Calls made while a reload is queued share that reload. If loading
+     * fails the current version stays in place.
+     */
+    public CompletableFuture<QuestionBank> reloadAsync() {
+        CompletableFuture<QuestionBank> reload = new CompletableFuture<>();
+        CompletableFuture<QuestionBank> queued = pendingReload.compareAndExchange(null, reload);
+        if (queued != null) {
+            return queued;
+        }
+        reloader.execute(() -> {
+            pendingReload.set(null);
+            QuestionBank previous = current.get();
+            QuestionBank next = loadBank(previous.version() + 1);
+            if (next == null || next.size() == 0) {
+                ServerMetrics.counter("questions.reload.failures").increment();
+                System.out.println("⚠️ Question reload failed; keeping version " + previous.version());
+                reload.complete(previous);
                 return;
             }
+            publish(next);
+            ServerMetrics.counter("questions.reloads").increment();
+            System.out.println("🔄 Question bank v" + next.version() + " live: " + next.size()
+                    + " questions in " + next.loadMillis() + " ms (v" + previous.version()
+                    + " still used by " + previous.activeRooms() + " rooms)");
+            retireIfUnused(previous);
+            reload.complete(next);
+        });
+        return reload;
+    }
+
+    /**
+     * Reloads automatically whenever the external bank file changes. Has no
+     * effect for the bundled classpath bank.
+     */
+    public void watchForChanges() {
+        if (ServerConfig.QUESTIONS_FILE == null || watcher != null) {
+            return;
+        }
+        Path file = Paths.get(ServerConfig.QUESTIONS_FILE).toAbsolutePath();
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + file + ": " + e.getMessage());
+            return;
+        }
+        Thread thread = new Thread(() -> watchLoop(file), "question-watch");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("👀 Watching " + file + " for question updates");
+    }
+
+    private void watchLoop(Path file) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= file.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (changed) {
+                    // Editors often write a file in several steps; wait for it to settle
+                    TimeUnit.MILLISECONDS.sleep(WATCH_DEBOUNCE_MS);
+                    WatchKey more;
+                    while ((more = watcher.poll()) != null) {
+                        more.pollEvents();
+                        more.reset();
+                    }
+                    reloadAsync();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    public void shutdown() {
+        reloader.shutdownNow();
+        answerStatistics.shutdown();
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ignored) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    /**
+     * The latest version, for callers that do not hold on to it.
+     */
+    public QuestionBank getBank() {
+        return current.get();
+    }
+
+    /**
+     * Pins the latest version for a new room; pair with {@link #release(QuestionBank)}.
+     */
+    public QuestionBank acquire() {
+        while (true) {
+            QuestionBank bank = current.get();
+            // Only a superseded version can be retired, so this retries at most across a reload
+            if (bank.retain()) {
+                return bank;
+            }
+        }
+    }
+
+    /**
+     * Called when a room that played from {@code bank} is removed.
+     */
+    public void release(QuestionBank bank) {
+        if (bank.release() == 0) {
+            retireIfUnused(bank);
+        }
+    }
+
+    public List<Question> getQuestions() { return current.get().questions(); }
+
+    /**
+     * Per-player question history used to avoid repeats.
+     */
+    public SeenQuestions getSeenQuestions() { return seenQuestions; }
+
+    public AnswerStatistics getAnswerStatistics() { return answerStatistics; }
+
+    /**
+     * Matches questions whose measured difficulty is not {@code level}, for
+     * excluding them when a room asks for a difficulty; null matches nothing.
+     */
+    public Predicate<Question> notAtLevel(String level) {
+        if (level == null) {
+            return question -> false;
+        }
+        return question -> !level.equalsIgnoreCase(answerStatistics.levelOf(question));
+    }
+
+    public List<Question> sampleQuestions(int count) {
+        return sampleQuestions(count, null, null);
+    }
+
+    public List<Question> sampleQuestions(int count, String category, String difficulty) {
+        QuestionBank bank = acquire();
+        try {
+            return bank.sampleQuestions(count, category, difficulty);
+        } finally {
+            release(bank);
+        }
+    }
+
+    private void publish(QuestionBank bank) {
+        String prefix = "questions.v" + bank.version();
+        ServerMetrics.gauge(prefix + ".count", bank::size);
+        ServerMetrics.gauge(prefix + ".loadMs", bank::loadMillis);
+        ServerMetrics.gauge(prefix + ".heapBytes", bank::estimatedBytes);
+        ServerMetrics.gauge(prefix + ".offHeapBytes", bank::offHeapBytes);
+        ServerMetrics.gauge(prefix + ".rooms", bank::activeRooms);
+        current.set(bank);
+    }
+
+    /**
+     * Frees a superseded version and drops its metrics once no room uses it any more.
+     */
+    private void retireIfUnused(QuestionBank bank) {
+        if (bank != current.get() && bank.retire()) {
+            ServerMetrics.remove("questions.v" + bank.version() + ".");
+        }
+    }
+
+    /**
+     * Loads a version from its compiled snapshot when one is up to date;
+     * otherwise parses the JSON and (re)writes the snapshot for the next start.
+     * The "heap" store skips snapshots and keeps plain objects.
+     */
+    private QuestionBank loadBank(int version) {
+        long started = System.nanoTime();
+        String mode = ServerConfig.QUESTION_STORE;
+        Path sourceFile = ServerConfig.QUESTIONS_FILE != null ? Paths.get(ServerConfig.QUESTIONS_FILE) : null;
+        Path snapshot = ServerConfig.QUESTIONS_SNAPSHOT != null && !"heap".equals(mode)
+                ? Paths.get(ServerConfig.QUESTIONS_SNAPSHOT) : null;
+        if (snapshot != null && QuestionSnapshot.isFresh(snapshot, sourceFile)) {
+            try {
+                QuestionStore store = openSnapshot(snapshot, mode);
+                long millis = (System.nanoTime() - started) / 1_000_000;
+                System.out.printf("⏱️ Question snapshot mapped in %d ms (%d questions)%n", millis, store.size());
+                return new QuestionBank(version, snapshot.toString(), store, millis);
+            } catch (IOException e) {
+                System.err.println("Cannot open question snapshot, parsing JSON instead: " + e.getMessage());
+            }
+        }
 
-            Reader reader = new InputStreamReader(inputStream);
-            Gson gson = new Gson();
-            Type questionListType = new TypeToken<ArrayList<Question>>(){}.getType();
-            questions = gson.fromJson(reader, questionListType);
-            
+        QuestionBankLoader loader = new QuestionBankLoader();
+        try {
+            QuestionBankLoader.Result result;
+            String source;
+            if (ServerConfig.QUESTIONS_FILE != null) {
+                source = ServerConfig.QUESTIONS_FILE;
+                result = loader.loadFile(Paths.get(source));
+            } else {
+                // Load from the "Resources" folder (Classpath)
+                source = "classpath:questions.json";
+                result = loader.loadResource("questions.json");
+            }
+            if (result == null) {
+                System.out.println("ERROR: Could not find questions.json in Resources!");
+                return null;
+            }
+            reportErrors(result.errors);
+            QuestionStore store = new HeapQuestionStore(result.questions);
+            if (snapshot == null && isOffHeap(mode)) {
+                // Off-heap stores are read from a snapshot, so compile a private one
+                snapshot = Files.createTempFile("questions-v" + version + "-", ".snap");
+                snapshot.toFile().deleteOnExit();
+            }
+            if (snapshot != null) {
+                store = compileSnapshot(result.questions, snapshot, sourceFile, mode, store);
+                source = snapshot.toString();
+            }
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            System.out.printf("⏱️ Question bank parsed in %d ms (%d questions)%n", millis, store.size());
+            return new QuestionBank(version, source, store, millis);
         } catch (IOException e) {
             e.printStackTrace();
-            questions = new ArrayList<>();
-        }
-    }
-    
-    public List<Question> getQuestions() { return questions; }
-    
-    // Internal class for Question structure
-    public class Question {
-        String category;
-        String question;
-        List<String> options;
-        String correctAnswer;
-        
-        public String getCategory() { return category; }
-        public String getQuestion() { return question; }
-        public List<String> getOptions() { return options; }
-        public String getCorrectAnswer() { return correctAnswer; }
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot and switches to the mapped copy so the parsed
+     * objects can be collected; keeps {@code fallback} if that fails.
+     */
+    private static QuestionStore compileSnapshot(List<Question> questions, Path snapshot, Path sourceFile,
+                                                 String mode, QuestionStore fallback) {
+        try {
+            long size = sourceFile != null ? Files.size(sourceFile) : 0;
+            long modified = sourceFile != null ? Files.getLastModifiedTime(sourceFile).toMillis() : 0;
+            QuestionSnapshot.write(questions, snapshot, size, modified);
+            System.out.println("💾 Compiled question snapshot " + snapshot);
+            return openSnapshot(snapshot, mode);
+        } catch (IOException e) {
+            System.err.println("Cannot write question snapshot " + snapshot + ": " + e.getMessage());
+            return fallback;
+        }
+    }
+
+    private static boolean isOffHeap(String mode) {
+        return "offheap".equals(mode) || "arena".equals(mode);
+    }
+
+    private static QuestionStore openSnapshot(Path snapshot, String mode) throws IOException {
+        switch (mode) {
+            case "offheap":
+                return QuestionSnapshot.openOffHeap(snapshot, false);
+            case "arena":
+                return QuestionSnapshot.openOffHeap(snapshot, true);
+            default:
+                return QuestionSnapshot.open(snapshot);
+        }
+    }
+
+    private static void reportErrors(List<String> errors) {
+        if (errors.isEmpty()) {
+            return;
+        }
+        System.out.println("⚠️ Skipped " + errors.size() + " malformed questions");
+        errors.stream().limit(20).forEach(error -> System.out.println("   " + error));
+        if (errors.size() > 20) {
+            System.out.println("   ...");
+        }
     }
 }
@@ -0,0 +1,506 @@
+package com.example.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled question bank that can be memory-mapped and read lazily, so startup
+ * cost does not depend on how many questions the bank holds.
+ *
+ * Layout (big endian, offsets are absolute):
+ * <pre>
+ *   header      magic "TRVQ", int format, int questions, int strings,
+ *               long sourceSize, long sourceModified,
+ *               long offsets of: string index, string data, question table,
+ *               option table, category table, difficulty table
+ *   strings     long[strings + 1] start offsets into the UTF-8 string data
+ *   questions   per question: int text, int category, int difficulty,
+ *               int first option, byte option count, byte correct index
+ *   options     int string ID per option
+ *   categories  int count, then per category: int name, int start, int end
+ *   difficulty  int count, then per level: int name, int count, int[count] positions
+ * </pre>
+ * Questions are sorted by category, so a category is a contiguous range of
+ * positions. Every string (text, option, category, difficulty) is stored once
+ * in the dictionary; -1 means null.
+ *
+ * A snapshot can be read through a {@link ByteBuffer} mapping (up to 2 GB) or
+ * through a {@link MemorySegment}, either mapped or copied into native memory,
+ * which has no size limit and is released when the bank version is retired.
+ */
+final class QuestionSnapshot {
+    private static final int MAGIC = 0x54525651; // "TRVQ"
+    private static final int FORMAT = 2;
+    private static final int HEADER_BYTES = 4 * 4 + 8 * 2 + 8 * 6;
+    private static final int QUESTION_BYTES = 4 * 4 + 2;
+
+    private QuestionSnapshot() {
+    }
+
+    /**
+     * Builds a snapshot from a JSON bank: {@code QuestionSnapshot <questions.json> <out.snap>}.
+     * Used by the {@code compileQuestions} Gradle task.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: QuestionSnapshot <questions.json> <out.snap>");
+            System.exit(2);
+        }
+        Path source = Paths.get(args[0]);
+        QuestionBankLoader.Result result = new QuestionBankLoader().loadFile(source);
+        result.errors.forEach(error -> System.err.println("skipped " + error));
+        write(result.questions, Paths.get(args[1]), Files.size(source), Files.getLastModifiedTime(source).toMillis());
+        System.out.println("Compiled " + result.questions.size() + " questions into " + args[1]);
+    }
+
+    /**
+     * Whether {@code snapshot} exists and was compiled from the current
+     * {@code source}. A snapshot without a source file is always used as is.
+     */
+    static boolean isFresh(Path snapshot, Path source) {
+        if (!Files.isRegularFile(snapshot)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                return false;
+            }
+            if (source == null || !Files.exists(source)) {
+                return true;
+            }
+            return header.getLong(16) == Files.size(source)
+                    && header.getLong(24) == Files.getLastModifiedTime(source).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes {@code questions} as a snapshot. The file is written next to the
+     * target and moved into place, so a mapped older snapshot stays intact.
+     */
+    static void write(List<Question> questions, Path output, long sourceSize, long sourceModified) throws IOException {
+        List<Question> sorted = new ArrayList<>(questions);
+        sorted.sort(Comparator.comparing(Question::category, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        Map<String, Integer> ids = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int[] table = new int[sorted.size() * 4];
+        int[] options = new int[sorted.size() * 4];
+        int optionCount = 0;
+        Map<String, int[]> categories = new LinkedHashMap<>();
+        Map<String, List<Integer>> difficulties = new LinkedHashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            Question q = sorted.get(i);
+            table[4 * i] = id(q.text(), ids, strings);
+            table[4 * i + 1] = id(q.category(), ids, strings);
+            table[4 * i + 2] = id(q.difficulty(), ids, strings);
+            table[4 * i + 3] = optionCount;
+            for (String option : q.options()) {
+                if (optionCount == options.length) {
+                    options = Arrays.copyOf(options, options.length * 2);
+                }
+                options[optionCount++] = id(option, ids, strings);
+            }
+            if (q.category() != null) {
+                int position = i;
+                categories.computeIfAbsent(q.category(), key -> new int[] {position, position})[1] = i + 1;
+            }
+            if (q.difficulty() != null) {
+                difficulties.computeIfAbsent(q.difficulty(), key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        long stringIndex = HEADER_BYTES;
+        long stringData = stringIndex + 8L * (strings.size() + 1);
+        long stringBytes = 0;
+        for (byte[] s : strings) {
+            stringBytes += s.length;
+        }
+        long questionTable = stringData + stringBytes;
+        long optionTable = questionTable + (long) QUESTION_BYTES * sorted.size();
+        long categoryTable = optionTable + 4L * optionCount;
+        long difficultyTable = categoryTable + 4 + 12L * categories.size();
+
+        Path target = output.toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(sorted.size());
+            out.writeInt(strings.size());
+            out.writeLong(sourceSize);
+            out.writeLong(sourceModified);
+            for (long offset : new long[] {stringIndex, stringData, questionTable, optionTable, categoryTable, difficultyTable}) {
+                out.writeLong(offset);
+            }
+
+            long start = 0;
+            for (byte[] s : strings) {
+                out.writeLong(start);
+                start += s.length;
+            }
+            out.writeLong(start);
+            for (byte[] s : strings) {
+                out.write(s);
+            }
+
+            for (int i = 0; i < sorted.size(); i++) {
+                Question q = sorted.get(i);
+                out.writeInt(table[4 * i]);
+                out.writeInt(table[4 * i + 1]);
+                out.writeInt(table[4 * i + 2]);
+                out.writeInt(table[4 * i + 3]);
+                out.writeByte(q.options().size());
+                out.writeByte(q.correctIndex());
+            }
+            for (int i = 0; i < optionCount; i++) {
+                out.writeInt(options[i]);
+            }
+
+            out.writeInt(categories.size());
+            for (Map.Entry<String, int[]> category : categories.entrySet()) {
+                out.writeInt(ids.get(category.getKey()));
+                out.writeInt(category.getValue()[0]);
+                out.writeInt(category.getValue()[1]);
+            }
+            out.writeInt(difficulties.size());
+            for (Map.Entry<String, List<Integer>> level : difficulties.entrySet()) {
+                out.writeInt(ids.get(level.getKey()));
+                out.writeInt(level.getValue().size());
+                for (int position : level.getValue()) {
+                    out.writeInt(position);
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int id(String value, Map<String, Integer> ids, List<byte[]> strings) {
+        if (value == null) {
+            return -1;
+        }
+        return ids.computeIfAbsent(value, v -> {
+            strings.add(v.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * Maps a snapshot read-only through a {@link ByteBuffer}; snapshots over
+     * 2 GB are mapped as a {@link MemorySegment} instead.
+     */
+    static QuestionStore open(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return openOffHeap(snapshot, false);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SnapshotStore(new BufferSource(buffer), snapshot);
+        }
+    }
+
+    /**
+     * Opens a snapshot as a {@link MemorySegment}: mapped from the file, or,
+     * with {@code copy}, copied into native memory so the file may change or
+     * go away afterwards. Either way the memory is freed by {@link QuestionStore#close()}.
+     */
+    static QuestionStore openOffHeap(Path snapshot, boolean copy) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MemorySegment segment;
+            if (copy) {
+                segment = arena.allocate(channel.size(), 8);
+                try (Arena mapping = Arena.ofConfined()) {
+                    MemorySegment.copy(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), mapping), 0,
+                            segment, 0, channel.size());
+                }
+            } else {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            }
+            return new SnapshotStore(new SegmentSource(segment, arena, copy), snapshot);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Random access to the bytes of a snapshot.
+     */
+    private interface Source {
+        long size();
+
+        byte getByte(long offset);
+
+        int getInt(long offset);
+
+        long getLong(long offset);
+
+        byte[] getBytes(long offset, int length);
+
+        long nativeBytes();
+
+        default void close() {
+        }
+    }
+
+    private static final class BufferSource implements Source {
+        private final ByteBuffer buffer;
+
+        BufferSource(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long size() {
+            return buffer.capacity();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return buffer.get((int) offset);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return buffer.getInt((int) offset);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return buffer.getLong((int) offset);
+        }
+
+        @Override
+        public byte[] getBytes(long offset, int length) {
+            byte[] bytes = new byte[length];
+            buffer.get((int) offset, bytes);
+            return bytes;
+        }
+
+        @Override
+        public long nativeBytes() {
+            return 0;
+        }
+    }
+
+    private static final class SegmentSource implements Source {
+        private static final ValueLayout.OfInt INT =
+                ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+        private static final ValueLayout.OfLong LONG =
+                ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+        private final MemorySegment segment;
+        private final Arena arena;
+        private final boolean allocated;
+
+        SegmentSource(MemorySegment segment, Arena arena, boolean allocated) {
+            this.segment = segment;
+            this.arena = arena;
+            this.allocated = allocated;
+        }
+
+        @Override
+        public long size() {
+            return segment.byteSize();
+        }
+
+        @Override
+        public byte getByte(long offset) {
+            return segment.get(ValueLayout.JAVA_BYTE, offset);
+        }
+
+        @Override
+        public int getInt(long offset) {
+            return segment.get(INT, offset);
+        }
+
+        @Override
+        public long getLong(long offset) {
+            return segment.get(LONG, offset);
+        }
+
+        @Override
+        public byte[] getBytes(long offset, int length) {
+            byte[] bytes = new byte[length];
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+            return bytes;
+        }
+
+        @Override
+        public long nativeBytes() {
+            return allocated ? segment.byteSize() : 0;
+        }
+
+        @Override
+        public void close() {
+            arena.close();
+        }
+    }
+
+    /**
+     * Reads questions straight from the snapshot bytes; nothing per question
+     * stays on the heap. {@link #get(int)} materializes a small {@link Question}
+     * for the caller, which is all a room keeps.
+     */
+    private static final class SnapshotStore implements QuestionStore {
+        private final Source source;
+        private final int count;
+        private final long stringIndex;
+        private final long stringData;
+        private final long questionTable;
+        private final long optionTable;
+        private final Map<String, Positions> byCategory = new HashMap<>();
+        private final Map<String, Positions> byDifficulty = new HashMap<>();
+        // Decoded categories and difficulties, so repeated values share one String
+        private final Map<Integer, String> names = new HashMap<>();
+
+        SnapshotStore(Source source, Path path) throws IOException {
+            if (source.size() < HEADER_BYTES || source.getInt(0) != MAGIC || source.getInt(4) != FORMAT) {
+                throw new IOException("Not a question snapshot: " + path);
+            }
+            this.source = source;
+            this.count = source.getInt(8);
+            this.stringIndex = source.getLong(32);
+            this.stringData = source.getLong(40);
+            this.questionTable = source.getLong(48);
+            this.optionTable = source.getLong(56);
+
+            long categoryTable = source.getLong(64);
+            int categories = source.getInt(categoryTable);
+            for (int c = 0; c < categories; c++) {
+                long entry = categoryTable + 4 + 12L * c;
+                int start = source.getInt(entry + 4);
+                int end = source.getInt(entry + 8);
+                byCategory.put(name(source.getInt(entry)), range(start, end));
+            }
+
+            long entry = source.getLong(72);
+            int levels = source.getInt(entry);
+            entry += 4;
+            for (int d = 0; d < levels; d++) {
+                String level = name(source.getInt(entry));
+                int size = source.getInt(entry + 4);
+                long positions = entry + 8;
+                byDifficulty.put(level, new Positions() {
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public int at(int i) {
+                        return source.getInt(positions + 4L * i);
+                    }
+                });
+                entry = positions + 4L * size;
+            }
+        }
+
+        private static Positions range(int start, int end) {
+            return new Positions() {
+                @Override
+                public int size() {
+                    return end - start;
+                }
+
+                @Override
+                public int at(int i) {
+                    return start + i;
+                }
+            };
+        }
+
+        private String name(int id) {
+            return id < 0 ? null : names.computeIfAbsent(id, this::string);
+        }
+
+        private String string(int id) {
+            if (id < 0) {
+                return null;
+            }
+            long start = source.getLong(stringIndex + 8L * id);
+            long end = source.getLong(stringIndex + 8L * id + 8);
+            return new String(source.getBytes(stringData + start, (int) (end - start)), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public Question get(int index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Question " + index + " of " + count);
+            }
+            long row = questionTable + (long) QUESTION_BYTES * index;
+            int firstOption = source.getInt(row + 12);
+            String[] options = new String[source.getByte(row + 16)];
+            for (int i = 0; i < options.length; i++) {
+                options[i] = string(source.getInt(optionTable + 4L * (firstOption + i)));
+            }
+            String category;
+            String difficulty;
+            synchronized (names) {
+                category = name(source.getInt(row + 4));
+                difficulty = name(source.getInt(row + 8));
+            }
+            return new Question(index, category, string(source.getInt(row)), Arrays.asList(options),
+                    source.getByte(row + 17), difficulty);
+        }
+
+        @Override
+        public Positions byCategory(String category) {
+            return byCategory.get(category);
+        }
+
+        @Override
+        public Positions byDifficulty(String difficulty) {
+            return byDifficulty.get(difficulty);
+        }
+
+        @Override
+        public long heapBytes() {
+            // Only the category/difficulty lookups live on the heap
+            return 64L * (byCategory.size() + byDifficulty.size() + names.size());
+        }
+
+        @Override
+        public long offHeapBytes() {
+            return source.nativeBytes();
+        }
+
+        @Override
+        public void close() {
+            source.close();
+        }
+    }
+}
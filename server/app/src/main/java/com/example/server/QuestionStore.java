@@ -0,0 +1,50 @@
+package com.example.server;
+
+/**
+ * Storage behind a {@link QuestionBank} version: either plain objects on the
+ * heap or a compiled snapshot that is read on demand, from a mapped buffer or
+ * an off-heap memory segment (see {@code trivia.questions.store}).
+ */
+public interface QuestionStore {
+
+    int size();
+
+    /**
+     * Question at position {@code index}; positions are also the question IDs.
+     */
+    Question get(int index);
+
+    /**
+     * Positions of the questions in a category, or null if there are none.
+     */
+    Positions byCategory(String category);
+
+    /**
+     * Positions of the questions with a difficulty, or null if there are none.
+     */
+    Positions byDifficulty(String difficulty);
+
+    /** Approximate heap retained by this store. */
+    long heapBytes();
+
+    /** Native memory allocated by this store, not counting file mappings. */
+    default long offHeapBytes() {
+        return 0;
+    }
+
+    /**
+     * Releases off-heap memory or mappings. Called once no room uses the
+     * version any more; the store must not be read afterwards.
+     */
+    default void close() {
+    }
+
+    /**
+     * A read-only sequence of question positions.
+     */
+    interface Positions {
+        int size();
+
+        int at(int i);
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Players ranked by score in an indexed skip list (highest first, ties by
+ * name). Every link also stores how many players it skips, so a player's
+ * rank, the player at a given rank, the top N and the neighbors around
+ * someone are all found in O(log n) steps instead of sorting.
+ *
+ * Not thread-safe; {@link Leaderboard} guards every instance with its lock.
+ */
+final class RankedScores {
+    private static final int MAX_LEVEL = 32;
+
+    private final Map<String, Node> players = new HashMap<>();
+    private final Node head = new Node(null, 0, 0, MAX_LEVEL);
+    private int level = 1;
+
+    /**
+     * Adds points and games to a player's totals, adding the player if needed.
+     * A player whose games drop to zero leaves the ranking.
+     */
+    void add(String username, long points, int games) {
+        Node node = players.remove(username);
+        if (node != null) {
+            unlink(node);
+            points += node.score;
+            games += node.games;
+        }
+        if (games > 0) {
+            players.put(username, insert(username, points, games));
+        }
+    }
+
+    boolean remove(String username) {
+        Node node = players.remove(username);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Name of the lowest ranked player, or null when empty.
+     */
+    String last() {
+        if (players.isEmpty()) {
+            return null;
+        }
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null) {
+                x = x.next[i];
+            }
+        }
+        return x.username;
+    }
+
+    int size() {
+        return players.size();
+    }
+
+    /**
+     * The player's standing, or null if they are not ranked.
+     */
+    Leaderboard.Standing standing(String username) {
+        Node node = players.get(username);
+        return node != null ? node.standing(rankOf(node)) : null;
+    }
+
+    /**
+     * The best {@code count} players, best first.
+     */
+    List<Leaderboard.Standing> top(int count) {
+        return walk(1, count);
+    }
+
+    /**
+     * The player and up to {@code radius} players on either side of them, best
+     * first; empty if the player is not ranked.
+     */
+    List<Leaderboard.Standing> around(String username, int radius) {
+        Node node = players.get(username);
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        int rank = rankOf(node);
+        int from = Math.max(1, rank - radius);
+        return walk(from, rank + radius - from + 1);
+    }
+
+    /**
+     * Visits every player in rank order.
+     */
+    void forEach(Consumer<Leaderboard.Standing> action) {
+        int rank = 1;
+        for (Node x = head.next[0]; x != null; x = x.next[0]) {
+            action.accept(x.standing(rank++));
+        }
+    }
+
+    /**
+     * Negative if {@code node} ranks above (score, username), zero if it is that entry.
+     */
+    private static int compare(Node node, long score, String username) {
+        if (node.score != score) {
+            return node.score > score ? -1 : 1;
+        }
+        return node.username.compareTo(username);
+    }
+
+    private Node insert(String username, long score, int games) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && compare(x.next[i], score, username) < 0) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = players.size();
+            }
+            level = nodeLevel;
+        }
+        Node node = new Node(username, score, games, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        return node;
+    }
+
+    private void unlink(Node node) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i], node.score, node.username) < 0) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+    }
+
+    /**
+     * 1-based rank of a node in the list.
+     */
+    private int rankOf(Node node) {
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i], node.score, node.username) <= 0) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == node) {
+                return rank;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Up to {@code count} standings starting at a 1-based rank.
+     */
+    private List<Leaderboard.Standing> walk(int fromRank, int count) {
+        List<Leaderboard.Standing> standings = new ArrayList<>(Math.max(0, Math.min(count, players.size())));
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= fromRank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+        }
+        if (traversed != fromRank) {
+            return standings; // Past the end of the list
+        }
+        for (int rank = fromRank; x != null && standings.size() < count; rank++) {
+            standings.add(x.standing(rank));
+            x = x.next[0];
+        }
+        return standings;
+    }
+
+    private static int randomLevel() {
+        int level = 1;
+        // p = 1/4, as in Redis sorted sets: about 1.33 links per player
+        while (level < MAX_LEVEL && (ThreadLocalRandom.current().nextInt() & 3) == 0) {
+            level++;
+        }
+        return level;
+    }
+
+    private static final class Node {
+        final String username;
+        final long score;
+        final int games;
+        final Node[] next;
+        // span[i]: how many ranks next[i] is ahead of this node
+        final int[] span;
+
+        Node(String username, long score, int games, int level) {
+            this.username = username;
+            this.score = score;
+            this.games = games;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+
+        Leaderboard.Standing standing(int rank) {
+            return new Leaderboard.Standing(rank, username, score, games);
+        }
+    }
+}
@@ -0,0 +1,735 @@
+package com.example.server;
+
+import com.example.common.MessageType;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only audit journal of room events (CREATE_ROOM, JOIN_ROOM,
+ * LEAVE_ROOM, NEW_QUESTION, SUBMIT_ANSWER, ROUND_RESULT, GAME_OVER), used to
+ * replay a game when a prize is disputed and to recover rooms after a crash
+ * ({@link RoomRecovery}).
+ *
+ * Records go into segment files of {@link ServerConfig#JOURNAL_SEGMENT_MB} MB
+ * in {@link ServerConfig#JOURNAL_DIR}, mapped as {@link MemorySegment}s.
+ * A room thread encodes its record into a thread-local buffer, reserves space
+ * with one {@code getAndAdd} on the segment's tail and copies the record in,
+ * so appends from different shards never take a lock. The thread that runs
+ * past the end of a segment seals it and switches everyone to the next one,
+ * which the "journal" thread has already created and paged in. The same
+ * thread syncs the current segment every {@link ServerConfig#JOURNAL_SYNC_MS}
+ * ms. It deletes a sealed segment once it is more than
+ * {@link ServerConfig#JOURNAL_RETAIN_HOURS} hours old and not among the
+ * newest {@link ServerConfig#JOURNAL_RETAIN_SEGMENTS}, so disk use follows
+ * the event rate over that period.
+ *
+ * Record layout (little-endian): int length, int CRC32C of the rest, byte
+ * {@link MessageType} ordinal, long server time in epoch millis, room id,
+ * then fields that depend on the type. The checksum is written last, so a
+ * record torn by a crash fails its check and is skipped on replay.
+ */
+public final class RoomJournal {
+    private static final int MAGIC = 0x54524a4e; // "TRJN"
+    private static final int FORMAT = 1;
+    // Header: magic, format, index, created millis, sealed millis (0 until sealed)
+    private static final int HEADER_BYTES = 32;
+    private static final int SEALED_AT = 24;
+    // Length word of the first record that did not fit: continue in the next segment
+    private static final int SEALED = -1;
+    private static final int PAGE = 4096;
+    private static final String SUFFIX = ".journal";
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final int retainSegments;
+    private final long retainMillis;
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+    private final AtomicReference<Segment> spare = new AtomicReference<>();
+    private final LongAdder records = ServerMetrics.counter("journal.records");
+    private final LongAdder bytes = ServerMetrics.counter("journal.bytes");
+    private final LongAdder dropped = ServerMetrics.counter("journal.records.dropped");
+    private final LongAdder rolled = ServerMetrics.counter("journal.segments.rolled");
+    private final LongAdder deleted = ServerMetrics.counter("journal.segments.deleted");
+    // Null when the journal is off or has failed
+    private volatile Segment current;
+    private long nextIndex;
+    private ScheduledExecutorService background;
+
+    public RoomJournal() {
+        this(ServerConfig.JOURNAL_DIR != null ? Paths.get(ServerConfig.JOURNAL_DIR) : null,
+                ServerConfig.JOURNAL_SEGMENT_MB * 1024L * 1024L);
+    }
+
+    /**
+     * A journal writing segments of {@code segmentBytes} into {@code dir}; a
+     * null dir records nothing.
+     */
+    public RoomJournal(Path dir, long segmentBytes) {
+        this(dir, segmentBytes, ServerConfig.JOURNAL_RETAIN_SEGMENTS,
+                TimeUnit.HOURS.toMillis(ServerConfig.JOURNAL_RETAIN_HOURS));
+    }
+
+    RoomJournal(Path dir, long segmentBytes, int retainSegments, long retainMillis) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.retainSegments = retainSegments;
+        this.retainMillis = retainMillis;
+    }
+
+    /**
+     * Opens the first segment after any left by earlier runs and starts the
+     * journal thread. Events are not recorded if the directory cannot be used.
+     */
+    public void start() {
+        if (dir == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(dir);
+            for (Path file : segmentFiles(dir)) {
+                nextIndex = Math.max(nextIndex, indexOf(file) + 1);
+            }
+            current = newSegment(false);
+        } catch (IOException e) {
+            System.err.println("Cannot open journal in " + dir + ": " + e.getMessage());
+            return;
+        }
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.execute(this::prepareSpare);
+        background.scheduleWithFixedDelay(this::sync, ServerConfig.JOURNAL_SYNC_MS, ServerConfig.JOURNAL_SYNC_MS,
+                TimeUnit.MILLISECONDS);
+        System.out.println("📼 Journaling room events to " + dir);
+    }
+
+    /**
+     * Stops recording and syncs the current segment.
+     */
+    public void shutdown() {
+        Segment last = current;
+        current = null;
+        if (background != null) {
+            background.shutdownNow();
+        }
+        if (last != null) {
+            last.memory.force();
+        }
+    }
+
+    /**
+     * Where the next record will go, or null if nothing is being recorded.
+     * Taken on a room's shard, it separates that room's past events from its
+     * future ones.
+     */
+    public Mark mark() {
+        Segment segment = current;
+        return segment != null ? new Mark(segment.index, segment.tail.get()) : null;
+    }
+
+    /**
+     * The directory segments are written to, or null when journaling is off.
+     */
+    public Path directory() {
+        return dir;
+    }
+
+    // Events
+
+    /**
+     * A new room; {@code difficulty} is the measured difficulty the host asked
+     * for, or null for any.
+     */
+    public void createRoom(String roomId, String gameId, String roomName, String host, boolean live, String event,
+                           String difficulty) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.CREATE_ROOM, roomId);
+        encoder.string(gameId);
+        encoder.string(roomName);
+        encoder.string(host);
+        encoder.putByte(live ? 1 : 0);
+        encoder.string(event);
+        encoder.string(difficulty);
+        append(encoder);
+    }
+
+    public void joinRoom(String roomId, String username) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.JOIN_ROOM, roomId);
+        encoder.string(username);
+        append(encoder);
+    }
+
+    public void leaveRoom(String roomId, String username) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.LEAVE_ROOM, roomId);
+        encoder.string(username);
+        append(encoder);
+    }
+
+    public void newQuestion(String roomId, int questionNumber, Question question, long roundMillis) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.NEW_QUESTION, roomId);
+        encoder.putInt(questionNumber);
+        encoder.putLong(question.fingerprint());
+        encoder.putInt(question.id());
+        encoder.putLong(roundMillis);
+        append(encoder);
+    }
+
+    /**
+     * An answer as the server saw it, including ones refused as late.
+     */
+    public void submitAnswer(String roomId, String username, int questionNumber, int answer, long responseMillis,
+                             boolean accepted) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.SUBMIT_ANSWER, roomId);
+        encoder.string(username);
+        encoder.putInt(questionNumber);
+        encoder.putInt(answer);
+        encoder.putLong(responseMillis);
+        encoder.putByte(accepted ? 1 : 0);
+        append(encoder);
+    }
+
+    public void roundResult(String roomId, int questionNumber, int correctIndex, int[] histogram) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.ROUND_RESULT, roomId);
+        encoder.putInt(questionNumber);
+        encoder.putInt(correctIndex);
+        encoder.putInt(histogram.length);
+        for (int count : histogram) {
+            encoder.putInt(count);
+        }
+        append(encoder);
+    }
+
+    /**
+     * Final scores; a live room writes one record per partition.
+     */
+    public void gameOver(String roomId, String gameId, Map<String, Integer> scores) {
+        if (current == null) {
+            return;
+        }
+        Encoder encoder = encoders.get().begin(MessageType.GAME_OVER, roomId);
+        encoder.string(gameId);
+        encoder.putInt(scores.size());
+        for (Map.Entry<String, Integer> score : scores.entrySet()) {
+            encoder.string(score.getKey());
+            encoder.putInt(score.getValue() != null ? score.getValue() : 0);
+        }
+        append(encoder);
+    }
+
+    // Appending
+
+    private void append(Encoder encoder) {
+        int size = encoder.finish();
+        Segment segment = current;
+        if (segment == null || size > segmentBytes - HEADER_BYTES - Integer.BYTES) {
+            dropped.increment();
+            return;
+        }
+        while (true) {
+            long start = segment.tail.getAndAdd(size);
+            if (start + size <= segmentBytes) {
+                segment.write(start, encoder);
+                records.increment();
+                bytes.add(size);
+                return;
+            }
+            if (start <= segmentBytes) {
+                roll(segment, start); // Exactly one thread runs past the end
+            } else {
+                while (current == segment) {
+                    Thread.onSpinWait();
+                }
+            }
+            segment = current;
+            if (segment == null) {
+                dropped.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Seals a full segment and publishes the next one, normally the spare the
+     * journal thread prepared.
+     */
+    private void roll(Segment full, long start) {
+        if (start + Integer.BYTES <= segmentBytes) {
+            full.memory.set(INT, start, SEALED);
+        }
+        full.memory.set(LONG, SEALED_AT, System.currentTimeMillis());
+        Segment next = spare.getAndSet(null);
+        if (next != null && next.index < full.index) {
+            // Numbered before a roll that could not wait for it made its own;
+            // records in it would replay ahead of older ones
+            discard(next);
+            next = null;
+        }
+        if (next == null) {
+            try {
+                next = newSegment(false);
+            } catch (IOException e) {
+                System.err.println("Cannot roll journal, no longer recording: " + e.getMessage());
+            }
+        }
+        current = next;
+        rolled.increment();
+        if (background != null && next != null) {
+            background.execute(() -> {
+                full.memory.force();
+                prepareSpare();
+                retain();
+            });
+        }
+    }
+
+    // Journal thread
+
+    private void prepareSpare() {
+        if (spare.get() != null) {
+            return;
+        }
+        try {
+            Segment segment = newSegment(true);
+            if (!spare.compareAndSet(null, segment)) {
+                discard(segment); // A roll could not wait and made its own
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot prepare journal segment: " + e.getMessage());
+        }
+    }
+
+    private static void discard(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            System.err.println("Cannot delete unused journal segment: " + e.getMessage());
+        }
+    }
+
+    private void sync() {
+        Segment segment = current;
+        if (segment != null) {
+            segment.memory.force();
+        }
+    }
+
+    /**
+     * Deletes the oldest segments that are past both retention limits: sealed
+     * more than {@code retainMillis} ago and not among the newest
+     * {@code retainSegments}.
+     */
+    void retain() {
+        try {
+            List<Path> files = segmentFiles(dir);
+            Segment ready = spare.get();
+            if (ready != null) {
+                files.remove(ready.path); // Not written yet
+            }
+            Segment writing = current;
+            if (writing != null) {
+                files.remove(writing.path);
+            }
+            long cutoff = System.currentTimeMillis() - retainMillis;
+            for (int i = 0; i < files.size() - retainSegments; i++) {
+                if (sealedAt(files.get(i)) > cutoff) {
+                    return; // Later segments were sealed later still
+                }
+                Files.deleteIfExists(files.get(i));
+                deleted.increment();
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot trim journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * When a segment was sealed. One left unsealed by a crash counts from its
+     * last modification.
+     */
+    private static long sealedAt(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(header, SEALED_AT);
+        }
+        long sealed = header.position() == Long.BYTES ? header.getLong(0) : 0;
+        return sealed != 0 ? sealed : Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * Creates and maps the next segment file; with {@code pageIn}, touches
+     * every page so appends do not take page faults.
+     */
+    private Segment newSegment(boolean pageIn) throws IOException {
+        long index;
+        synchronized (this) {
+            index = nextIndex++;
+        }
+        Path path = dir.resolve(String.format("%020d%s", index, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file; the mapping outlives the channel
+            MemorySegment memory = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes, Arena.ofAuto());
+            memory.set(INT, 0, MAGIC);
+            memory.set(INT, 4, FORMAT);
+            memory.set(LONG, 8, index);
+            memory.set(LONG, 16, System.currentTimeMillis());
+            if (pageIn) {
+                for (long page = PAGE; page < segmentBytes; page += PAGE) {
+                    memory.set(ValueLayout.JAVA_BYTE, page, (byte) 0);
+                }
+            }
+            return new Segment(index, path, memory);
+        }
+    }
+
+    private static List<Path> segmentFiles(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        Collections.sort(files); // Zero-padded indexes sort in order
+        return files;
+    }
+
+    private static long indexOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Reading
+
+    /**
+     * Replays every intact record in {@code dir}, oldest first. Records that
+     * fail their checksum are skipped; a segment ends at its first empty or
+     * sealed length word.
+     */
+    public static void read(Path dir, Consumer<Entry> consumer) throws IOException {
+        read(dir, null, consumer);
+    }
+
+    /**
+     * Replays the records appended at or after {@code from}; a null mark
+     * replays everything.
+     */
+    public static void read(Path dir, Mark from, Consumer<Entry> consumer) throws IOException {
+        for (Path file : segmentFiles(dir)) {
+            if (from != null && indexOf(file) < from.segment()) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                 Arena arena = Arena.ofConfined()) {
+                MemorySegment memory = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                if (memory.byteSize() < HEADER_BYTES || memory.get(INT, 0) != MAGIC) {
+                    System.err.println("Not a journal segment: " + file);
+                    continue;
+                }
+                readSegment(memory, indexOf(file), entry -> {
+                    if (from == null || !entry.before(from)) {
+                        consumer.accept(entry);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void readSegment(MemorySegment memory, long index, Consumer<Entry> consumer) {
+        CRC32C crc = new CRC32C();
+        long position = HEADER_BYTES;
+        while (position + 2 * Integer.BYTES <= memory.byteSize()) {
+            int length = memory.get(INT, position);
+            if (length == 0 || length == SEALED) {
+                return;
+            }
+            if (length < 2 * Integer.BYTES || position + length > memory.byteSize()) {
+                System.err.println("Corrupt journal record in segment " + index + " at " + position);
+                return;
+            }
+            ByteBuffer body = memory.asSlice(position + 2 * Integer.BYTES, length - 2 * Integer.BYTES)
+                    .asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() == memory.get(INT, position + Integer.BYTES)) {
+                consumer.accept(decode(index, position, body));
+            }
+            position += length;
+        }
+    }
+
+    private static Entry decode(long segment, long position, ByteBuffer body) {
+        MessageType type = MessageType.values()[body.get()];
+        long timeMillis = body.getLong();
+        String roomId = string(body);
+        Map<String, Object> data = new LinkedHashMap<>();
+        switch (type) {
+            case CREATE_ROOM:
+                data.put("gameId", string(body));
+                data.put("roomName", string(body));
+                data.put("host", string(body));
+                data.put("live", body.get() != 0);
+                data.put("event", string(body));
+                data.put("difficulty", string(body));
+                break;
+            case JOIN_ROOM:
+            case LEAVE_ROOM:
+                data.put("username", string(body));
+                break;
+            case NEW_QUESTION:
+                data.put("questionNumber", body.getInt());
+                data.put("fingerprint", body.getLong());
+                data.put("questionId", body.getInt());
+                data.put("roundMillis", body.getLong());
+                break;
+            case SUBMIT_ANSWER:
+                data.put("username", string(body));
+                data.put("questionNumber", body.getInt());
+                data.put("answer", body.getInt());
+                data.put("responseMillis", body.getLong());
+                data.put("accepted", body.get() != 0);
+                break;
+            case ROUND_RESULT: {
+                data.put("questionNumber", body.getInt());
+                data.put("correctAnswer", body.getInt());
+                int[] histogram = new int[body.getInt()];
+                for (int i = 0; i < histogram.length; i++) {
+                    histogram[i] = body.getInt();
+                }
+                data.put("histogram", histogram);
+                break;
+            }
+            case GAME_OVER: {
+                data.put("gameId", string(body));
+                int count = body.getInt();
+                Map<String, Integer> scores = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    scores.put(string(body), body.getInt());
+                }
+                data.put("scores", scores);
+                break;
+            }
+            default:
+                break;
+        }
+        return new Entry(segment, position, type, timeMillis, roomId, data);
+    }
+
+    private static String string(ByteBuffer body) {
+        int length = Short.toUnsignedInt(body.getShort());
+        if (length == 0xFFFF) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        body.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Prints the journal, optionally only one room's events.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: RoomJournal <journal dir> [roomId]");
+            System.exit(2);
+        }
+        String roomId = args.length > 1 ? args[1] : null;
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        read(Paths.get(args[0]), entry -> {
+            if (roomId == null || roomId.equals(entry.roomId())) {
+                Map<String, Object> data = new LinkedHashMap<>(entry.data());
+                if (data.get("histogram") instanceof int[] histogram) {
+                    data.put("histogram", Arrays.toString(histogram));
+                }
+                System.out.println(time.format(new Date(entry.timeMillis())) + " " + entry.roomId() + " "
+                        + entry.type() + " " + data);
+            }
+        });
+    }
+
+    /**
+     * One replayed record; {@code data} holds the type's fields by name.
+     */
+    public record Entry(long segment, long position, MessageType type, long timeMillis, String roomId,
+                        Map<String, Object> data) {
+        /**
+         * True if this record was appended before {@code mark} was taken.
+         */
+        public boolean before(Mark mark) {
+            return segment < mark.segment() || (segment == mark.segment() && position < mark.position());
+        }
+    }
+
+    /**
+     * A point in the journal: every record appended before it was taken
+     * sorts before it, every later one at or after it.
+     */
+    public record Mark(long segment, long position) {
+    }
+
+    private static final class Segment {
+        final long index;
+        final Path path;
+        final MemorySegment memory;
+        final AtomicLong tail = new AtomicLong(HEADER_BYTES);
+
+        Segment(long index, Path path, MemorySegment memory) {
+            this.index = index;
+            this.path = path;
+            this.memory = memory;
+        }
+
+        /**
+         * Copies a record into its reserved space, checksum last.
+         */
+        void write(long start, Encoder encoder) {
+            memory.set(INT, start, encoder.size);
+            MemorySegment.copy(encoder.bytes, 2 * Integer.BYTES, memory, ValueLayout.JAVA_BYTE,
+                    start + 2 * Integer.BYTES, encoder.size - 2 * Integer.BYTES);
+            VarHandle.releaseFence();
+            memory.set(INT, start + Integer.BYTES, encoder.crc);
+        }
+    }
+
+    /**
+     * Per-thread record buffer; grows for large GAME_OVER records.
+     */
+    private static final class Encoder {
+        // Only a safeguard: names are bounded far below it where clients send them (Names),
+        // so the journal and the room snapshots always agree on a name
+        private static final int MAX_STRING = 0xFFFE;
+
+        byte[] bytes = new byte[1024];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32C checksum = new CRC32C();
+        int size;
+        int crc;
+
+        Encoder begin(MessageType type, String roomId) {
+            buffer.clear();
+            buffer.position(2 * Integer.BYTES); // Length and checksum go straight into the segment
+            buffer.put((byte) type.ordinal());
+            buffer.putLong(System.currentTimeMillis());
+            string(roomId);
+            return this;
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        /**
+         * Unsigned short length (0xFFFF for null) and UTF-8 bytes, with a
+         * fast path for ASCII.
+         */
+        void string(String value) {
+            if (value == null) {
+                ensure(Short.BYTES);
+                buffer.putShort((short) 0xFFFF);
+                return;
+            }
+            int length = Math.min(value.length(), MAX_STRING);
+            ensure(Short.BYTES + length);
+            int start = buffer.position();
+            buffer.position(start + Short.BYTES);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    buffer.position(start);
+                    utf8(value);
+                    return;
+                }
+                buffer.put((byte) c);
+            }
+            buffer.putShort(start, (short) length);
+        }
+
+        private void utf8(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(utf8.length, MAX_STRING);
+            ensure(Short.BYTES + length);
+            buffer.putShort((short) length);
+            buffer.put(utf8, 0, length);
+        }
+
+        private void ensure(int more) {
+            if (buffer.remaining() >= more) {
+                return;
+            }
+            int position = buffer.position();
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + more));
+            buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(position);
+        }
+
+        int finish() {
+            size = buffer.position();
+            checksum.reset();
+            checksum.update(bytes, 2 * Integer.BYTES, size - 2 * Integer.BYTES);
+            crc = (int) checksum.getValue();
+            return size;
+        }
+    }
+}
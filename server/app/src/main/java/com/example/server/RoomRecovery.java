@@ -0,0 +1,473 @@
+package com.example.server;
+
+import com.example.common.MessageType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Crash recovery for classic rooms: periodic snapshots of every room, plus
+ * the {@link RoomJournal} records written after them.
+ *
+ * Every {@link ServerConfig#RECOVERY_SNAPSHOT_SECONDS} s the "room-snapshots"
+ * thread asks the server for a copy of each room ({@link RoomState}). Each
+ * copy is taken on the room's own shard, between two of its events, along
+ * with the journal {@link RoomJournal.Mark} at that moment. A copy is a few
+ * small collections, so neither the timer nor the rooms wait for a snapshot.
+ * Encoding and writing {@link ServerConfig#RECOVERY_FILE} happen on the
+ * snapshot thread.
+ *
+ * After a crash {@link #recover()} reads the last snapshot and the journal
+ * records after it, grouped by room. Each room then catches up on its own
+ * shard with {@link RoomState#catchUp}, so rooms are rebuilt in parallel.
+ * Live shows are not recovered.
+ */
+public final class RoomRecovery {
+    private static final int MAGIC = 0x5452524d; // "TRRM"
+    private static final int FORMAT = 1;
+
+    private final Path file;
+    private final RoomJournal journal;
+    private final LongAdder snapshots = ServerMetrics.counter("recovery.snapshots");
+    private final LongAdder skipped = ServerMetrics.counter("recovery.snapshots.skipped");
+    private volatile int snapshotRooms;
+    private volatile long snapshotMillis;
+    private Supplier<CompletableFuture<List<RoomState>>> capture;
+    private ScheduledExecutorService background;
+
+    public RoomRecovery(RoomJournal journal) {
+        this(ServerConfig.RECOVERY_FILE != null ? Paths.get(ServerConfig.RECOVERY_FILE) : null, journal);
+    }
+
+    /**
+     * Recovery through the snapshot {@code file} and {@code journal}; a null
+     * file turns recovery off.
+     */
+    public RoomRecovery(Path file, RoomJournal journal) {
+        this.file = file;
+        this.journal = journal;
+        ServerMetrics.gauge("recovery.snapshot.rooms", () -> snapshotRooms);
+        ServerMetrics.gauge("recovery.snapshot.ms", () -> snapshotMillis);
+    }
+
+    /**
+     * Starts taking snapshots of the rooms that {@code capture} copies.
+     */
+    public void start(Supplier<CompletableFuture<List<RoomState>>> capture) {
+        if (file == null) {
+            return;
+        }
+        this.capture = capture;
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::snapshot, ServerConfig.RECOVERY_SNAPSHOT_SECONDS,
+                ServerConfig.RECOVERY_SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        if (background != null) {
+            background.shutdownNow();
+        }
+    }
+
+    /**
+     * Takes one snapshot. It is skipped if the rooms are not all copied
+     * within a snapshot interval, since a partial one would lose rooms.
+     */
+    void snapshot() {
+        long began = System.nanoTime();
+        // Taken before any room is copied: rooms created after it are found in the journal
+        RoomJournal.Mark from = journal.mark();
+        List<RoomState> rooms;
+        try {
+            rooms = capture.get().get(ServerConfig.RECOVERY_SNAPSHOT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            skipped.increment();
+            return;
+        } catch (ExecutionException e) {
+            skipped.increment();
+            System.err.println("Cannot snapshot rooms: " + e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            write(from, rooms);
+        } catch (IOException e) {
+            skipped.increment();
+            System.err.println("Cannot write room snapshot: " + e.getMessage());
+            return;
+        }
+        snapshots.increment();
+        snapshotRooms = rooms.size();
+        snapshotMillis = (System.nanoTime() - began) / 1_000_000;
+    }
+
+    /**
+     * Reads the last snapshot and the journal records after it. Returns the
+     * rooms that were in flight, each holding the records it still has to
+     * apply with {@link RoomState#catchUp}.
+     */
+    public List<RoomState> recover() {
+        if (file == null) {
+            return List.of();
+        }
+        long began = System.nanoTime();
+        Map<String, RoomState> rooms = new LinkedHashMap<>();
+        Snapshot snapshot = load(rooms);
+        int[] events = new int[1];
+        Path dir = journal.directory();
+        // A snapshot without a mark was taken while the journal was off; older records do not follow it
+        if (dir != null && Files.isDirectory(dir) && (snapshot == null || snapshot.from() != null)) {
+            try {
+                RoomJournal.read(dir, snapshot != null ? snapshot.from() : null, entry -> {
+                    RoomState state = rooms.get(entry.roomId());
+                    if (state == null) {
+                        if (entry.type() == MessageType.CREATE_ROOM && !Boolean.TRUE.equals(entry.data().get("live"))) {
+                            rooms.put(entry.roomId(), RoomState.created(entry));
+                            events[0]++;
+                        }
+                    } else if (state.mark == null || !entry.before(state.mark)) {
+                        state.tail.add(entry);
+                        state.updatedMillis = Math.max(state.updatedMillis, entry.timeMillis());
+                        events[0]++;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Cannot read journal for recovery: " + e.getMessage());
+            }
+        }
+
+        long oldest = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(ServerConfig.RECOVERY_MAX_AGE_SECONDS);
+        List<RoomState> recovered = new ArrayList<>();
+        for (RoomState state : rooms.values()) {
+            if (state.updatedMillis >= oldest) {
+                recovered.add(state);
+            }
+        }
+        if (!recovered.isEmpty()) {
+            System.out.println("♻️ Found " + recovered.size() + " rooms to recover (" + events[0]
+                    + " journal records) in " + (System.nanoTime() - began) / 1_000_000 + " ms");
+        }
+        return recovered;
+    }
+
+    // Snapshot file
+
+    private void write(RoomJournal.Mark from, List<RoomState> rooms) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(System.currentTimeMillis());
+            writeMark(out, from);
+            out.writeInt(rooms.size());
+            for (RoomState room : rooms) {
+                room.write(out);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot's rooms into {@code rooms}; returns null if there is
+     * no usable snapshot.
+     */
+    private Snapshot load(Map<String, RoomState> rooms) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                System.err.println("Not a room snapshot: " + file);
+                return null;
+            }
+            long createdMillis = in.readLong();
+            RoomJournal.Mark from = readMark(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RoomState room = RoomState.read(in, createdMillis);
+                rooms.put(room.roomId, room);
+            }
+            return new Snapshot(createdMillis, from);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            rooms.clear();
+            System.err.println("Cannot read room snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeMark(DataOutputStream out, RoomJournal.Mark mark) throws IOException {
+        out.writeBoolean(mark != null);
+        if (mark != null) {
+            out.writeLong(mark.segment());
+            out.writeLong(mark.position());
+        }
+    }
+
+    private static RoomJournal.Mark readMark(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new RoomJournal.Mark(in.readLong(), in.readLong()) : null;
+    }
+
+    private record Snapshot(long createdMillis, RoomJournal.Mark from) {
+    }
+
+    /**
+     * A question picked for a game. The id finds it in the bank; the
+     * fingerprint checks that it is still the same question.
+     */
+    public record QuestionRef(int id, long fingerprint) {
+        /**
+         * The question in {@code bank}, or null if the bank no longer has it.
+         */
+        Question resolve(QuestionBank bank) {
+            List<Question> questions = bank.questions();
+            if (id >= 0 && id < questions.size()) {
+                Question question = questions.get(id);
+                if (question.fingerprint() == fingerprint) {
+                    return question;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An answer to the open question that has not been scored yet.
+     */
+    public record PendingAnswer(String username, int answer, long responseMillis) {
+    }
+
+    /**
+     * A classic room's state as of a snapshot, plus the journal records that
+     * followed it. Players are identified by username, since connections do
+     * not survive a restart.
+     */
+    public static final class RoomState {
+        final String roomId;
+        String gameId;
+        String roomName;
+        String host;
+        String event;
+        String difficulty;
+        boolean started;
+        long startedAtMillis;
+        int questionIndex;
+        // True once the current question's results have been sent
+        boolean roundClosed;
+        long roundMillis;
+        final List<QuestionRef> questions = new ArrayList<>();
+        final Map<String, Integer> scores = new LinkedHashMap<>();
+        // Players in the room, connected or not
+        final Set<String> seats = new LinkedHashSet<>();
+        final Map<String, PendingAnswer> answers = new LinkedHashMap<>();
+        // Journal position when the copy was taken; null for rooms found only in the journal
+        RoomJournal.Mark mark;
+        long updatedMillis;
+        final List<RoomJournal.Entry> tail = new ArrayList<>();
+        private boolean finished;
+
+        RoomState(String roomId) {
+            this.roomId = roomId;
+        }
+
+        public String roomId() {
+            return roomId;
+        }
+
+        /**
+         * A room created after the snapshot, known only from its journal records.
+         */
+        static RoomState created(RoomJournal.Entry entry) {
+            Map<String, Object> data = entry.data();
+            RoomState state = new RoomState(entry.roomId());
+            state.gameId = (String) data.get("gameId");
+            state.roomName = (String) data.get("roomName");
+            state.host = (String) data.get("host");
+            state.event = (String) data.get("event");
+            state.difficulty = (String) data.get("difficulty");
+            if (state.host != null) {
+                state.seats.add(state.host);
+                state.scores.put(state.host, 0);
+            }
+            state.updatedMillis = entry.timeMillis();
+            return state;
+        }
+
+        /**
+         * Applies the journal records that followed the snapshot. Returns
+         * false if the game ended or every player left, leaving nothing to
+         * restore. Called on the room's shard.
+         */
+        public boolean catchUp(QuestionBank bank) {
+            for (RoomJournal.Entry entry : tail) {
+                apply(entry, bank);
+            }
+            tail.clear();
+            return !finished && !seats.isEmpty();
+        }
+
+        private void apply(RoomJournal.Entry entry, QuestionBank bank) {
+            Map<String, Object> data = entry.data();
+            switch (entry.type()) {
+                case JOIN_ROOM: {
+                    String username = (String) data.get("username");
+                    seats.add(username);
+                    scores.putIfAbsent(username, 0);
+                    break;
+                }
+                case LEAVE_ROOM: {
+                    String username = (String) data.get("username");
+                    seats.remove(username);
+                    answers.remove(username);
+                    break;
+                }
+                case NEW_QUESTION: {
+                    int number = (Integer) data.get("questionNumber");
+                    if (!started) {
+                        started = true;
+                        startedAtMillis = entry.timeMillis();
+                    }
+                    while (questions.size() < number) {
+                        questions.add(null);
+                    }
+                    questions.set(number - 1, new QuestionRef((Integer) data.get("questionId"),
+                            (Long) data.get("fingerprint")));
+                    questionIndex = number - 1;
+                    roundMillis = (Long) data.get("roundMillis");
+                    roundClosed = false;
+                    answers.clear();
+                    break;
+                }
+                case SUBMIT_ANSWER: {
+                    String username = (String) data.get("username");
+                    if (Boolean.TRUE.equals(data.get("accepted")) && !roundClosed
+                            && (Integer) data.get("questionNumber") == questionIndex + 1) {
+                        answers.put(username, new PendingAnswer(username, (Integer) data.get("answer"),
+                                (Long) data.get("responseMillis")));
+                    }
+                    break;
+                }
+                case ROUND_RESULT: {
+                    if (roundClosed || (Integer) data.get("questionNumber") != questionIndex + 1) {
+                        break;
+                    }
+                    // Scores are not journaled; they follow from the answers, as they did in the room
+                    QuestionRef ref = questionIndex < questions.size() ? questions.get(questionIndex) : null;
+                    Question question = ref != null ? ref.resolve(bank) : null;
+                    int correct = (Integer) data.get("correctAnswer");
+                    for (PendingAnswer answer : answers.values()) {
+                        if (answer.answer() == correct) {
+                            scores.merge(answer.username(), GameRoom.points(answer.responseMillis(), roundMillis,
+                                    question != null ? question.difficulty() : null), Integer::sum);
+                        }
+                    }
+                    answers.clear();
+                    roundClosed = true;
+                    break;
+                }
+                case GAME_OVER:
+                    finished = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            BinaryStrings.write(out, roomId);
+            BinaryStrings.write(out, gameId);
+            BinaryStrings.write(out, roomName);
+            BinaryStrings.write(out, host);
+            BinaryStrings.write(out, event);
+            BinaryStrings.write(out, difficulty);
+            out.writeBoolean(started);
+            out.writeLong(startedAtMillis);
+            out.writeInt(questionIndex);
+            out.writeBoolean(roundClosed);
+            out.writeLong(roundMillis);
+            writeMark(out, mark);
+            out.writeInt(questions.size());
+            for (QuestionRef question : questions) {
+                out.writeInt(question != null ? question.id() : -1);
+                out.writeLong(question != null ? question.fingerprint() : 0);
+            }
+            out.writeInt(scores.size());
+            for (Map.Entry<String, Integer> score : scores.entrySet()) {
+                BinaryStrings.write(out, score.getKey());
+                out.writeInt(score.getValue());
+            }
+            out.writeInt(seats.size());
+            for (String seat : seats) {
+                BinaryStrings.write(out, seat);
+            }
+            out.writeInt(answers.size());
+            for (PendingAnswer answer : answers.values()) {
+                BinaryStrings.write(out, answer.username());
+                out.writeInt(answer.answer());
+                out.writeLong(answer.responseMillis());
+            }
+        }
+
+        static RoomState read(DataInputStream in, long createdMillis) throws IOException {
+            RoomState state = new RoomState(BinaryStrings.read(in));
+            state.gameId = BinaryStrings.read(in);
+            state.roomName = BinaryStrings.read(in);
+            state.host = BinaryStrings.read(in);
+            state.event = BinaryStrings.read(in);
+            state.difficulty = BinaryStrings.read(in);
+            state.started = in.readBoolean();
+            state.startedAtMillis = in.readLong();
+            state.questionIndex = in.readInt();
+            state.roundClosed = in.readBoolean();
+            state.roundMillis = in.readLong();
+            state.mark = readMark(in);
+            int questions = in.readInt();
+            for (int i = 0; i < questions; i++) {
+                int id = in.readInt();
+                long fingerprint = in.readLong();
+                state.questions.add(id >= 0 ? new QuestionRef(id, fingerprint) : null);
+            }
+            int scores = in.readInt();
+            for (int i = 0; i < scores; i++) {
+                state.scores.put(BinaryStrings.read(in), in.readInt());
+            }
+            int seats = in.readInt();
+            for (int i = 0; i < seats; i++) {
+                state.seats.add(BinaryStrings.read(in));
+            }
+            int answers = in.readInt();
+            for (int i = 0; i < answers; i++) {
+                PendingAnswer answer = new PendingAnswer(BinaryStrings.read(in), in.readInt(), in.readLong());
+                state.answers.put(answer.username(), answer);
+            }
+            state.updatedMillis = createdMillis;
+            return state;
+        }
+    }
+}
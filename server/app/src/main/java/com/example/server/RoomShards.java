@@ -0,0 +1,87 @@
+package com.example.server;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of single-threaded loops that own all game room state.
+ *
+ * A room is mapped to a shard by hashing its ID, so every event for that room
+ * (joins, answers, disconnects, timer steps) runs sequentially on the same
+ * thread and {@link GameRoom} needs no locks. Different rooms progress in
+ * parallel across shards.
+ */
+public final class RoomShards {
+    private final ThreadPoolExecutor[] shards;
+
+    public RoomShards() {
+        this(ServerConfig.ROOM_SHARDS);
+    }
+
+    public RoomShards(int count) {
+        shards = new ThreadPoolExecutor[Math.max(1, count)];
+        for (int i = 0; i < shards.length; i++) {
+            String name = "room-shard-" + i;
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ServerMetrics.gauge("rooms.shards.queued", this::queuedEvents);
+    }
+
+    /**
+     * Queues an event for the room's shard. Events for one room run in submission order.
+     */
+    public void execute(String roomId, Runnable event) {
+        execute(shardOf(roomId), "Room " + roomId, event);
+    }
+
+    /**
+     * Queues an event for a specific shard, for state that is partitioned
+     * across all shards rather than owned by one room (see {@link LiveRoom}).
+     */
+    public void execute(int shard, String owner, Runnable event) {
+        shards[shard].execute(() -> {
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                System.err.println(owner + " event failed: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
+    }
+
+    int shardOf(String roomId) {
+        int h = roomId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    private long queuedEvents() {
+        long queued = 0;
+        for (ThreadPoolExecutor shard : shards) {
+            queued += shard.getQueue().size();
+        }
+        return queued;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor shard : shards) {
+            shard.shutdown();
+        }
+        for (ThreadPoolExecutor shard : shards) {
+            try {
+                shard.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Remembers which questions each player has recently been asked, so new games
+ * can avoid repeats.
+ *
+ * Every player gets a rotating Bloom filter: two fixed-size generations of
+ * {@link ServerConfig#SEEN_BITS} bits. Questions go into the current
+ * generation; when it has taken {@link ServerConfig#SEEN_GENERATION_SIZE}
+ * questions the older one is cleared and becomes current. A player therefore
+ * remembers between one and two generations of questions in a constant
+ * amount of memory, with a small false-positive rate (a fresh question
+ * occasionally counts as seen) and no false negatives within that window.
+ *
+ * Questions are keyed by a hash of their text rather than their ID, which
+ * changes between bank versions. At most {@link ServerConfig#SEEN_MAX_PLAYERS}
+ * players are tracked; the least recently active ones are forgotten first.
+ */
+public final class SeenQuestions {
+    private static final int HASHES = 4;
+
+    private final int bits;
+    private final int generationSize;
+    private final int maxPlayers;
+    // Access-ordered, so iteration starts at the least recently active player
+    private final Map<String, Filter> players;
+
+    public SeenQuestions() {
+        this(ServerConfig.SEEN_BITS, ServerConfig.SEEN_GENERATION_SIZE, ServerConfig.SEEN_MAX_PLAYERS);
+    }
+
+    public SeenQuestions(int bits, int generationSize, int maxPlayers) {
+        this.bits = Math.max(64, bits) & ~63;
+        this.generationSize = Math.max(1, generationSize);
+        this.maxPlayers = Math.max(1, maxPlayers);
+        this.players = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+                return size() > SeenQuestions.this.maxPlayers;
+            }
+        };
+        ServerMetrics.gauge("seen.players", this::trackedPlayers);
+        ServerMetrics.gauge("seen.bytes", () -> (long) trackedPlayers() * bytesPerPlayer());
+    }
+
+    /**
+     * Records that {@code username} was asked {@code question}.
+     */
+    public void record(String username, Question question) {
+        Filter filter;
+        synchronized (players) {
+            filter = players.computeIfAbsent(username, name -> new Filter(bits));
+        }
+        filter.add(question.fingerprint(), generationSize);
+    }
+
+    /**
+     * A test for "seen by any of these players", taken once per game.
+     */
+    public Predicate<Question> seenByAny(Collection<String> usernames) {
+        List<Filter> filters = new ArrayList<>(usernames.size());
+        synchronized (players) {
+            for (String username : usernames) {
+                Filter filter = players.get(username);
+                if (filter != null) {
+                    filters.add(filter);
+                }
+            }
+        }
+        if (filters.isEmpty()) {
+            return question -> false;
+        }
+        return question -> {
+            long fingerprint = question.fingerprint();
+            for (Filter filter : filters) {
+                if (filter.mightContain(fingerprint)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * The player's filter as bytes for their {@link PlayerProfile}, or null if
+     * they are not tracked.
+     */
+    public byte[] export(String username) {
+        Filter filter;
+        synchronized (players) {
+            filter = players.get(username);
+        }
+        return filter != null ? filter.toBytes() : null;
+    }
+
+    /**
+     * Brings back a filter saved by {@link #export} when a player returns.
+     * Ignored if the player is already tracked or the filter was saved with
+     * a different {@link ServerConfig#SEEN_BITS}.
+     */
+    public void restore(String username, byte[] saved) {
+        if (saved == null || saved.length != Filter.bytes(bits)) {
+            return;
+        }
+        synchronized (players) {
+            if (!players.containsKey(username)) {
+                players.put(username, Filter.fromBytes(bits, saved));
+            }
+        }
+    }
+
+    public int trackedPlayers() {
+        synchronized (players) {
+            return players.size();
+        }
+    }
+
+    public int bytesPerPlayer() {
+        return 2 * bits / 8;
+    }
+
+    /**
+     * Two Bloom filter generations over a single word array.
+     */
+    private static final class Filter {
+        private final long[] words;
+        private final int bitsPerGeneration;
+        private int current;
+        private int added;
+
+        Filter(int bitsPerGeneration) {
+            this.bitsPerGeneration = bitsPerGeneration;
+            this.words = new long[2 * bitsPerGeneration / 64];
+        }
+
+        synchronized void add(long fingerprint, int generationSize) {
+            if (added >= generationSize) {
+                // Forget the older generation and start filling it again
+                current ^= 1;
+                int from = current * words.length / 2;
+                Arrays.fill(words, from, from + words.length / 2, 0L);
+                added = 0;
+            }
+            int base = current * bitsPerGeneration;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = base + index(fingerprint, i);
+                words[bit >>> 6] |= 1L << bit;
+            }
+            added++;
+        }
+
+        static int bytes(int bitsPerGeneration) {
+            return 2 + 4 + 2 * bitsPerGeneration / 8; // Current generation, added, words
+        }
+
+        synchronized byte[] toBytes() {
+            ByteBuffer buffer = ByteBuffer.allocate(bytes(bitsPerGeneration));
+            buffer.putShort((short) current).putInt(added).asLongBuffer().put(words);
+            return buffer.array();
+        }
+
+        static Filter fromBytes(int bitsPerGeneration, byte[] saved) {
+            Filter filter = new Filter(bitsPerGeneration);
+            ByteBuffer buffer = ByteBuffer.wrap(saved);
+            filter.current = buffer.getShort() & 1;
+            filter.added = buffer.getInt();
+            buffer.asLongBuffer().get(filter.words);
+            return filter;
+        }
+
+        synchronized boolean mightContain(long fingerprint) {
+            return contains(0, fingerprint) || contains(bitsPerGeneration, fingerprint);
+        }
+
+        private boolean contains(int base, long fingerprint) {
+            for (int i = 0; i < HASHES; i++) {
+                int bit = base + index(fingerprint, i);
+                if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Double hashing: the i-th probe is h1 + i * h2.
+         */
+        private int index(long fingerprint, int i) {
+            int h1 = (int) fingerprint;
+            int h2 = (int) (fingerprint >>> 32) | 1;
+            return Math.floorMod(h1 + i * h2, bitsPerGeneration);
+        }
+    }
+}
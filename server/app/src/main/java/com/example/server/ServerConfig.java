@@ -0,0 +1,189 @@
+package com.example.server;
+
+/**
+ * Server tuning knobs, read once at startup from system properties
+ * (for example {@code -Dtrivia.transport=nio}).
+ */
+public final class ServerConfig {
+
+    /**
+     * TCP transport for Java clients: "blocking" (fixed thread pool), "nio"
+     * (selector event loops) or "virtual" (one virtual thread per client).
+     */
+    public static final String TRANSPORT = System.getProperty("trivia.transport", "blocking");
+
+    /** Number of selector threads used by the NIO transport; defaults to one per core. */
+    public static final int NIO_EVENT_LOOPS = Integer.getInteger("trivia.nio.eventLoops",
+            Runtime.getRuntime().availableProcessors());
+
+    /** Admission limit for concurrent Java client connections, across all transports. */
+    public static final int MAX_CONNECTIONS = Integer.getInteger("trivia.maxConnections", 50_000);
+
+    /** Queued outbound messages per TCP client at which its eviction grace period starts. */
+    public static final int OUTBOUND_HIGH_WATERMARK = Integer.getInteger("trivia.outbound.highWatermark", 256);
+
+    /** Queue depth a slow client must drain back to before it is considered healthy again. */
+    public static final int OUTBOUND_LOW_WATERMARK = Integer.getInteger("trivia.outbound.lowWatermark", 64);
+
+    /** How long a client may stay above the high watermark before it is disconnected. */
+    public static final long OUTBOUND_GRACE_MS = Long.getLong("trivia.outbound.graceMs", 5_000);
+
+    /** Resolution of the shared game timer; every delay is rounded up to a multiple of it. */
+    public static final long TIMER_TICK_MS = Long.getLong("trivia.timer.tickMs", 10);
+
+    /** Number of single-threaded loops that own game room state; defaults to one per core. */
+    public static final int ROOM_SHARDS = Integer.getInteger("trivia.rooms.shards",
+            Runtime.getRuntime().availableProcessors());
+
+    /** How long a question accepts answers before the round closes on its own. */
+    public static final long ROUND_SECONDS = Long.getLong("trivia.round.seconds", 20);
+
+    /** Most players a live show room accepts. */
+    public static final int LIVE_MAX_PLAYERS = Integer.getInteger("trivia.live.maxPlayers", 100_000);
+
+    /** How long a live show room stays open for joins before its game starts. */
+    public static final long LIVE_LOBBY_SECONDS = Long.getLong("trivia.live.lobbySeconds", 30);
+
+    /** How long a live show question accepts answers. */
+    public static final long LIVE_ROUND_SECONDS = Long.getLong("trivia.live.roundSeconds", 10);
+
+    /** External question bank (JSON array) loaded instead of the bundled questions.json. */
+    public static final String QUESTIONS_FILE = System.getProperty("trivia.questions.file");
+
+    /** Bloom filter bits per generation of a player's question history (two generations per player). */
+    public static final int SEEN_BITS = Integer.getInteger("trivia.seen.bits", 2048);
+
+    /** Questions a history generation takes before the older generation is cleared. */
+    public static final int SEEN_GENERATION_SIZE = Integer.getInteger("trivia.seen.generationSize", 200);
+
+    /** Players whose question history is kept; the least recently active are dropped first. */
+    public static final int SEEN_MAX_PLAYERS = Integer.getInteger("trivia.seen.maxPlayers", 200_000);
+
+    /** Where per-question answer statistics are kept between runs; "none" keeps them in memory only. */
+    public static final String STATS_FILE = noneAsNull(System.getProperty("trivia.stats.file", "answer-stats.json"));
+
+    /** How often answer statistics are written to {@link #STATS_FILE}. */
+    public static final long STATS_FLUSH_SECONDS = Long.getLong("trivia.stats.flushSeconds", 60);
+
+    /** Answers a question needs before its measured difficulty replaces its label. */
+    public static final int STATS_MIN_ANSWERS = Integer.getInteger("trivia.stats.minAnswers", 20);
+
+    /** Where the server-wide leaderboard is kept between runs; "none" keeps it in memory only. */
+    public static final String LEADERBOARD_FILE = noneAsNull(System.getProperty("trivia.leaderboard.file", "leaderboard.dat"));
+
+    /** How often a changed leaderboard is written to {@link #LEADERBOARD_FILE}. */
+    public static final long LEADERBOARD_FLUSH_SECONDS = Long.getLong("trivia.leaderboard.flushSeconds", 60);
+
+    /** Players kept on each daily, weekly or event leaderboard; the lowest ranked are dropped first. */
+    public static final int LEADERBOARD_WINDOW_MAX_PLAYERS = Integer.getInteger("trivia.leaderboard.windowMaxPlayers", 100_000);
+
+    /** Event leaderboards kept; the least recently played event is dropped first. */
+    public static final int LEADERBOARD_EVENTS = Integer.getInteger("trivia.leaderboard.events", 16);
+
+    /**
+     * Comma-separated events rooms may count towards; more can be opened
+     * from the operator console with "event NAME".
+     */
+    public static final String LEADERBOARD_EVENT_NAMES = System.getProperty("trivia.leaderboard.eventNames", "");
+
+    /** JDBC URL of the database finished games are saved to; "none" keeps nothing. */
+    public static final String RESULTS_DB = noneAsNull(System.getProperty("trivia.results.db", "jdbc:h2:./trivia-results"));
+
+    /** Most rows committed to the results database in one transaction. */
+    public static final int RESULTS_BATCH_ROWS = Integer.getInteger("trivia.results.batchRows", 5_000);
+
+    /** How long the results writer waits for more rows before committing a small batch. */
+    public static final long RESULTS_LINGER_MS = Long.getLong("trivia.results.lingerMs", 50);
+
+    /** Rows that may wait for the results database; past half of it new rooms are turned away. */
+    public static final int RESULTS_MAX_PENDING_ROWS = Integer.getInteger("trivia.results.maxPendingRows", 1_000_000);
+
+    /** Directory of the room event journal; "none" turns journaling off. */
+    public static final String JOURNAL_DIR = noneAsNull(System.getProperty("trivia.journal.dir", "journal"));
+
+    /** Size of each pre-allocated journal segment file. */
+    public static final int JOURNAL_SEGMENT_MB = Integer.getInteger("trivia.journal.segmentMb", 4);
+
+    /** Journal segment files always kept, however old they are. */
+    public static final int JOURNAL_RETAIN_SEGMENTS = Integer.getInteger("trivia.journal.retainSegments", 16);
+
+    /**
+     * Hours a sealed journal segment is kept before it may be deleted; this is
+     * how long a disputed game can still be replayed.
+     */
+    public static final long JOURNAL_RETAIN_HOURS = Long.getLong("trivia.journal.retainHours", 72);
+
+    /** How often the journal segment being written is synced to disk. */
+    public static final long JOURNAL_SYNC_MS = Long.getLong("trivia.journal.syncMs", 1_000);
+
+    /** Where snapshots of in-flight rooms are kept for crash recovery; "none" turns recovery off. */
+    public static final String RECOVERY_FILE = noneAsNull(System.getProperty("trivia.recovery.file", "rooms.snapshot"));
+
+    /** How often every room's state is snapshotted. */
+    public static final long RECOVERY_SNAPSHOT_SECONDS = Long.getLong("trivia.recovery.snapshotSeconds", 5);
+
+    /** How long a recovered room waits for its players to reconnect before play resumes. */
+    public static final long RECOVERY_RESUME_SECONDS = Long.getLong("trivia.recovery.resumeSeconds", 20);
+
+    /** Rooms with no activity for longer than this before a crash are not brought back. */
+    public static final long RECOVERY_MAX_AGE_SECONDS = Long.getLong("trivia.recovery.maxAgeSeconds", 600);
+
+    /** Player profiles kept in memory in front of the results database. */
+    public static final int PROFILE_CACHE_SIZE = Integer.getInteger("trivia.profiles.cacheSize", 50_000);
+
+    /** Threads loading profiles from the database. */
+    public static final int PROFILE_LOADERS = Integer.getInteger("trivia.profiles.loaders", 4);
+
+    /** Age after which a cached profile is reloaded in the background on its next use. */
+    public static final long PROFILE_REFRESH_SECONDS = Long.getLong("trivia.profiles.refreshSeconds", 300);
+
+    /** How often coalesced profile updates are written to the database. */
+    public static final long PROFILE_FLUSH_MS = Long.getLong("trivia.profiles.flushMs", 1_000);
+
+    /** Directory of the columnar answer export; "none" turns it off. */
+    public static final String ANALYTICS_DIR = noneAsNull(System.getProperty("trivia.analytics.dir", "analytics"));
+
+    /** Answers per compressed row group of the answer export. */
+    public static final int ANALYTICS_ROW_GROUP_ROWS = Integer.getInteger("trivia.analytics.rowGroupRows", 65_536);
+
+    /** Longest an answer waits before a partly filled row group is written. */
+    public static final long ANALYTICS_FLUSH_SECONDS = Long.getLong("trivia.analytics.flushSeconds", 30);
+
+    /** Size past which the answer export starts a new segment file. */
+    public static final int ANALYTICS_SEGMENT_MB = Integer.getInteger("trivia.analytics.segmentMb", 64);
+
+    /** Answers that may wait for the export writer; past it further rounds are dropped. */
+    public static final int ANALYTICS_MAX_PENDING_ROWS = Integer.getInteger("trivia.analytics.maxPendingRows", 1_000_000);
+
+    /**
+     * Compiled, memory-mapped copy of the question bank. Defaults to
+     * {@code <questions file>.snap} next to an external bank; "none" disables it.
+     */
+    public static final String QUESTIONS_SNAPSHOT = snapshotPath();
+
+    /**
+     * Where question text lives: "mapped" (default; snapshot read through a
+     * mapped buffer, or plain objects when there is no snapshot), "heap" (plain
+     * objects, no snapshot), "offheap" (snapshot mapped as a MemorySegment) or
+     * "arena" (snapshot copied into native memory).
+     */
+    public static final String QUESTION_STORE = System.getProperty("trivia.questions.store", "mapped");
+
+    private static String noneAsNull(String value) {
+        return "none".equalsIgnoreCase(value) ? null : value;
+    }
+
+    private static String snapshotPath() {
+        String path = System.getProperty("trivia.questions.snapshot");
+        if ("none".equalsIgnoreCase(path)) {
+            return null;
+        }
+        if (path == null && QUESTIONS_FILE != null) {
+            return QUESTIONS_FILE + ".snap";
+        }
+        return path;
+    }
+
+    private ServerConfig() {
+    }
+}
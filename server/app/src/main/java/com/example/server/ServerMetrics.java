@@ -0,0 +1,51 @@
+package com.example.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide counters and gauges, keyed by dotted names such as
+ * {@code tcp.slowConsumer.evicted}. Counters are striped, so hot paths can
+ * increment them without contention.
+ */
+public final class ServerMetrics {
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<? extends Number>> GAUGES = new ConcurrentHashMap<>();
+
+    private ServerMetrics() {
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Registers (or replaces) a value that is sampled whenever a snapshot is taken.
+     */
+    public static void gauge(String name, Supplier<? extends Number> value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * Drops every counter and gauge whose name starts with {@code prefix}.
+     */
+    public static void remove(String prefix) {
+        COUNTERS.keySet().removeIf(name -> name.startsWith(prefix));
+        GAUGES.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+        return snapshot;
+    }
+
+    public static void print() {
+        System.out.println("📈 Metrics:");
+        snapshot().forEach((name, value) -> System.out.println("   " + name + " = " + value));
+    }
+}
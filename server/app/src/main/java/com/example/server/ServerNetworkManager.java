@@ -6,12 +6,16 @@ package com.example.server;
 
 import com.example.common.Message;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 
@@ -26,26 +30,73 @@ import java.util.concurrent.TimeUnit;
 public class ServerNetworkManager {
     private static final int PORT = 12345;
     private static final int MAX_THREADS = 20; // Support up to 20 concurrent clients
-    private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
+
+    /**
+     * How Java client sockets are served.
+     */
+    public enum Transport {
+        /** One pooled thread blocks on each client's object stream. */
+        BLOCKING,
+        /** A few selector threads multiplex every connection. */
+        NIO,
+        /** Every client gets its own virtual thread running the blocking handler. */
+        VIRTUAL
+    }
+
+    private final Set<ClientConnection> clients = ConcurrentHashMap.newKeySet();
+    private final Transport transport;
+    private final Leaderboard leaderboard;
     private final ExecutorService clientThreadPool;
+    private final Semaphore admissions = new Semaphore(ServerConfig.MAX_CONNECTIONS);
+    private NioEventLoop[] eventLoops;
     private volatile boolean isRunning = false;
     private ServerSocket serverSocket;
 
-    public ServerNetworkManager() {
-        // Create a fixed thread pool to handle multiple clients efficiently
-        this.clientThreadPool = Executors.newFixedThreadPool(MAX_THREADS);
+    public ServerNetworkManager(Leaderboard leaderboard) {
+        this(Transport.valueOf(ServerConfig.TRANSPORT.toUpperCase()), leaderboard);
+    }
+
+    public ServerNetworkManager(Transport transport, Leaderboard leaderboard) {
+        this.transport = transport;
+        this.leaderboard = leaderboard;
+        ServerMetrics.gauge("tcp.clients", clients::size);
+        switch (transport) {
+            case BLOCKING:
+                // Create a fixed thread pool to handle multiple clients efficiently
+                this.clientThreadPool = Executors.newFixedThreadPool(MAX_THREADS);
+                break;
+            case VIRTUAL:
+                // No pool cap: blocking reads park the virtual thread, not a carrier
+                this.clientThreadPool = Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("tcp-client-", 0).factory());
+                break;
+            default:
+                this.clientThreadPool = null;
+        }
     }
 
     public void startServer() {
+        if (transport == Transport.NIO) {
+            startNioServer();
+            return;
+        }
         isRunning = true;
         try {
             serverSocket = new ServerSocket(PORT);
             System.out.println("🚀 Server started on port " + PORT);
-            System.out.println("✅ Ready to accept up to " + MAX_THREADS + " concurrent connections");
+            if (transport == Transport.VIRTUAL) {
+                System.out.println("✅ Virtual thread per client, admitting up to "
+                        + ServerConfig.MAX_CONNECTIONS + " concurrent connections");
+            } else {
+                System.out.println("✅ Ready to accept up to " + MAX_THREADS + " concurrent connections");
+            }
             
             while (isRunning) {
                 try {
                     Socket clientSocket = serverSocket.accept();
+                    if (!admit(clientSocket)) {
+                        continue;
+                    }
                     System.out.println("🔌 New client connected: " + clientSocket.getInetAddress());
                     System.out.println("📊 Active clients: " + (clients.size() + 1));
                     
@@ -69,16 +120,88 @@ public class ServerNetworkManager {
         }
     }
 
+    /**
+     * Accepts on the calling thread and spreads connections round-robin over
+     * {@link ServerConfig#NIO_EVENT_LOOPS} selector threads.
+     */
+    private void startNioServer() {
+        isRunning = true;
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(PORT));
+            serverSocket = serverChannel.socket();
+
+            eventLoops = new NioEventLoop[Math.max(1, ServerConfig.NIO_EVENT_LOOPS)];
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new NioEventLoop("nio-loop-" + i);
+                eventLoops[i].start();
+            }
+            System.out.println("🚀 Server started on port " + PORT + " (NIO)");
+            System.out.println("✅ " + eventLoops.length + " event loops multiplexing client connections");
+
+            int next = 0;
+            while (isRunning) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    if (!admit(channel.socket())) {
+                        continue;
+                    }
+                    System.out.println("🔌 New client connected: " + channel.getRemoteAddress());
+                    eventLoops[next++ % eventLoops.length].register(channel, this);
+                } catch (IOException e) {
+                    if (isRunning) {
+                        System.err.println("Error accepting client: " + e.getMessage());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Applies the {@link ServerConfig#MAX_CONNECTIONS} admission limit. Rejected
+     * sockets are closed straight away rather than left waiting in a queue.
+     */
+    private boolean admit(Socket socket) {
+        if (admissions.tryAcquire()) {
+            return true;
+        }
+        System.err.println("⛔ Connection limit reached, rejecting " + socket.getInetAddress());
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing to clean up
+        }
+        return false;
+    }
+
+    /**
+     * Returns an admission taken for a connection that never became a client.
+     */
+    void releaseAdmission() {
+        admissions.release();
+    }
+
+    void addClient(ClientConnection client) {
+        clients.add(client);
+        System.out.println("📊 Active clients: " + clients.size());
+    }
+
     public void broadcast(Message message) {
         System.out.println("📢 Broadcasting to " + clients.size() + " clients");
-        for (ClientHandler client : clients) {
+        for (ClientConnection client : clients) {
             client.sendMessage(message);
         }
     }
     
-    public synchronized void removeClient(ClientHandler client) {
-        clients.remove(client);
-        System.out.println("👋 Client disconnected. Active clients: " + clients.size());
+    public void removeClient(ClientConnection client) {
+        if (clients.remove(client)) {
+            admissions.release();
+            System.out.println("👋 Client disconnected. Active clients: " + clients.size());
+        }
     }
 
     public void shutdown() {
@@ -94,6 +217,16 @@ public class ServerNetworkManager {
             System.err.println("Error closing server socket: " + e.getMessage());
         }
         
+        if (eventLoops != null) {
+            for (NioEventLoop loop : eventLoops) {
+                loop.shutdown();
+            }
+        }
+        if (clientThreadPool == null) {
+            System.out.println("✅ Server shutdown complete");
+            return;
+        }
+
         // Shutdown thread pool gracefully
         clientThreadPool.shutdown();
         try {
@@ -110,6 +243,14 @@ public class ServerNetworkManager {
     public int getActiveClientCount() {
         return clients.size();
     }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
     
 }
 
@@ -2,15 +2,21 @@ package com.example.server;
 
 import com.example.common.Message;
 import com.example.common.MessageType;
-import com.example.server.QuestionManager.Question;
 import com.google.gson.Gson;
 import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * WebSocket server for HTML/JavaScript clients
@@ -21,18 +27,43 @@ public class TriviaWebSocketServer extends WebSocketServer {
     private static final int WS_PORT = 8081;
     private final Map<WebSocket, String> clientUsernames = new ConcurrentHashMap<>();
     private final Map<String, GameRoom> gameRooms = new ConcurrentHashMap<>();
+    private final Map<String, LiveRoom> liveRooms = new ConcurrentHashMap<>();
     private final Map<WebSocket, String> playerRooms = new ConcurrentHashMap<>(); // player -> roomId
+    // Players of rooms recovered after a crash who have not reconnected yet -> roomId
+    private final Map<String, String> resumableSeats = new ConcurrentHashMap<>();
     private final Gson gson = new Gson();
     private final QuestionManager questionManager;
+    private final HashedWheelTimer timer;
+    private final RoomShards shards;
+    private final Leaderboard leaderboard;
+    private final GameResultStore results;
+    private final RoomJournal journal;
+    private final ProfileCache profiles;
+    private final AnswerExport analytics;
+    private final LongAdder lateAnswers = ServerMetrics.counter("rounds.answers.late");
+    private final LongAdder closedAtDeadline = ServerMetrics.counter("rounds.closed.deadline");
+    private final LongAdder closedEarly = ServerMetrics.counter("rounds.closed.allAnswered");
     
-    public TriviaWebSocketServer(QuestionManager questionManager) {
-        super(new InetSocketAddress(WS_PORT));
-        this.questionManager = questionManager;
+    public TriviaWebSocketServer(QuestionManager questionManager, HashedWheelTimer timer, RoomShards shards,
+                                 Leaderboard leaderboard, GameResultStore results, RoomJournal journal,
+                                 ProfileCache profiles, AnswerExport analytics) {
+        this(WS_PORT, questionManager, timer, shards, leaderboard, results, journal, profiles, analytics);
     }
     
-    public TriviaWebSocketServer(int port, QuestionManager questionManager) {
+    public TriviaWebSocketServer(int port, QuestionManager questionManager, HashedWheelTimer timer,
+                                 RoomShards shards, Leaderboard leaderboard, GameResultStore results,
+                                 RoomJournal journal, ProfileCache profiles, AnswerExport analytics) {
         super(new InetSocketAddress(port));
         this.questionManager = questionManager;
+        this.timer = timer;
+        this.shards = shards;
+        this.leaderboard = leaderboard;
+        this.results = results;
+        this.journal = journal;
+        this.profiles = profiles;
+        this.analytics = analytics;
+        ServerMetrics.gauge("live.rooms", liveRooms::size);
+        ServerMetrics.gauge("live.players", () -> liveRooms.values().stream().mapToInt(LiveRoom::getPlayerCount).sum());
     }
     
     @Override
@@ -44,6 +75,10 @@ public class TriviaWebSocketServer extends WebSocketServer {
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         String username = clientUsernames.remove(conn);
+        String roomId = playerRooms.remove(conn);
+        if (roomId != null) {
+            shards.execute(roomId, () -> handleLeaveRoom(conn, username, roomId));
+        }
         System.out.println("👋 WebSocket client disconnected: " + (username != null ? username : "Unknown"));
         System.out.println("📊 Active WebSocket clients: " + getConnections().size());
     }
@@ -62,17 +97,45 @@ public class TriviaWebSocketServer extends WebSocketServer {
                     handleLogin(conn, msg);
                     break;
                     
-                case CREATE_ROOM:
-                    handleCreateRoom(conn, msg);
+                // Room events run on the room's shard, one at a time
+                case CREATE_ROOM: {
+                    String roomId = UUID.randomUUID().toString().substring(0, 8);
+                    shards.execute(roomId, () -> handleCreateRoom(conn, msg, roomId));
                     break;
+                }
                     
-                case JOIN_ROOM:
-                    handleJoinRoom(conn, msg);
+                case JOIN_ROOM: {
+                    String roomId = msg.getContent() != null ? msg.getContent().toString() : null;
+                    if (roomId == null) {
+                        sendError(conn, "Room not found");
+                    } else {
+                        shards.execute(roomId, () -> handleJoinRoom(conn, roomId));
+                    }
                     break;
+                }
                     
-                case SUBMIT_ANSWER:
-                    handleSubmitAnswer(conn, msg);
+                case SUBMIT_ANSWER: {
+                    String roomId = playerRooms.get(conn);
+                    LiveRoom liveRoom = roomId != null ? liveRooms.get(roomId) : null;
+                    if (roomId == null) {
+                        sendError(conn, "Not in a game room");
+                    } else if (liveRoom != null) {
+                        // Live answers go straight to the player's partition, not the room's shard
+                        handleLiveAnswer(conn, msg, liveRoom);
+                    } else {
+                        shards.execute(roomId, () -> handleSubmitAnswer(conn, msg, roomId));
+                    }
                     break;
+                }
+                    
+                case LEADERBOARD_REQUEST: {
+                    // The leaderboard is thread-safe, so no shard hop is needed
+                    Message response = new Message(MessageType.LEADERBOARD,
+                            leaderboard.report(clientUsernames.get(conn), msg.getContent()));
+                    response.setSenderId("SERVER");
+                    sendMessage(conn, response);
+                    break;
+                }
                     
                 default:
                     System.out.println("Unhandled message type: " + msg.getType());
@@ -103,31 +166,86 @@ public class TriviaWebSocketServer extends WebSocketServer {
     private void handleLogin(WebSocket conn, Message msg) {
         String username = msg.getContent() != null ? msg.getContent().toString() : msg.getSenderId();
         
-        if (username == null || username.trim().isEmpty()) {
-            sendError(conn, "Username is required");
+        String invalid = Names.usernameError(username);
+        if (invalid != null) {
+            sendError(conn, invalid);
             return;
         }
         
         clientUsernames.put(conn, username);
         
-        Message response = new Message(MessageType.LOGIN_SUCCESS, "Welcome " + username + "!");
-        response.setSenderId("SERVER");
-        sendMessage(conn, response);
-        
-        System.out.println("✅ WebSocket user logged in: " + username);
+        // Served from the profile cache when it can; a miss answers once the profile is loaded
+        profiles.get(username).whenComplete((profile, error) -> {
+            String welcome = "Welcome " + username + "!";
+            if (profile != null) {
+                questionManager.getSeenQuestions().restore(username, profile.seen());
+                if (profile.games() > 0) {
+                    welcome = "Welcome back " + username + "! " + profile.score() + " points in "
+                            + profile.games() + " games so far.";
+                }
+            }
+            Message response = new Message(MessageType.LOGIN_SUCCESS, welcome);
+            response.setSenderId("SERVER");
+            sendMessage(conn, response);
+            
+            System.out.println("✅ WebSocket user logged in: " + username);
+            
+            // A player of a room recovered after a crash goes straight back to it
+            String recoveredRoom = resumableSeats.get(username);
+            if (recoveredRoom != null) {
+                shards.execute(recoveredRoom, () -> handleJoinRoom(conn, recoveredRoom));
+            }
+        });
     }
     
-    private void handleCreateRoom(WebSocket conn, Message msg) {
+    private void handleCreateRoom(WebSocket conn, Message msg, String roomId) {
         String username = clientUsernames.get(conn);
-        String roomName = msg.getContent() != null ? msg.getContent().toString() : "Game Room";
+        if (results.isBackedUp()) {
+            // Backpressure: let saving catch up before more games produce results
+            sendError(conn, "Server is busy, please try again shortly");
+            return;
+        }
+        // Content is the room name, or {roomName, difficulty, mode, event} where mode "LIVE" makes
+        // a live show and event names the leaderboard the games also count towards
+        String roomName = "Game Room";
+        String difficulty = null;
+        String event = null;
+        boolean live = false;
+        if (msg.getContent() instanceof Map) {
+            Map<?, ?> options = (Map<?, ?>) msg.getContent();
+            if (options.get("roomName") != null) {
+                roomName = options.get("roomName").toString();
+            }
+            if (options.get("difficulty") != null) {
+                difficulty = options.get("difficulty").toString();
+            }
+            if (options.get("event") != null) {
+                event = options.get("event").toString();
+            }
+            live = "LIVE".equalsIgnoreCase(String.valueOf(options.get("mode")));
+        } else if (msg.getContent() != null) {
+            roomName = msg.getContent().toString();
+        }
+        roomName = Names.roomName(roomName);
+        if (event != null && !leaderboard.isKnownEvent(event)) {
+            sendError(conn, "Unknown event");
+            return;
+        }
+        if (live) {
+            createLiveRoom(conn, roomId, roomName, username, difficulty, event);
+            return;
+        }
         
         // Create new room
-        String roomId = UUID.randomUUID().toString().substring(0, 8);
-        GameRoom room = new GameRoom(roomId, roomName, username, questionManager.getQuestions());
+        GameRoom room = new GameRoom(roomId, roomName, username, questionManager.acquire());
+        room.setTargetDifficulty(difficulty);
+        room.setEvent(event);
         room.addPlayer(conn, username);
         
         gameRooms.put(roomId, room);
         playerRooms.put(conn, roomId);
+        // After the put, so a snapshot that misses the room finds it in the journal
+        journal.createRoom(roomId, room.getGameId(), roomName, username, false, event, difficulty);
         
         System.out.println("✅ Room created: " + roomName + " by " + username);
         
@@ -147,18 +265,26 @@ public class TriviaWebSocketServer extends WebSocketServer {
         }
     }
     
-    private void handleJoinRoom(WebSocket conn, Message msg) {
+    private void handleJoinRoom(WebSocket conn, String roomId) {
         String username = clientUsernames.get(conn);
-        String roomId = msg.getContent() != null ? msg.getContent().toString() : null;
         
-        if (roomId == null || !gameRooms.containsKey(roomId)) {
+        LiveRoom liveRoom = liveRooms.get(roomId);
+        if (liveRoom != null) {
+            joinLiveRoom(conn, liveRoom, username);
+            return;
+        }
+        
+        if (!gameRooms.containsKey(roomId)) {
             sendError(conn, "Room not found");
             return;
         }
         
         GameRoom room = gameRooms.get(roomId);
-        if (room.addPlayer(conn, username)) {
+        if (username != null && room.rejoin(conn, username)) {
+            resumePlayer(conn, username, room);
+        } else if (room.addPlayer(conn, username)) {
             playerRooms.put(conn, roomId);
+            journal.joinRoom(roomId, username);
             
             System.out.println("✅ " + username + " joined room: " + room.getRoomName());
             
@@ -180,19 +306,51 @@ public class TriviaWebSocketServer extends WebSocketServer {
         }
     }
     
-    private void scheduleGameStart(GameRoom room, long delayMs) {
-        new Thread(() -> {
-            try {
-                Thread.sleep(delayMs);
-                startGame(room);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+    private void handleLeaveRoom(WebSocket conn, String username, String roomId) {
+        if (username != null) {
+            journal.leaveRoom(roomId, username);
+        }
+        LiveRoom liveRoom = liveRooms.get(roomId);
+        if (liveRoom != null) {
+            liveRoom.removePlayer(conn);
+            if (liveRoom.getPlayerCount() == 0) {
+                liveRoom.cancelPendingStep();
+                removeLiveRoom(liveRoom);
             }
-        }).start();
+            return;
+        }
+        GameRoom room = gameRooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        room.removePlayer(conn);
+        if (room.getPlayerCount() == 0 && room.getAwaitingCount() == 0) {
+            // Nobody left to play: drop the room and its pending timer
+            room.cancelPendingStep();
+            removeRoom(room);
+            System.out.println("🗑️ Removed empty room: " + room.getRoomName());
+        } else if (room.isRoundOpen() && room.allPlayersAnswered()) {
+            // The leaver was the last one we were waiting for
+            processRoundResults(room);
+        }
+    }
+    
+    private void scheduleGameStart(GameRoom room, long delayMs) {
+        schedule(room, () -> startGame(room), delayMs);
+    }
+    
+    /**
+     * Runs the room's next step on its shard once the shared timer fires.
+     */
+    private void schedule(GameRoom room, Runnable step, long delayMs) {
+        room.setPendingStep(timer.schedule(() -> shards.execute(room.getRoomId(), step),
+                delayMs, TimeUnit.MILLISECONDS));
     }
     
     private void startGame(GameRoom room) {
-        room.startGame();
+        // Off-level questions are excluded like seen ones, so a thin level still fills up
+        room.startGame(questionManager.getSeenQuestions().seenByAny(usernamesOf(room))
+                .or(questionManager.notAtLevel(room.getTargetDifficulty())));
         System.out.println("🎮 Starting game in room: " + room.getRoomName());
         
         // Notify all players
@@ -201,18 +359,11 @@ public class TriviaWebSocketServer extends WebSocketServer {
         broadcastToRoom(room, startMsg);
         
         // Send first question after a delay
-        new Thread(() -> {
-            try {
-                Thread.sleep(2000);
-                sendNextQuestion(room);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+        schedule(room, () -> sendNextQuestion(room), 2000);
     }
     
     private void sendNextQuestion(GameRoom room) {
-        QuestionManager.Question question = room.getCurrentQuestion();
+        Question question = room.getCurrentQuestion();
         
         if (question == null) {
             endGame(room);
@@ -225,29 +376,79 @@ public class TriviaWebSocketServer extends WebSocketServer {
         Map<String, Object> questionData = new HashMap<>();
         questionData.put("questionNumber", room.getCurrentQuestionNumber());
         questionData.put("totalQuestions", room.getTotalQuestions());
-        questionData.put("question", question.getQuestion());
-        questionData.put("options", question.getOptions());
-        questionData.put("category", question.getCategory());
+        questionData.put("question", question.text());
+        questionData.put("options", question.options());
+        questionData.put("category", question.category());
+        questionData.put("seconds", ServerConfig.ROUND_SECONDS);
         
         Message questionMsg = new Message(MessageType.NEW_QUESTION, questionData);
         questionMsg.setSenderId("SERVER");
+        long roundMillis = TimeUnit.SECONDS.toMillis(ServerConfig.ROUND_SECONDS);
+        room.openRound(roundMillis);
+        journal.newQuestion(room.getRoomId(), room.getCurrentQuestionNumber(), question, roundMillis);
+        // After a crash, answers given before it count in the reopened round
+        List<RoomRecovery.PendingAnswer> restored = room.restoreAnswers();
+        for (RoomRecovery.PendingAnswer answer : restored) {
+            journal.submitAnswer(room.getRoomId(), answer.username(), room.getCurrentQuestionNumber(),
+                    answer.answer(), answer.responseMillis(), true);
+        }
         broadcastToRoom(room, questionMsg);
+        
+        // The deadline closes the round even if someone never answers
+        schedule(room, () -> {
+            if (room.isRoundOpen()) {
+                closedAtDeadline.increment();
+                processRoundResults(room);
+            }
+        }, roundMillis);
+        
+        SeenQuestions seen = questionManager.getSeenQuestions();
+        for (String username : usernamesOf(room)) {
+            seen.record(username, question);
+        }
+        
+        if (!restored.isEmpty() && room.allPlayersAnswered()) {
+            closedEarly.increment();
+            processRoundResults(room);
+        }
+    }
+    
+    private List<String> usernamesOf(GameRoom room) {
+        List<String> usernames = new ArrayList<>();
+        for (WebSocket player : room.playersView()) {
+            String username = clientUsernames.get(player);
+            if (username != null) {
+                usernames.add(username);
+            }
+        }
+        return usernames;
     }
     
-    private void handleSubmitAnswer(WebSocket conn, Message msg) {
+    private void handleSubmitAnswer(WebSocket conn, Message msg, String roomId) {
         String username = clientUsernames.get(conn);
-        String roomId = playerRooms.get(conn);
+        GameRoom room = gameRooms.get(roomId);
         
-        if (roomId == null || !gameRooms.containsKey(roomId)) {
+        if (room == null) {
             sendError(conn, "Not in a game room");
             return;
         }
         
-        GameRoom room = gameRooms.get(roomId);
-        
         try {
-            int answerIndex = Integer.parseInt(msg.getContent().toString());
-            room.submitAnswer(conn, username, answerIndex);
+            int answerIndex = (int) Double.parseDouble(msg.getContent().toString());
+            if (!room.submitAnswer(conn, username, answerIndex)) {
+                if (room.isRoundOpen()) {
+                    // Past the deadline, but the closing step has not run yet
+                    lateAnswers.increment();
+                    journal.submitAnswer(room.getRoomId(), username, room.getCurrentQuestionNumber(), answerIndex,
+                            -1, false);
+                    sendError(conn, "Too late: time is up for this question");
+                } else {
+                    sendError(conn, "No question in progress");
+                }
+                return;
+            }
+            journal.submitAnswer(room.getRoomId(), username, room.getCurrentQuestionNumber(), answerIndex,
+                    room.getResponseMillis(conn), true);
             
             System.out.println("✅ Answer from " + username + ": " + answerIndex);
             
@@ -258,6 +459,7 @@ public class TriviaWebSocketServer extends WebSocketServer {
             
             // Check if all players answered
             if (room.allPlayersAnswered()) {
+                closedEarly.increment();
                 processRoundResults(room);
             }
             
@@ -267,70 +469,356 @@ public class TriviaWebSocketServer extends WebSocketServer {
     }
     
     private void processRoundResults(GameRoom room) {
+        if (!room.closeRound()) {
+            return; // Already processed for this question
+        }
+        room.cancelPendingStep(); // The deadline, if the round closed early
         System.out.println("⏱️ Processing round results...");
         
-        // Check answers
-        Map<String, Boolean> results = room.checkAnswers(clientUsernames);
+        room.scoreAnswers(clientUsernames);
         
         // Get correct answer index
         Question currentQuestion = room.getCurrentQuestion();
-        int correctAnswerIndex = 0;
-        if (currentQuestion != null) {
-            String correctAnswer = currentQuestion.getCorrectAnswer();
-            List<String> options = currentQuestion.getOptions();
-            correctAnswerIndex = options.indexOf(correctAnswer);
-        }
+        int correctAnswerIndex = currentQuestion != null ? currentQuestion.correctIndex() : 0;
         
-        // Prepare results data
+        // Shared frame: the answer histogram, whose size does not grow with the room
         Map<String, Object> resultData = new HashMap<>();
-        resultData.put("results", results);
-        resultData.put("scores", room.getScores());
+        resultData.put("histogram", room.getAnswerCounts());
+        resultData.put("answered", room.getAnswerCount());
         resultData.put("correctAnswer", correctAnswerIndex);
         resultData.put("questionNumber", room.getCurrentQuestionNumber());
-        resultData.put("totalQuestions", 10);
+        resultData.put("totalQuestions", room.getTotalQuestions());
         
         Message resultMsg = new Message(MessageType.ROUND_RESULT, resultData);
         resultMsg.setSenderId("SERVER");
+        journal.roundResult(room.getRoomId(), room.getCurrentQuestionNumber(), correctAnswerIndex,
+                room.getAnswerCounts());
         broadcastToRoom(room, resultMsg);
         
+        // Personal frame: each player's own answer and score
+        AnswerStatistics statistics = questionManager.getAnswerStatistics();
+        List<GameResultStore.Answer> answers = new ArrayList<>(room.getAnswerCount());
+        for (WebSocket player : room.playersView()) {
+            String username = clientUsernames.get(player);
+            if (username == null) {
+                continue;
+            }
+            Integer answer = room.getAnswer(player);
+            if (answer != null && currentQuestion != null) {
+                // The answer that was scored, not the first one given
+                statistics.record(currentQuestion, answer, room.getResponseMillis(player));
+                answers.add(new GameResultStore.Answer(username, answer, currentQuestion.isCorrect(answer),
+                        room.getResponseMillis(player), room.getPoints(player)));
+            }
+            if (!player.isOpen()) {
+                continue;
+            }
+            Map<String, Object> ownResult = new HashMap<>();
+            ownResult.put("answer", answer != null ? answer : -1);
+            ownResult.put("correct", answer != null && currentQuestion != null && currentQuestion.isCorrect(answer));
+            ownResult.put("points", room.getPoints(player));
+            ownResult.put("responseMillis", room.getResponseMillis(player));
+            ownResult.put("score", room.getScore(username));
+            
+            Message ownMsg = new Message(MessageType.ROUND_RESULT, ownResult);
+            ownMsg.setSenderId("SERVER");
+            sendMessage(player, ownMsg);
+        }
+        results.recordRound(room.getGameId(), room.getCurrentQuestionNumber(), currentQuestion, answers);
+        analytics.record(room.getGameId(), room.getCurrentQuestionNumber(), currentQuestion, answers);
+        
         // Move to next question after delay
-        new Thread(() -> {
-            try {
-                Thread.sleep(3000);
-                room.nextQuestion();
-                
-                if (room.isGameOver()) {
-                    endGame(room);
-                } else {
-                    sendNextQuestion(room);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        schedule(room, () -> {
+            room.nextQuestion();
+            
+            if (room.isGameOver()) {
+                endGame(room);
+            } else {
+                sendNextQuestion(room);
             }
-        }).start();
+        }, 3000);
     }
     
     private void endGame(GameRoom room) {
         System.out.println("🏁 Game over in room: " + room.getRoomName());
+        leaderboard.recordGame(room.getFinalScores(), room.getEvent());
+        results.recordGame(room.getGameId(), room.getRoomName(), "CLASSIC", room.getEvent(),
+                room.getPlayerCount(), room.getTotalQuestions(), room.getStartedAtMillis(),
+                System.currentTimeMillis());
+        results.recordScores(room.getGameId(), room.getFinalScores());
+        journal.gameOver(room.getRoomId(), room.getGameId(), room.getFinalScores());
+        SeenQuestions seen = questionManager.getSeenQuestions();
+        for (Map.Entry<String, Integer> score : room.getFinalScores().entrySet()) {
+            profiles.recordGame(score.getKey(), score.getValue(), seen.export(score.getKey()));
+        }
         
         Map<String, Object> gameOverData = new HashMap<>();
         gameOverData.put("finalScores", room.getFinalScores());
         gameOverData.put("winner", getWinner(room.getFinalScores()));
+        // Boards the game counted towards, for the client to ask for with LEADERBOARD_REQUEST
+        gameOverData.put("leaderboards", leaderboard.windowsFor(room.getEvent()));
         
         Message gameOverMsg = new Message(MessageType.GAME_OVER, gameOverData);
         gameOverMsg.setSenderId("SERVER");
         broadcastToRoom(room, gameOverMsg);
         
         // Clean up room after delay
-        new Thread(() -> {
-            try {
-                Thread.sleep(10000);
-                gameRooms.remove(room.getRoomId());
-                System.out.println("🗑️ Removed room: " + room.getRoomName());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        schedule(room, () -> {
+            removeRoom(room);
+            System.out.println("🗑️ Removed room: " + room.getRoomName());
+        }, 10000);
+    }
+
+    /**
+     * Copies every classic room's state for a recovery snapshot, each on its
+     * own shard between two of its events. Completes once all rooms are
+     * copied; rooms that ended meanwhile are left out.
+     */
+    public CompletableFuture<List<RoomRecovery.RoomState>> captureRooms() {
+        List<GameRoom> rooms = new ArrayList<>(gameRooms.values());
+        CompletableFuture<List<RoomRecovery.RoomState>> captured = new CompletableFuture<>();
+        if (rooms.isEmpty()) {
+            captured.complete(List.of());
+            return captured;
+        }
+        RoomRecovery.RoomState[] states = new RoomRecovery.RoomState[rooms.size()];
+        AtomicInteger left = new AtomicInteger(rooms.size());
+        for (int i = 0; i < rooms.size(); i++) {
+            GameRoom room = rooms.get(i);
+            int slot = i;
+            shards.execute(room.getRoomId(), () -> {
+                if (gameRooms.get(room.getRoomId()) == room) {
+                    states[slot] = room.snapshot(clientUsernames, journal.mark());
+                }
+                if (left.decrementAndGet() == 0) {
+                    List<RoomRecovery.RoomState> copies = new ArrayList<>(states.length);
+                    for (RoomRecovery.RoomState state : states) {
+                        if (state != null) {
+                            copies.add(state);
+                        }
+                    }
+                    captured.complete(copies);
+                }
+            });
+        }
+        return captured;
+    }
+    
+    /**
+     * Rebuilds the rooms found by {@link RoomRecovery#recover()}, each on its
+     * own shard, and waits until all are back. Their players get their seats
+     * back when they log in again; play resumes once all have, or after
+     * {@link ServerConfig#RECOVERY_RESUME_SECONDS}.
+     */
+    public void restoreRooms(List<RoomRecovery.RoomState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        long began = System.nanoTime();
+        CountDownLatch done = new CountDownLatch(states.size());
+        AtomicInteger restored = new AtomicInteger();
+        for (RoomRecovery.RoomState state : states) {
+            shards.execute(state.roomId(), () -> {
+                try {
+                    if (restoreRoom(state)) {
+                        restored.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Cannot restore room " + state.roomId() + ": " + e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("♻️ Restored " + restored + " rooms in " + (System.nanoTime() - began) / 1_000_000 + " ms");
+    }
+    
+    private boolean restoreRoom(RoomRecovery.RoomState state) {
+        QuestionBank bank = questionManager.acquire();
+        if (!state.catchUp(bank)) {
+            questionManager.release(bank); // The game had ended or everyone had left
+            return false;
+        }
+        GameRoom room = new GameRoom(state.roomId(), state.gameId, state.roomName, state.host, bank);
+        room.restore(state, restoredQuestions(state, bank));
+        gameRooms.put(room.getRoomId(), room);
+        for (String username : state.seats) {
+            resumableSeats.put(username, room.getRoomId());
+        }
+        schedule(room, () -> resumeGame(room), TimeUnit.SECONDS.toMillis(ServerConfig.RECOVERY_RESUME_SECONDS));
+        return true;
+    }
+    
+    /**
+     * The recovered game's questions, found again in the current bank. Those
+     * the bank no longer has, or that had not been asked yet in a room known
+     * only from the journal, are drawn afresh.
+     */
+    private List<Question> restoredQuestions(RoomRecovery.RoomState state, QuestionBank bank) {
+        if (!state.started) {
+            return Collections.emptyList(); // Drawn when the game starts
+        }
+        List<Question> questions = new ArrayList<>();
+        Set<Long> picked = new HashSet<>();
+        for (RoomRecovery.QuestionRef ref : state.questions) {
+            Question question = ref != null ? ref.resolve(bank) : null;
+            questions.add(question);
+            if (question != null) {
+                picked.add(question.fingerprint());
+            }
+        }
+        while (questions.size() < GameRoom.QUESTIONS_PER_GAME) {
+            questions.add(null);
+        }
+        int missing = Collections.frequency(questions, null);
+        if (missing > 0) {
+            Iterator<Question> drawn = bank.sampleQuestions(missing, null, null,
+                    question -> picked.contains(question.fingerprint())).iterator();
+            for (int i = 0; i < questions.size() && drawn.hasNext(); i++) {
+                if (questions.get(i) == null) {
+                    questions.set(i, drawn.next());
+                }
             }
-        }).start();
+            questions.removeIf(Objects::isNull); // A bank too small to fill the game
+        }
+        return questions;
+    }
+    
+    private void resumePlayer(WebSocket conn, String username, GameRoom room) {
+        resumableSeats.remove(username, room.getRoomId());
+        playerRooms.put(conn, room.getRoomId());
+        journal.joinRoom(room.getRoomId(), username);
+        System.out.println("♻️ " + username + " is back in room: " + room.getRoomName());
+        
+        Map<String, Object> resumeData = new HashMap<>();
+        resumeData.put("roomId", room.getRoomId());
+        resumeData.put("roomName", room.getRoomName());
+        resumeData.put("playerCount", room.getPlayerCount());
+        resumeData.put("resumed", true);
+        resumeData.put("score", room.getScore(username));
+        resumeData.put("questionNumber", room.getCurrentQuestionNumber());
+        resumeData.put("totalQuestions", room.getTotalQuestions());
+        // A game in progress takes the player straight back to the game screen
+        Message response = new Message(room.isGameStarted() ? MessageType.GAME_START : MessageType.ROOM_LIST_UPDATE,
+                resumeData);
+        response.setSenderId("SERVER");
+        sendMessage(conn, response);
+        
+        if (room.getAwaitingCount() == 0) {
+            // Everyone is back: no need to wait any longer
+            room.cancelPendingStep();
+            resumeGame(room);
+        }
+    }
+    
+    /**
+     * Continues a recovered room where it stopped: the lobby starts the game,
+     * an interrupted question is asked again with a full round, and a finished
+     * one moves on to the next.
+     */
+    private void resumeGame(GameRoom room) {
+        for (String username : room.dropAwaiting()) {
+            resumableSeats.remove(username, room.getRoomId());
+            journal.leaveRoom(room.getRoomId(), username);
+        }
+        if (room.getPlayerCount() == 0) {
+            removeRoom(room);
+            System.out.println("🗑️ Nobody came back to recovered room: " + room.getRoomName());
+            return;
+        }
+        System.out.println("▶️ Resuming room: " + room.getRoomName());
+        if (!room.isGameStarted()) {
+            startGame(room);
+        } else if (room.isRoundClosed()) {
+            room.nextQuestion();
+            if (room.isGameOver()) {
+                endGame(room);
+            } else {
+                sendNextQuestion(room);
+            }
+        } else {
+            sendNextQuestion(room);
+        }
+    }
+    
+    /**
+     * Drops the room and lets go of its question bank version.
+     */
+    private void removeRoom(GameRoom room) {
+        if (gameRooms.remove(room.getRoomId(), room)) {
+            questionManager.release(room.getQuestionBank());
+        }
+    }
+    
+    private void createLiveRoom(WebSocket conn, String roomId, String roomName, String username,
+                                String difficulty, String event) {
+        LiveRoom room = new LiveRoom(roomId, roomName, username, questionManager.acquire(), shards, timer,
+                questionManager.getAnswerStatistics(), leaderboard, results, journal, profiles, analytics, event);
+        room.addPlayer(conn, username);
+        journal.createRoom(roomId, room.getGameId(), roomName, username, true, event, null);
+        liveRooms.put(roomId, room);
+        playerRooms.put(conn, roomId);
+        
+        System.out.println("📺 Live show created: " + roomName + " by " + username);
+        
+        Map<String, Object> roomData = new HashMap<>();
+        roomData.put("roomId", roomId);
+        roomData.put("roomName", roomName);
+        roomData.put("playerCount", 1);
+        roomData.put("mode", "LIVE");
+        roomData.put("startsInSeconds", ServerConfig.LIVE_LOBBY_SECONDS);
+        
+        Message response = new Message(MessageType.ROOM_LIST_UPDATE, roomData);
+        response.setSenderId("SERVER");
+        sendMessage(conn, response);
+        
+        room.start(questionManager.notAtLevel(difficulty),
+                TimeUnit.SECONDS.toMillis(ServerConfig.LIVE_LOBBY_SECONDS), this::removeLiveRoom);
+    }
+    
+    private void joinLiveRoom(WebSocket conn, LiveRoom room, String username) {
+        if (username == null || !room.addPlayer(conn, username)) {
+            sendError(conn, "Cannot join room (full or game started)");
+            return;
+        }
+        playerRooms.put(conn, room.getRoomId());
+        journal.joinRoom(room.getRoomId(), username);
+        
+        // No "player joined" broadcast: with thousands of players it would be quadratic
+        Map<String, Object> roomData = new HashMap<>();
+        roomData.put("roomId", room.getRoomId());
+        roomData.put("roomName", room.getRoomName());
+        roomData.put("playerCount", room.getPlayerCount());
+        roomData.put("mode", "LIVE");
+        
+        Message response = new Message(MessageType.ROOM_LIST_UPDATE, roomData);
+        response.setSenderId("SERVER");
+        sendMessage(conn, response);
+    }
+    
+    private void handleLiveAnswer(WebSocket conn, Message msg, LiveRoom room) {
+        int answerIndex;
+        try {
+            answerIndex = (int) Double.parseDouble(msg.getContent().toString());
+        } catch (Exception e) {
+            sendError(conn, "Invalid answer format");
+            return;
+        }
+        if (!room.submitAnswer(conn, answerIndex)) {
+            sendError(conn, "Not in a game room");
+        }
+    }
+    
+    private void removeLiveRoom(LiveRoom room) {
+        if (liveRooms.remove(room.getRoomId(), room)) {
+            questionManager.release(room.getQuestionBank());
+            System.out.println("🗑️ Removed live show: " + room.getRoomName());
+        }
     }
     
     private String getWinner(Map<String, Integer> scores) {
@@ -340,9 +828,25 @@ public class TriviaWebSocketServer extends WebSocketServer {
             .orElse("No winner");
     }
     
+    /**
+     * Serializes and frames the message once, then writes the same frames to
+     * every player. Frames only depend on the connection's draft, and all
+     * browser connections negotiate the same one.
+     */
     private void broadcastToRoom(GameRoom room, Message message) {
-        for (WebSocket player : room.getPlayers()) {
-            sendMessage(player, message);
+        String json = gson.toJson(message);
+        Map<Draft, List<Framedata>> framesByDraft = new HashMap<>(2);
+        for (WebSocket player : room.playersView()) {
+            if (!player.isOpen()) {
+                continue;
+            }
+            try {
+                List<Framedata> frames = framesByDraft.computeIfAbsent(player.getDraft(),
+                        draft -> draft.createFrames(json, false));
+                player.sendFrame(frames);
+            } catch (Exception e) {
+                System.err.println("Error sending message: " + e.getMessage());
+            }
         }
     }
     
@@ -0,0 +1,162 @@
+package com.example.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMessageCodecTest {
+
+    @Test void nullRoundTrips() throws IOException {
+        Message decoded = roundTrip(new Message(MessageType.GAME_START, null));
+        assertNull(decoded.getContent());
+        assertNull(decoded.getSenderId());
+    }
+
+    @Test void stringRoundTrips() throws IOException {
+        assertEquals("", roundTrip(message("")).getContent());
+        assertEquals("héllo, 名前 🎉", roundTrip(message("héllo, 名前 🎉")).getContent());
+        assertEquals("x".repeat(100_000), roundTrip(message("x".repeat(100_000))).getContent());
+    }
+
+    @Test void intRoundTrips() throws IOException {
+        for (int value : new int[] {0, 1, -1, 63, -64, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(value, roundTrip(message(value)).getContent());
+        }
+        // Narrower integers come back as Integer
+        assertEquals(7, roundTrip(message((short) 7)).getContent());
+        assertEquals(-3, roundTrip(message((byte) -3)).getContent());
+    }
+
+    @Test void longRoundTrips() throws IOException {
+        for (long value : new long[] {0, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(value, roundTrip(message(value)).getContent());
+        }
+    }
+
+    @Test void doubleRoundTrips() throws IOException {
+        for (double value : new double[] {0.0, -0.0, 3.25, Double.MIN_VALUE, Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY}) {
+            assertEquals(value, roundTrip(message(value)).getContent());
+        }
+        assertTrue(Double.isNaN((Double) roundTrip(message(Double.NaN)).getContent()));
+        assertEquals(1.5, roundTrip(message(1.5f)).getContent());
+    }
+
+    @Test void booleansRoundTrip() throws IOException {
+        assertEquals(Boolean.TRUE, roundTrip(message(true)).getContent());
+        assertEquals(Boolean.FALSE, roundTrip(message(false)).getContent());
+    }
+
+    @Test void listRoundTrips() throws IOException {
+        List<Object> list = new ArrayList<>(Arrays.asList("a", 1, null, 2L, List.of("nested")));
+        assertEquals(list, roundTrip(message(list)).getContent());
+        assertEquals(List.of(), roundTrip(message(List.of())).getContent());
+    }
+
+    @Test void mapRoundTripsInOrder() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("question", "Largest planet?");
+        map.put("options", List.of("Mars", "Jupiter"));
+        map.put("questionNumber", 3);
+        map.put("scores", Map.of("alice", 900));
+        Object decoded = roundTrip(message(map)).getContent();
+        assertEquals(map, decoded);
+        assertEquals(List.copyOf(map.keySet()), List.copyOf(((Map<?, ?>) decoded).keySet()));
+    }
+
+    @Test void otherSerializableValuesRoundTrip() throws IOException {
+        assertEquals(BigInteger.TEN.pow(30), roundTrip(message(BigInteger.TEN.pow(30))).getContent());
+        assertArrayEquals(new int[] {0, 1, 2}, (int[]) roundTrip(message(new int[] {0, 1, 2})).getContent());
+    }
+
+    @Test void valuesThatCannotBeSentAreRefused() {
+        assertThrows(IOException.class, () -> BinaryMessageCodec.encodeFrame(message(new Object())));
+    }
+
+    @Test void streamRoundTrips() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageCodec.MessageWriter writer = BinaryMessageCodec.INSTANCE.openWriter(bytes);
+        writer.write(message("first"));
+        writer.write(new Message(MessageType.LEADERBOARD_REQUEST, Map.of("top", 5)));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        assertSame(BinaryMessageCodec.INSTANCE, MessageCodec.detect(in));
+        MessageCodec.MessageReader reader = BinaryMessageCodec.INSTANCE.openReader(in);
+        assertEquals("first", reader.read().getContent());
+        Message second = reader.read();
+        assertEquals(MessageType.LEADERBOARD_REQUEST, second.getType());
+        assertEquals(Map.of("top", 5), second.getContent());
+        assertNull(reader.read());
+    }
+
+    @Test void nonStringSenderIsCorrupt() {
+        // LOGIN_REQUEST from an int sender with null content
+        byte[] body = {(byte) MessageType.LOGIN_REQUEST.ordinal(), 2, 10, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(body, 0, body.length));
+        byte[] listSender = {(byte) MessageType.LOGIN_REQUEST.ordinal(), 7, 0, 0};
+        assertThrows(StreamCorruptedException.class,
+                () -> BinaryMessageCodec.decodeBody(listSender, 0, listSender.length));
+    }
+
+    @Test void truncatedValuesAreCorrupt() throws IOException {
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("text", "a string");
+        content.put("number", 1L << 40);
+        content.put("ratio", 0.5);
+        content.put("list", List.of(1, 2, 3));
+        content.put("blob", BigInteger.TWO);
+        byte[] frame = BinaryMessageCodec.encodeFrame(message(content));
+        int length = frame.length - 4;
+        // Every shorter body ends partway through some value
+        for (int cut = 0; cut < length; cut++) {
+            int shortened = cut;
+            assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(frame, 4, shortened),
+                    "body cut to " + cut + " bytes");
+        }
+        assertEquals(content, BinaryMessageCodec.decodeBody(frame, 4, length).getContent());
+    }
+
+    @Test void malformedBodiesAreCorrupt() {
+        byte[] unknownType = {(byte) 0x7F, 0, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(unknownType, 0, 3));
+        byte[] unknownTag = {0, 0, 42};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(unknownTag, 0, 3));
+        byte[] trailing = {0, 0, 0, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(trailing, 0, 4));
+        byte[] hugeString = {0, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(hugeString, 0, 8));
+        byte[] pastBuffer = {0, 0, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(pastBuffer, 1, 5));
+        byte[] badBlob = {0, 0, 9, 3, (byte) 0xAC, (byte) 0xED, 0};
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.decodeBody(badBlob, 0, 7));
+        assertThrows(StreamCorruptedException.class, () -> BinaryMessageCodec.checkLength(0));
+        assertThrows(StreamCorruptedException.class,
+                () -> BinaryMessageCodec.checkLength(BinaryMessageCodec.MAX_FRAME_LENGTH + 1));
+    }
+
+    private static Message message(Object content) {
+        Message message = new Message(MessageType.LOGIN_REQUEST, content);
+        message.setSenderId("alice");
+        return message;
+    }
+
+    private static Message roundTrip(Message message) throws IOException {
+        byte[] frame = BinaryMessageCodec.encodeFrame(message);
+        int length = ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16) | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+        assertEquals(frame.length - 4, length);
+        Message decoded = BinaryMessageCodec.decodeBody(frame, 4, length);
+        assertEquals(message.getType(), decoded.getType());
+        assertEquals(message.getSenderId(), decoded.getSenderId());
+        return decoded;
+    }
+}
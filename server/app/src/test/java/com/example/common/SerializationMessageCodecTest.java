@@ -0,0 +1,65 @@
+package com.example.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerializationMessageCodecTest {
+
+    @Test void streamRoundTrips() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MessageCodec.MessageWriter writer = SerializationMessageCodec.INSTANCE.openWriter(bytes);
+        Map<String, Object> scores = new HashMap<>(Map.of("alice", 1));
+        Message first = new Message(MessageType.ROUND_RESULT, scores);
+        first.setSenderId("alice");
+        writer.write(first);
+        // A reused message is written again in full, not as a back-reference
+        scores.put("alice", 2);
+        writer.write(first);
+        writer.write(new Message(MessageType.LEADERBOARD_REQUEST, Map.of("top", 5)));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        assertSame(SerializationMessageCodec.INSTANCE, MessageCodec.detect(in));
+        MessageCodec.MessageReader reader = SerializationMessageCodec.INSTANCE.openReader(in);
+        Message decoded = reader.read();
+        assertEquals(Map.of("alice", 1), decoded.getContent());
+        assertEquals("alice", decoded.getSenderId());
+        assertEquals(Map.of("alice", 2), reader.read().getContent());
+        assertEquals(Map.of("top", 5), reader.read().getContent());
+        assertNull(reader.read());
+    }
+
+    @Test void frameHoldsOneLengthPrefixedMessage() throws IOException {
+        byte[] frame = SerializationMessageCodec.encodeFrame(new Message(MessageType.SUBMIT_ANSWER, 2));
+        int length = ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16) | ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+        assertEquals(frame.length - 4, length);
+        assertEquals(2, SerializationMessageCodec.decodeBody(frame, 4, length).getContent());
+        assertThrows(StreamCorruptedException.class, () -> SerializationMessageCodec.decodeBody(frame, 4, length - 1));
+        assertThrows(StreamCorruptedException.class, () -> SerializationMessageCodec.decodeBody(frame, 4, length + 1));
+    }
+
+    @Test void framesThatAreNotMessagesAreCorrupt() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject("not a message");
+        }
+        byte[] body = bytes.toByteArray();
+        assertThrows(StreamCorruptedException.class, () -> SerializationMessageCodec.decodeBody(body, 0, body.length));
+    }
+
+    @Test void unframedObjectStreamIsRefused() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Message(MessageType.LOGIN_REQUEST, "old client"));
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes.toByteArray());
+        assertSame(SerializationMessageCodec.INSTANCE, MessageCodec.detect(in));
+        assertThrows(StreamCorruptedException.class, () -> SerializationMessageCodec.INSTANCE.openReader(in));
+    }
+}
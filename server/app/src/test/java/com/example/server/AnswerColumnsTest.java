@@ -0,0 +1,258 @@
+package com.example.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AnswerColumnsTest {
+    private static final Question CAPITAL = new Question(1, "Geography", "Capital of France?",
+            List.of("Paris", "Rome", "Oslo", "Bern"), (byte) 0, "easy");
+    private static final Question PLANET = new Question(2, "Science", "Largest planet?",
+            List.of("Mars", "Jupiter", "Venus", "Earth"), (byte) 1, "medium");
+
+    @TempDir
+    Path dir;
+
+    @Test void packedColumnsRoundTripAtEveryWidth() throws IOException {
+        Random random = new Random(3);
+        // 64, 128 and 2048 rows fill whole words at any width; the others leave a partial word
+        int[] counts = {1, 2, 3, 63, 64, 65, 127, 128, 129, 1_000, 2_048};
+        for (int width = 1; width <= 32; width++) {
+            for (int count : counts) {
+                int[] values = new int[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = (int) (random.nextLong() >>> (64 - width));
+                }
+                values[random.nextInt(count)] = (int) (0xFFFFFFFFL >>> (32 - width)); // Forces the width
+                byte[] packed = pack(values, count);
+                assertEquals(1 + 8 * (int) (((long) count * width + 63) / 64), packed.length,
+                        "width " + width + ", count " + count);
+                assertEquals(width, packed[0]);
+                ByteBuffer in = ByteBuffer.wrap(packed);
+                assertArrayEquals(values, AnswerColumns.readPacked(in, count), "width " + width + ", count " + count);
+                assertFalse(in.hasRemaining());
+            }
+        }
+    }
+
+    @Test void packedColumnOnlyWritesTheFirstCountValues() throws IOException {
+        int[] values = {1, 2, 3, 1 << 20};
+        byte[] packed = pack(values, 3);
+        assertEquals(2, packed[0]);
+        assertArrayEquals(new int[] {1, 2, 3}, AnswerColumns.readPacked(ByteBuffer.wrap(packed), 3));
+    }
+
+    @Test void zeroColumnTakesOneByte() throws IOException {
+        byte[] packed = pack(new int[500], 500);
+        assertArrayEquals(new byte[] {0}, packed);
+        assertArrayEquals(new int[500], AnswerColumns.readPacked(ByteBuffer.wrap(packed), 500));
+        assertArrayEquals(new byte[] {0}, pack(new int[0], 0));
+        assertArrayEquals(new int[0], AnswerColumns.readPacked(ByteBuffer.wrap(new byte[] {0}), 0));
+    }
+
+    @Test void varLongsRoundTripThroughZigZag() throws IOException {
+        long[] values = {0, 1, -1, 63, -64, 64, 127, 128, -129, 1L << 35, Integer.MIN_VALUE, Long.MAX_VALUE,
+                Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (long value : values) {
+            AnswerColumns.writeVarLong(out, AnswerColumns.zigZag(value));
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+        for (long value : values) {
+            assertEquals(value, AnswerColumns.unZigZag(AnswerColumns.readVarLong(in)));
+        }
+        assertFalse(in.hasRemaining());
+        // Small deltas either way stay one byte
+        assertEquals(1, varLongBytes(AnswerColumns.zigZag(-64)));
+        assertEquals(1, varLongBytes(AnswerColumns.zigZag(63)));
+        assertEquals(10, varLongBytes(AnswerColumns.zigZag(Long.MIN_VALUE)));
+    }
+
+    @Test void rowGroupRoundTrips() throws IOException {
+        AnswerColumns.Builder builder = new AnswerColumns.Builder(8);
+        builder.add(1_000, "game-1", 1, CAPITAL, new GameResultStore.Answer("alice", 0, true, 1_200, 900));
+        builder.add(1_000, "game-1", 1, CAPITAL, new GameResultStore.Answer("bob", 2, false, 4_000, 0));
+        builder.add(900, "game-2", 3, PLANET, new GameResultStore.Answer("名前", -1, false, -5, -3));
+        assertFalse(builder.isFull());
+
+        AnswerColumns.RowGroup group = AnswerColumns.decode(builder.encode());
+        assertEquals(3, group.rows);
+        assertArrayEquals(new long[] {1_000, 1_000, 900}, group.time);
+        assertArrayEquals(new String[] {"game-1", "game-2"}, group.games);
+        assertArrayEquals(new int[] {0, 0, 1}, group.game);
+        assertArrayEquals(new int[] {1, 1, 3}, group.number);
+        assertArrayEquals(new long[] {CAPITAL.fingerprint(), PLANET.fingerprint()}, group.questionFingerprints);
+        assertArrayEquals(new int[] {1, 2}, group.questionIds);
+        assertArrayEquals(new String[] {"Geography", "Science"}, group.categories);
+        assertArrayEquals(new int[] {0, 1}, group.questionCategories);
+        assertArrayEquals(new int[] {0, 0, 1}, group.question);
+        assertArrayEquals(new String[] {"alice", "bob", "名前"}, group.users);
+        assertArrayEquals(new int[] {0, 1, 2}, group.user);
+        // Negative inputs are clamped to zero
+        assertArrayEquals(new int[] {0, 2, 0}, group.option);
+        assertArrayEquals(new int[] {1_200, 4_000, 0}, group.response);
+        assertArrayEquals(new int[] {900, 0, 0}, group.points);
+        assertArrayEquals(new int[] {1, 0, 0}, group.correct);
+
+        builder.clear();
+        assertEquals(0, AnswerColumns.decode(builder.encode()).rows);
+    }
+
+    @Test void tornGroupEndsTheSegment() throws IOException {
+        Path file = dir.resolve("answers-0000000000001.col");
+        Deflater deflater = new Deflater();
+        List<Integer> sizes = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(AnswerColumns.FILE_HEADER_BYTES);
+            header.putInt(AnswerColumns.FILE_MAGIC).putInt(AnswerColumns.VERSION).flip();
+            channel.write(header);
+            for (int g = 0; g < 3; g++) {
+                AnswerColumns.Builder builder = new AnswerColumns.Builder(4);
+                for (int i = 0; i <= g; i++) {
+                    builder.add(g, "game", i, CAPITAL, new GameResultStore.Answer("p" + i, i, i == 0, 100, 10));
+                }
+                ByteBuffer framed = AnswerColumns.frame(builder.rows(), builder.encode(), deflater);
+                sizes.add(framed.remaining());
+                channel.write(framed);
+            }
+        } finally {
+            deflater.end();
+        }
+        List<AnswerColumns.GroupRef> groups = AnswerColumns.groups(file);
+        assertEquals(List.of(1, 2, 3), groups.stream().map(AnswerColumns.GroupRef::rows).toList());
+        assertEquals(AnswerColumns.FILE_HEADER_BYTES + sizes.get(0), groups.get(1).offset());
+
+        // The last group's body is cut short
+        long full = Files.size(file);
+        truncate(file, full - 1);
+        assertEquals(2, AnswerColumns.groups(file).size());
+        // Exactly its header
+        truncate(file, full - sizes.get(2) + AnswerColumns.GROUP_HEADER_BYTES);
+        assertEquals(2, AnswerColumns.groups(file).size());
+        // Only part of its header made it
+        truncate(file, full - sizes.get(2) + AnswerColumns.GROUP_HEADER_BYTES / 2);
+        assertEquals(2, AnswerColumns.groups(file).size());
+
+        // Remaining groups still read back
+        Inflater inflater = new Inflater();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            AnswerColumns.GroupRef second = AnswerColumns.groups(file).get(1);
+            assertEquals(2, AnswerColumns.decode(AnswerColumns.read(channel, second, inflater)).rows);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test void corruptGroupFailsItsChecksum() throws IOException {
+        Path file = dir.resolve("answers-0000000000001.col");
+        Deflater deflater = new Deflater();
+        AnswerColumns.Builder builder = new AnswerColumns.Builder(4);
+        builder.add(1, "game", 1, CAPITAL, new GameResultStore.Answer("alice", 0, true, 100, 10));
+        ByteBuffer framed = AnswerColumns.frame(1, builder.encode(), deflater);
+        deflater.end();
+        ByteBuffer file1 = ByteBuffer.allocate(AnswerColumns.FILE_HEADER_BYTES + framed.remaining());
+        file1.putInt(AnswerColumns.FILE_MAGIC).putInt(AnswerColumns.VERSION).put(framed);
+        byte[] bytes = file1.array();
+        bytes[bytes.length - 1] ^= 0x55;
+        Files.write(file, bytes);
+
+        AnswerColumns.GroupRef ref = AnswerColumns.groups(file).get(0);
+        Inflater inflater = new Inflater();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> AnswerColumns.read(channel, ref, inflater));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Test void notASegment() throws IOException {
+        Path file = dir.resolve("answers-0000000000001.col");
+        Files.write(file, new byte[] {1, 2, 3});
+        assertTrue(AnswerColumns.groups(file).isEmpty());
+        Files.write(file, new byte[64]);
+        assertTrue(AnswerColumns.groups(file).isEmpty());
+    }
+
+    @Test void exportedAnswersAggregate() throws Exception {
+        // Four rows per group, so a round straddles groups and a partial group is left for shutdown
+        AnswerExport export = new AnswerExport(dir, 4, 1024, 60_000);
+        export.start();
+        export.record("game-1", 1, CAPITAL, List.of(
+                new GameResultStore.Answer("alice", 0, true, 1_000, 900),
+                new GameResultStore.Answer("bob", 1, false, 3_000, 0)));
+        export.record("game-1", 2, PLANET, List.of(
+                new GameResultStore.Answer("alice", 1, true, 500, 950),
+                new GameResultStore.Answer("bob", 1, true, 2_000, 800),
+                new GameResultStore.Answer("carol", 3, false, 40_000, 0)));
+        export.record("game-2", 1, CAPITAL, List.of(
+                new GameResultStore.Answer("dave", 0, true, 250, 990)));
+        export.record("game-2", 2, PLANET, List.of());
+        export.shutdown();
+
+        AnswerQuery.Result result = AnswerQuery.scan(dir, 2);
+        assertEquals(0, result.damaged);
+        assertEquals(2, result.groups);
+        assertEquals(6, result.overall.answers);
+        assertEquals(4, result.overall.correct);
+        assertEquals(3_640, result.overall.points);
+        assertEquals(46_750, result.overall.responseMillis);
+        // 40 s lands in the overflow bucket
+        assertEquals(1, result.overall.histogram[result.overall.histogram.length - 1]);
+
+        AnswerQuery.Totals capital = result.questions.get(CAPITAL.fingerprint());
+        assertEquals(3, capital.answers);
+        assertEquals(2, capital.correct);
+        assertEquals(1, capital.questionId);
+        assertEquals(2, capital.options[0]);
+        assertEquals(1, capital.options[1]);
+
+        AnswerQuery.Totals planet = result.questions.get(PLANET.fingerprint());
+        assertEquals(3, planet.answers);
+        assertEquals(2, planet.options[1]);
+        assertEquals(1, planet.options[3]);
+
+        assertEquals(3, result.categories.get("Geography").answers);
+        assertEquals(3, result.categories.get("Science").answers);
+        assertEquals(2, result.categories.get("Science").correct);
+
+        // More readers than groups give the same totals
+        AnswerQuery.Result wide = AnswerQuery.scan(dir, 8);
+        assertEquals(result.overall.answers, wide.overall.answers);
+        assertEquals(result.overall.points, wide.overall.points);
+    }
+
+    private static byte[] pack(int[] values, int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        AnswerColumns.writePacked(out, values, count);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int varLongBytes(long value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnswerColumns.writeVarLong(new DataOutputStream(bytes), value);
+        return bytes.size();
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrequencySketchTest {
+
+    @Test void countsAccessesUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1_000);
+        assertEquals(0, sketch.frequency("alice"));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("alice");
+            assertEquals(Math.min(i, 15), sketch.frequency("alice"));
+        }
+    }
+
+    @Test void keysCountSeparately() {
+        FrequencySketch sketch = new FrequencySketch(1_000);
+        for (int i = 0; i < 100; i++) {
+            for (int n = 0; n < i % 8; n++) {
+                sketch.increment("player-" + i);
+            }
+        }
+        // Collisions can only raise an estimate, and with this much room they should be rare
+        int exact = 0;
+        for (int i = 0; i < 100; i++) {
+            int frequency = sketch.frequency("player-" + i);
+            assertTrue(frequency >= i % 8, "player-" + i);
+            if (frequency == i % 8) {
+                exact++;
+            }
+        }
+        assertTrue(exact >= 95, exact + " exact estimates");
+    }
+
+    @Test void countsAreHalvedAfterTheSample() {
+        int capacity = 16;
+        FrequencySketch sketch = new FrequencySketch(capacity);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("hot");
+        }
+        // Ten additions per entry trigger the reset; before it, "hot" can only gain from collisions
+        int before = sketch.frequency("hot");
+        int additions = 8;
+        while (sketch.frequency("hot") >= before) {
+            before = sketch.frequency("hot");
+            sketch.increment("one-time-" + additions++);
+            assertTrue(additions <= 10 * capacity, "no reset after " + additions + " additions");
+        }
+        assertEquals(before / 2, sketch.frequency("hot"));
+    }
+}
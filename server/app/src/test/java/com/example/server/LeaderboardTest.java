@@ -0,0 +1,116 @@
+package com.example.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    // A Monday, 00:00 UTC
+    private static final long START = 1_760_918_400_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test void windowsExpireWithTheClock() {
+        AtomicLong clock = new AtomicLong(START);
+        Leaderboard leaderboard = new Leaderboard(null, clock::get);
+        leaderboard.recordGame(Map.of("alice", 10, "bob", 20), null);
+        clock.addAndGet(12 * HOUR);
+        leaderboard.recordGame(Map.of("alice", 5), null);
+
+        clock.set(START + 24 * HOUR);
+        leaderboard.expireWindows();
+        assertEquals(1, leaderboard.size(Leaderboard.DAILY));
+        assertEquals(5, leaderboard.standing(Leaderboard.DAILY, "alice").score());
+        assertEquals(15, leaderboard.standing(Leaderboard.WEEKLY, "alice").score());
+        assertEquals(2, leaderboard.size(Leaderboard.ALL_TIME));
+
+        clock.set(START + 7 * DAY);
+        leaderboard.expireWindows();
+        assertEquals(0, leaderboard.size(Leaderboard.DAILY));
+        assertEquals(0, leaderboard.size(Leaderboard.WEEKLY));
+        assertEquals(new Leaderboard.Standing(1, "bob", 20, 1), leaderboard.standing(Leaderboard.ALL_TIME, "bob"));
+        assertEquals(new Leaderboard.Standing(2, "alice", 15, 2), leaderboard.standing(Leaderboard.ALL_TIME, "alice"));
+    }
+
+    @Test void onlyKnownEventsGetABoard() {
+        Leaderboard leaderboard = new Leaderboard(null, () -> START);
+        leaderboard.recordGame(Map.of("alice", 10), "made-up");
+        assertEquals(0, leaderboard.size("event:made-up"));
+        assertEquals(List.of(Leaderboard.ALL_TIME, Leaderboard.DAILY, Leaderboard.WEEKLY),
+                leaderboard.windowsFor("made-up"));
+
+        assertTrue(leaderboard.openEvent("finals"));
+        assertFalse(leaderboard.openEvent(" "));
+        leaderboard.recordGame(Map.of("alice", 10), "finals");
+        assertEquals(1, leaderboard.size("event:finals"));
+        assertEquals(List.of(Leaderboard.ALL_TIME, Leaderboard.DAILY, Leaderboard.WEEKLY, "event:finals"),
+                leaderboard.windowsFor("finals"));
+    }
+
+    @Test void savedBoardsLoadBack() {
+        Path file = dir.resolve("leaderboard.dat");
+        AtomicLong clock = new AtomicLong(START);
+        Leaderboard leaderboard = new Leaderboard(file, clock::get);
+        leaderboard.openEvent("finals");
+        leaderboard.recordGame(Map.of("alice", 10, "bob", 20), "finals");
+        clock.addAndGet(2 * DAY);
+        leaderboard.recordGame(Map.of("alice", 15, "名前", 7), null);
+        // Only buckets still in the window are saved
+        leaderboard.expireWindows();
+        leaderboard.flush();
+
+        Leaderboard loaded = new Leaderboard(file, clock::get);
+        for (String window : List.of(Leaderboard.ALL_TIME, Leaderboard.DAILY, Leaderboard.WEEKLY, "event:finals")) {
+            assertEquals(leaderboard.top(window, 10), loaded.top(window, 10), window);
+        }
+        assertTrue(loaded.isKnownEvent("finals"));
+
+        // Loaded buckets keep their times and expire as before
+        clock.addAndGet(6 * DAY);
+        loaded.expireWindows();
+        assertEquals(List.of("alice", "名前"), names(loaded.top(Leaderboard.WEEKLY, 10)));
+        assertEquals(3, loaded.size(Leaderboard.ALL_TIME));
+    }
+
+    @Test void otherFileVersionsAreIgnored() throws IOException {
+        Path file = dir.resolve("leaderboard.dat");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x54524c42); // "TRLB"
+            out.writeInt(2);
+            out.writeInt(1);
+            BinaryStrings.write(out, "alice");
+            out.writeLong(30);
+            out.writeInt(3);
+        }
+        Leaderboard leaderboard = new Leaderboard(file, () -> START);
+        assertEquals(0, leaderboard.size(Leaderboard.ALL_TIME));
+    }
+
+    @Test void reportCapsRowCounts() {
+        Leaderboard leaderboard = new Leaderboard(null, () -> START);
+        for (int i = 0; i < 150; i++) {
+            leaderboard.recordGame(Map.of("p" + i, i), null);
+        }
+        Map<String, Object> report = leaderboard.report("p0", Map.of("top", 1_000, "around", 2));
+        assertEquals(150, report.get("players"));
+        assertEquals(100, ((List<?>) report.get("top")).size());
+        assertEquals(3, ((List<?>) report.get("around")).size());
+        assertEquals(150, ((Map<?, ?>) report.get("me")).get("rank"));
+    }
+
+    private static List<String> names(List<Leaderboard.Standing> standings) {
+        return standings.stream().map(Leaderboard.Standing::username).toList();
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeaderboardWindowTest {
+    private static final long BUCKET = 1_000;
+
+    @Test void expiredBucketIsTakenOutOnDrain() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 3, 100);
+        window.record(Map.of("alice", 10, "bob", 5), 0);
+        window.record(Map.of("alice", 3), 1_500);
+        window.record(Map.of("carol", 7), 2_999);
+
+        assertFalse(window.advance(2_999));
+        assertEquals(3, window.ranking().size());
+
+        // Bucket 0 leaves the window but stays counted until drained
+        assertTrue(window.advance(3_000));
+        assertEquals(13, window.ranking().standing("alice").score());
+        assertEquals(2, window.drain(100));
+        assertEquals(0, window.drain(100));
+
+        assertEquals(new Leaderboard.Standing(1, "carol", 7, 1), window.ranking().standing("carol"));
+        assertEquals(new Leaderboard.Standing(2, "alice", 3, 1), window.ranking().standing("alice"));
+        assertNull(window.ranking().standing("bob"));
+    }
+
+    @Test void drainRespectsBudget() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 2, 100);
+        Map<String, Integer> scores = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            scores.put("p" + i, i + 1);
+        }
+        window.record(scores, 0);
+        window.record(Map.of("q", 1), 1_000);
+        window.advance(5_000);
+
+        assertEquals(2, window.drain(2));
+        assertEquals(4, window.ranking().size());
+        assertEquals(2, window.drain(2));
+        assertEquals(2, window.drain(2));
+        assertEquals(0, window.ranking().size());
+    }
+
+    @Test void clockSteppingBackKeepsNewestBucket() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 2, 100);
+        window.record(Map.of("alice", 10), 5_000);
+        window.record(Map.of("alice", 10), 3_000);
+        assertEquals(1, window.copy().size());
+        assertEquals(20, window.ranking().standing("alice").score());
+    }
+
+    @Test void trimDropsLowestAndForgetsTheirBuckets() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 3, 2);
+        window.record(Map.of("alice", 10, "bob", 5), 0);
+        window.record(Map.of("carol", 100), 1_000);
+        assertNull(window.ranking().standing("bob"));
+
+        // Bob comes back with a fresh total; the old bucket must not take his points again
+        window.record(Map.of("bob", 50), 2_000);
+        assertNull(window.ranking().standing("alice"));
+        window.advance(3_000);
+        window.drain(100);
+        assertEquals(new Leaderboard.Standing(1, "carol", 100, 1), window.ranking().standing("carol"));
+        assertEquals(new Leaderboard.Standing(2, "bob", 50, 1), window.ranking().standing("bob"));
+    }
+
+    @Test void trimDuringPartialDrainSkipsForgottenEntries() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 3, 3);
+        window.record(Map.of("a", 10, "b", 5, "d", 1), 0);
+        window.advance(3_000);
+        assertEquals(1, window.drain(1));
+
+        // Pushes out whichever of the still pending players ranks lowest
+        window.record(Map.of("x", 100, "y", 50), 3_000);
+        assertEquals(3, window.ranking().size());
+        window.drain(100);
+
+        List<Leaderboard.Standing> standings = new ArrayList<>();
+        window.ranking().forEach(standings::add);
+        assertEquals(List.of(new Leaderboard.Standing(1, "x", 100, 1), new Leaderboard.Standing(2, "y", 50, 1)),
+                standings);
+    }
+
+    @Test void matchesGamesInsideTheWindow() {
+        Random random = new Random(11);
+        int bucketCount = 4;
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, bucketCount, 1_000);
+        List<long[]> games = new ArrayList<>(); // {time, player, points}
+        long now = 0;
+        for (int step = 0; step < 2_000; step++) {
+            now += random.nextInt(400);
+            int player = random.nextInt(50);
+            int points = random.nextInt(20);
+            window.record(Map.of("p" + player, points), now);
+            games.add(new long[] {now, player, points});
+            if (random.nextInt(10) == 0) {
+                window.advance(now);
+                window.drain(random.nextInt(5));
+            }
+        }
+        window.advance(now);
+        while (window.drain(7) > 0) {
+            // Drains in small slices, as the maintenance thread does
+        }
+
+        long oldest = now - Math.floorMod(now, BUCKET) - (bucketCount - 1) * BUCKET;
+        RankedScores expected = new RankedScores();
+        for (long[] game : games) {
+            if (game[0] >= oldest) {
+                expected.add("p" + game[1], game[2], 1);
+            }
+        }
+        assertEquals(standings(expected), standings(window.ranking()));
+    }
+
+    @Test void restoreRebuildsRanking() {
+        LeaderboardWindow window = new LeaderboardWindow("test", BUCKET, 3, 100);
+        window.record(Map.of("alice", 10, "bob", 5), 0);
+        window.record(Map.of("alice", 3), 1_000);
+
+        LeaderboardWindow restored = new LeaderboardWindow("test", BUCKET, 3, 100);
+        for (LeaderboardWindow.BucketCopy copy : window.copy()) {
+            restored.restore(copy);
+        }
+        assertEquals(standings(window.ranking()), standings(restored.ranking()));
+
+        // Restored buckets still expire
+        restored.advance(3_000);
+        restored.drain(100);
+        assertEquals(new Leaderboard.Standing(1, "alice", 3, 1), restored.ranking().standing("alice"));
+        assertNull(restored.ranking().standing("bob"));
+    }
+
+    private static List<Leaderboard.Standing> standings(RankedScores ranking) {
+        List<Leaderboard.Standing> standings = new ArrayList<>();
+        ranking.forEach(standings::add);
+        return standings;
+    }
+}
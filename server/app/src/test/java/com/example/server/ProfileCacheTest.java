@@ -0,0 +1,212 @@
+package com.example.server;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProfileCacheTest {
+    private final MemoryStore store = new MemoryStore();
+    private ProfileCache cache;
+
+    @AfterEach
+    void stop() {
+        if (cache != null) {
+            cache.shutdown();
+        }
+    }
+
+    @Test void oneTimePlayersDoNotEvictARegular() throws Exception {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            cache.get("regular").get();
+        }
+        // A login storm of players seen once, while the regular keeps playing
+        for (int i = 0; i < 2_000; i++) {
+            cache.get("visitor-" + i).get();
+            if (i % 50 == 0) {
+                assertTrue(cache.get("regular").isDone(), "regular was evicted before visitor-" + i);
+            }
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(1, store.loads("regular"));
+        assertEquals(1, store.loads("visitor-0"));
+    }
+
+    @Test void gamesAreCoalescedIntoOneUpdate() {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        cache.recordGame("alice", 10, null);
+        cache.recordGame("alice", 20, null);
+        cache.recordGame("alice", 5, new byte[] {1});
+        cache.recordGame("bob", 7, null);
+        assertEquals(2, cache.unsavedCount());
+
+        cache.flush();
+        assertEquals(1, store.batches.size());
+        List<ProfileStore.Update> batch = store.batches.get(0);
+        assertEquals(2, batch.size());
+        ProfileStore.Update alice = batch.stream().filter(u -> u.username().equals("alice")).findFirst().orElseThrow();
+        assertEquals(35, alice.score());
+        assertEquals(3, alice.games());
+        assertArrayEquals(new byte[] {1}, alice.seen());
+        assertEquals(0, cache.unsavedCount());
+    }
+
+    @Test void loadDuringSaveCountsTheBatchOnce() throws Exception {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        cache.recordGame("alice", 10, null);
+        store.blockSaves();
+        Thread flusher = new Thread(cache::flush);
+        flusher.start();
+        store.saveStarted.await();
+
+        // The batch is on its way to the store but not in it yet
+        CompletableFuture<PlayerProfile> loaded = cache.get("alice");
+        store.releaseSaves();
+        flusher.join();
+        assertEquals(10, loaded.get(5, TimeUnit.SECONDS).score());
+        assertEquals(10, store.rows.get("alice").score());
+    }
+
+    @Test void saveDuringLoadCountsTheBatchOnce() throws Exception {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        store.rows.put("alice", new PlayerProfile("alice", 100, 4, 0, null));
+        cache.recordGame("alice", 10, null);
+        store.blockLoads();
+        CompletableFuture<PlayerProfile> loaded = cache.get("alice");
+        store.loadStarted.await();
+
+        // The row was read before the batch; the batch must wait and be added exactly once
+        Thread flusher = new Thread(cache::flush);
+        flusher.start();
+        store.releaseLoads();
+        flusher.join();
+        assertEquals(110, loaded.get(5, TimeUnit.SECONDS).score());
+        assertEquals(110, store.rows.get("alice").score());
+        assertEquals(110, cache.get("alice").get().score());
+    }
+
+    @Test void failedBatchIsRetriedWithLaterGames() throws Exception {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        cache.recordGame("alice", 10, null);
+        store.failNext = new SQLException("Connection lost", "08006");
+        cache.flush();
+        assertNull(store.rows.get("alice"));
+        assertEquals(1, cache.unsavedCount());
+        // Still counted for anyone loading the profile meanwhile
+        assertEquals(10, cache.get("alice").get().score());
+
+        cache.recordGame("alice", 5, null);
+        cache.flush();
+        PlayerProfile saved = store.rows.get("alice");
+        assertEquals(15, saved.score());
+        assertEquals(2, saved.games());
+        assertEquals(0, cache.unsavedCount());
+        assertEquals(15, cache.get("alice").get().score());
+    }
+
+    @Test void rowTheDatabaseRefusesIsDropped() {
+        cache = new ProfileCache(store, 100, 1, Long.MAX_VALUE);
+        store.refused = "mallory";
+        cache.recordGame("alice", 10, null);
+        cache.recordGame("mallory", 20, null);
+        cache.recordGame("bob", 30, null);
+        cache.flush();
+        assertEquals(10, store.rows.get("alice").score());
+        assertEquals(30, store.rows.get("bob").score());
+        assertNull(store.rows.get("mallory"));
+        assertEquals(0, cache.unsavedCount());
+
+        int batches = store.batches.size();
+        cache.flush();
+        assertEquals(batches, store.batches.size(), "the refused row came back");
+    }
+
+    /**
+     * Profiles in a map. Saves and loads can be held open to order them
+     * against each other, and a save can fail or refuse one player's row.
+     */
+    private static final class MemoryStore implements ProfileStore {
+        final Map<String, PlayerProfile> rows = new ConcurrentHashMap<>();
+        final List<List<Update>> batches = new ArrayList<>();
+        final Map<String, Integer> loadCounts = new ConcurrentHashMap<>();
+        final CountDownLatch saveStarted = new CountDownLatch(1);
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        private CountDownLatch saveGate = new CountDownLatch(0);
+        private CountDownLatch loadGate = new CountDownLatch(0);
+        volatile SQLException failNext;
+        volatile String refused;
+
+        void blockSaves() {
+            saveGate = new CountDownLatch(1);
+        }
+
+        void releaseSaves() {
+            saveGate.countDown();
+        }
+
+        void blockLoads() {
+            loadGate = new CountDownLatch(1);
+        }
+
+        void releaseLoads() {
+            loadGate.countDown();
+        }
+
+        int loads(String username) {
+            return loadCounts.getOrDefault(username, 0);
+        }
+
+        @Override
+        public PlayerProfile load(String username) {
+            loadCounts.merge(username, 1, Integer::sum);
+            PlayerProfile row = rows.get(username);
+            loadStarted.countDown();
+            await(loadGate);
+            return row;
+        }
+
+        @Override
+        public List<PlayerProfile> loadRecent(int limit) {
+            return List.of();
+        }
+
+        @Override
+        public synchronized void save(Collection<Update> updates) throws SQLException {
+            saveStarted.countDown();
+            await(saveGate);
+            SQLException failure = failNext;
+            if (failure != null) {
+                failNext = null;
+                throw failure;
+            }
+            for (Update update : updates) {
+                if (update.username().equals(refused)) {
+                    throw new SQLException("Value too long", "22001");
+                }
+            }
+            batches.add(List.copyOf(updates));
+            for (Update update : updates) {
+                rows.merge(update.username(), PlayerProfile.empty(update.username()).plus(update),
+                        (stored, added) -> stored.plus(update));
+            }
+        }
+
+        private static void await(CountDownLatch gate) {
+            try {
+                assertTrue(gate.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
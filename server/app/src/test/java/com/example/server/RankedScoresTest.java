@@ -0,0 +1,162 @@
+package com.example.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankedScoresTest {
+
+    /**
+     * Plain totals, sorted on every check: the ranking must agree with them.
+     */
+    private static final class Reference {
+        final Map<String, long[]> totals = new HashMap<>();
+
+        void add(String username, long points, int games) {
+            long[] total = totals.computeIfAbsent(username, key -> new long[2]);
+            total[0] += points;
+            total[1] += games;
+            if (total[1] <= 0) {
+                totals.remove(username);
+            }
+        }
+
+        List<Leaderboard.Standing> sorted() {
+            List<Map.Entry<String, long[]>> entries = new ArrayList<>(totals.entrySet());
+            entries.sort(Comparator.<Map.Entry<String, long[]>>comparingLong(e -> -e.getValue()[0])
+                    .thenComparing(Map.Entry::getKey));
+            List<Leaderboard.Standing> standings = new ArrayList<>(entries.size());
+            for (Map.Entry<String, long[]> entry : entries) {
+                standings.add(new Leaderboard.Standing(standings.size() + 1, entry.getKey(),
+                        entry.getValue()[0], (int) entry.getValue()[1]));
+            }
+            return standings;
+        }
+    }
+
+    @Test void emptyRanking() {
+        RankedScores ranking = new RankedScores();
+        assertEquals(0, ranking.size());
+        assertNull(ranking.last());
+        assertNull(ranking.standing("nobody"));
+        assertTrue(ranking.top(10).isEmpty());
+        assertTrue(ranking.around("nobody", 3).isEmpty());
+        assertFalse(ranking.remove("nobody"));
+    }
+
+    @Test void tiesAreBrokenByName() {
+        RankedScores ranking = new RankedScores();
+        ranking.add("carol", 10, 1);
+        ranking.add("alice", 10, 1);
+        ranking.add("bob", 10, 1);
+        ranking.add("dave", 20, 1);
+        assertEquals(List.of("dave", "alice", "bob", "carol"), names(ranking.top(10)));
+        assertEquals(3, ranking.standing("bob").rank());
+        assertEquals("carol", ranking.last());
+    }
+
+    @Test void playerLeavesWhenGamesDropToZero() {
+        RankedScores ranking = new RankedScores();
+        ranking.add("alice", 10, 2);
+        ranking.add("alice", -4, -1);
+        assertEquals(new Leaderboard.Standing(1, "alice", 6, 1), ranking.standing("alice"));
+        ranking.add("alice", -6, -1);
+        assertNull(ranking.standing("alice"));
+        assertEquals(0, ranking.size());
+    }
+
+    @Test void aroundIsClippedAtBothEnds() {
+        RankedScores ranking = new RankedScores();
+        for (int i = 0; i < 10; i++) {
+            ranking.add("p" + i, 100 - i, 1);
+        }
+        assertEquals(List.of("p0", "p1", "p2"), names(ranking.around("p0", 2)));
+        assertEquals(List.of("p3", "p4", "p5", "p6", "p7"), names(ranking.around("p5", 2)));
+        assertEquals(List.of("p7", "p8", "p9"), names(ranking.around("p9", 2)));
+        assertEquals(List.of("p4"), names(ranking.around("p4", 0)));
+    }
+
+    @Test void matchesSortedReferenceUnderRandomUpdates() {
+        Random random = new Random(42);
+        RankedScores ranking = new RankedScores();
+        Reference reference = new Reference();
+        for (int step = 0; step < 20_000; step++) {
+            // Few players and few distinct scores, so ties and re-ranking are common
+            String username = "player" + random.nextInt(300);
+            int op = random.nextInt(10);
+            if (op == 0) {
+                boolean expected = reference.totals.remove(username) != null;
+                assertEquals(expected, ranking.remove(username));
+            } else if (op == 1 && reference.totals.containsKey(username)) {
+                long[] total = reference.totals.get(username);
+                // Takes the player's games back to zero, as an expired bucket does
+                ranking.add(username, -total[0], (int) -total[1]);
+                reference.add(username, -total[0], (int) -total[1]);
+            } else {
+                long points = random.nextInt(5) * 10 - 10;
+                ranking.add(username, points, 1);
+                reference.add(username, points, 1);
+            }
+            if (step % 500 == 0) {
+                assertMatches(reference, ranking, random);
+            }
+        }
+        assertMatches(reference, ranking, random);
+    }
+
+    @Test void largeRankingStaysConsistent() {
+        Random random = new Random(7);
+        RankedScores ranking = new RankedScores();
+        Reference reference = new Reference();
+        for (int i = 0; i < 50_000; i++) {
+            String username = "u" + random.nextInt(20_000);
+            long points = random.nextInt(1_000);
+            ranking.add(username, points, 1);
+            reference.add(username, points, 1);
+        }
+        for (int i = 0; i < 5_000; i++) {
+            String username = "u" + random.nextInt(20_000);
+            assertEquals(reference.totals.remove(username) != null, ranking.remove(username));
+        }
+        assertMatches(reference, ranking, random);
+    }
+
+    private static void assertMatches(Reference reference, RankedScores ranking, Random random) {
+        List<Leaderboard.Standing> expected = reference.sorted();
+        assertEquals(expected.size(), ranking.size());
+
+        List<Leaderboard.Standing> all = new ArrayList<>();
+        ranking.forEach(all::add);
+        assertEquals(expected, all);
+        assertEquals(expected, ranking.top(expected.size() + 5));
+        assertEquals(expected.isEmpty() ? null : expected.get(expected.size() - 1).username(), ranking.last());
+
+        for (Leaderboard.Standing standing : expected) {
+            assertEquals(standing, ranking.standing(standing.username()));
+        }
+        for (int i = 0; i < 20 && !expected.isEmpty(); i++) {
+            Leaderboard.Standing me = expected.get(random.nextInt(expected.size()));
+            int radius = random.nextInt(6);
+            int from = Math.max(0, me.rank() - 1 - radius);
+            int to = Math.min(expected.size(), me.rank() + radius);
+            assertEquals(expected.subList(from, to), ranking.around(me.username(), radius));
+
+            int count = random.nextInt(15);
+            assertEquals(expected.subList(0, Math.min(count, expected.size())), ranking.top(count));
+        }
+    }
+
+    private static List<String> names(List<Leaderboard.Standing> standings) {
+        List<String> names = new ArrayList<>();
+        for (Leaderboard.Standing standing : standings) {
+            names.add(standing.username());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.server;
+
+import com.example.common.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test void recordsReplayInOrder() throws IOException {
+        RoomJournal journal = new RoomJournal(dir, 1 << 20);
+        journal.start();
+        journal.createRoom("room-1", "game-1", "Lobby", "alice", false, null, "hard");
+        journal.joinRoom("room-1", "bob");
+        RoomJournal.Mark mark = journal.mark();
+        journal.submitAnswer("room-1", "bob", 1, 2, 1_500, true);
+        journal.roundResult("room-1", 1, 2, new int[] {0, 0, 1, 0});
+        journal.gameOver("room-1", "game-1", Map.of("bob", 900));
+        journal.shutdown();
+
+        List<RoomJournal.Entry> entries = new ArrayList<>();
+        RoomJournal.read(dir, entries::add);
+        assertEquals(List.of(MessageType.CREATE_ROOM, MessageType.JOIN_ROOM, MessageType.SUBMIT_ANSWER,
+                MessageType.ROUND_RESULT, MessageType.GAME_OVER), entries.stream().map(RoomJournal.Entry::type).toList());
+        assertEquals("Lobby", entries.get(0).data().get("roomName"));
+        assertEquals("hard", entries.get(0).data().get("difficulty"));
+        assertEquals(1_500L, entries.get(2).data().get("responseMillis"));
+        assertEquals(Map.of("bob", 900), entries.get(4).data().get("scores"));
+
+        List<RoomJournal.Entry> after = new ArrayList<>();
+        RoomJournal.read(dir, mark, after::add);
+        assertEquals(entries.subList(2, 5).stream().map(RoomJournal.Entry::position).toList(),
+                after.stream().map(RoomJournal.Entry::position).toList());
+    }
+
+    @Test void concurrentAppendsAcrossRollsReplayInOrder() throws Exception {
+        // Room for only a handful of records per segment, so rolls race the spare being prepared
+        RoomJournal journal = new RoomJournal(dir, 512, Integer.MAX_VALUE, 0);
+        journal.start();
+        int threads = 8;
+        int perThread = 3_000;
+        CountDownLatch ready = new CountDownLatch(threads);
+        List<Thread> writers = new ArrayList<>();
+        List<List<RoomJournal.Mark>> marks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String roomId = "room-" + t;
+            List<RoomJournal.Mark> roomMarks = new ArrayList<>();
+            marks.add(roomMarks);
+            Thread writer = new Thread(() -> {
+                ready.countDown();
+                try {
+                    ready.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    if (i % 500 == 0) {
+                        roomMarks.add(journal.mark());
+                    }
+                    journal.joinRoom(roomId, Integer.toString(i));
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        journal.shutdown();
+
+        Map<String, Integer> last = new HashMap<>();
+        List<RoomJournal.Entry> entries = new ArrayList<>();
+        RoomJournal.read(dir, entries::add);
+        for (RoomJournal.Entry entry : entries) {
+            int sequence = Integer.parseInt((String) entry.data().get("username"));
+            Integer previous = last.put(entry.roomId(), sequence);
+            assertTrue(previous == null || previous < sequence,
+                    entry.roomId() + " replayed " + sequence + " after " + previous);
+        }
+        for (int t = 0; t < threads; t++) {
+            assertEquals(perThread - 1, last.get("room-" + t));
+        }
+
+        // A room's marks split its records where they were taken
+        for (int t = 0; t < threads; t++) {
+            String roomId = "room-" + t;
+            List<RoomJournal.Mark> roomMarks = marks.get(t);
+            for (int m = 0; m < roomMarks.size(); m++) {
+                int from = m * 500;
+                for (RoomJournal.Entry entry : entries) {
+                    if (entry.roomId().equals(roomId)) {
+                        int sequence = Integer.parseInt((String) entry.data().get("username"));
+                        assertEquals(sequence < from, entry.before(roomMarks.get(m)),
+                                roomId + " record " + sequence + " against mark " + from);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test void sealedSegmentsOutliveTheCountUntilTheyExpire() throws IOException {
+        RoomJournal keeping = new RoomJournal(dir, 512, 1, TimeUnit.HOURS.toMillis(1));
+        keeping.start();
+        for (int i = 0; i < 200; i++) {
+            keeping.joinRoom("room-1", Integer.toString(i));
+        }
+        keeping.retain();
+        keeping.shutdown();
+        List<RoomJournal.Entry> entries = new ArrayList<>();
+        RoomJournal.read(dir, entries::add);
+        assertEquals(200, entries.size());
+
+        RoomJournal expiring = new RoomJournal(dir, 512, 0, 0);
+        expiring.start();
+        expiring.joinRoom("room-1", "200");
+        expiring.retain();
+        expiring.shutdown();
+        entries.clear();
+        RoomJournal.read(dir, entries::add);
+        assertEquals(List.of("200"), entries.stream().map(entry -> entry.data().get("username")).toList());
+    }
+}
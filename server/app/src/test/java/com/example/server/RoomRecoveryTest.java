@@ -0,0 +1,127 @@
+package com.example.server;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomRecoveryTest {
+    private static final long ROUND_MILLIS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    private final List<Question> questions = List.of(
+            new Question(0, "Science", "First?", List.of("a", "b", "c", "d"), (byte) 1, "easy"),
+            new Question(1, "History", "Second?", List.of("a", "b", "c", "d"), (byte) 2, "medium"),
+            new Question(2, "Sports", "Third?", List.of("a", "b", "c", "d"), (byte) 3, "hard"));
+    private final QuestionBank bank = new QuestionBank(1, "test", new HeapQuestionStore(questions), 0);
+
+    @Test void snapshotPlusJournalTailRebuildsTheRoom() throws Exception {
+        Path snapshotFile = dir.resolve("rooms.snapshot");
+        RoomJournal journal = new RoomJournal(dir.resolve("journal"), 1 << 20);
+        journal.start();
+        RoomRecovery recovery = new RoomRecovery(snapshotFile, journal);
+
+        // Round 1 is played and scored before the snapshot
+        journal.createRoom("room-1", "game-1", "Quiz", "alice", false, null, "easy");
+        journal.joinRoom("room-1", "bob");
+        journal.joinRoom("room-1", "carol");
+        journal.newQuestion("room-1", 1, questions.get(0), ROUND_MILLIS);
+        journal.submitAnswer("room-1", "alice", 1, 1, 2_000, true);
+        journal.submitAnswer("room-1", "bob", 1, 0, 1_000, true);
+        journal.roundResult("room-1", 1, 1, new int[] {1, 1, 0, 0});
+
+        RoomRecovery.RoomState copy = new RoomRecovery.RoomState("room-1");
+        copy.gameId = "game-1";
+        copy.roomName = "Quiz";
+        copy.host = "alice";
+        copy.difficulty = "easy";
+        copy.started = true;
+        copy.questionIndex = 0;
+        copy.roundClosed = true;
+        copy.roundMillis = ROUND_MILLIS;
+        for (Question question : questions) {
+            copy.questions.add(new RoomRecovery.QuestionRef(question.id(), question.fingerprint()));
+        }
+        copy.scores.put("alice", GameRoom.points(2_000, ROUND_MILLIS, "easy"));
+        copy.scores.put("bob", 0);
+        copy.scores.put("carol", 0);
+        copy.seats.addAll(List.of("alice", "bob", "carol"));
+        copy.mark = journal.mark();
+        recovery.start(() -> CompletableFuture.completedFuture(List.of(copy)));
+        recovery.shutdown(); // Snapshots are taken by hand below
+        recovery.snapshot();
+        assertTrue(Files.exists(snapshotFile));
+
+        playTail(journal);
+        journal.shutdown();
+
+        Map<String, RoomRecovery.RoomState> recovered = recoverAll(recovery);
+        assertEquals(Set.of("room-1", "room-2"), recovered.keySet());
+        assertNotNull(recovered.get("room-1").mark, "room-1 should come from the snapshot");
+        assertPlayedThrough(recovered.get("room-1"));
+        assertFinishedRoomIsDropped(recovered.get("room-2"));
+
+        // Without the snapshot the same room is rebuilt from the journal alone
+        Files.delete(snapshotFile);
+        recovered = recoverAll(recovery);
+        RoomRecovery.RoomState fromJournal = recovered.get("room-1");
+        assertNull(fromJournal.mark);
+        assertEquals("easy", fromJournal.difficulty);
+        assertPlayedThrough(fromJournal);
+    }
+
+    /**
+     * Round 2 is scored after the snapshot and round 3 is still open when the
+     * server stops. A second room is created, played out and ended.
+     */
+    private void playTail(RoomJournal journal) {
+        journal.newQuestion("room-1", 2, questions.get(1), ROUND_MILLIS);
+        journal.submitAnswer("room-1", "bob", 2, 2, 3_000, true);
+        journal.submitAnswer("room-1", "alice", 1, 1, 3_500, true); // Answer to the old round
+        journal.submitAnswer("room-1", "carol", 2, 2, 11_000, false); // Refused as late
+        journal.roundResult("room-1", 2, 2, new int[] {0, 0, 1, 0});
+        journal.newQuestion("room-1", 3, questions.get(2), ROUND_MILLIS);
+        journal.submitAnswer("room-1", "alice", 3, 3, 1_000, true);
+        journal.submitAnswer("room-1", "carol", 3, 0, 4_000, true);
+        journal.leaveRoom("room-1", "carol");
+
+        journal.createRoom("room-2", "game-2", "Finals", "dave", false, null, "hard");
+        journal.joinRoom("room-2", "erin");
+        journal.gameOver("room-2", "game-2", Map.of("dave", 0, "erin", 0));
+    }
+
+    private void assertPlayedThrough(RoomRecovery.RoomState state) {
+        assertTrue(state.catchUp(bank));
+        assertEquals(Map.of("alice", GameRoom.points(2_000, ROUND_MILLIS, "easy"),
+                "bob", GameRoom.points(3_000, ROUND_MILLIS, "medium"),
+                "carol", 0), state.scores);
+        assertEquals(Set.of("alice", "bob"), state.seats);
+        assertEquals(Map.of("alice", new RoomRecovery.PendingAnswer("alice", 3, 1_000)), state.answers);
+        assertEquals(2, state.questionIndex);
+        assertFalse(state.roundClosed);
+        assertTrue(state.started);
+    }
+
+    private void assertFinishedRoomIsDropped(RoomRecovery.RoomState state) {
+        assertEquals("hard", state.difficulty);
+        assertEquals("dave", state.host);
+        assertFalse(state.catchUp(bank));
+    }
+
+    private static Map<String, RoomRecovery.RoomState> recoverAll(RoomRecovery recovery) {
+        Map<String, RoomRecovery.RoomState> rooms = new LinkedHashMap<>();
+        for (RoomRecovery.RoomState state : recovery.recover()) {
+            rooms.put(state.roomId(), state);
+        }
+        return rooms;
+    }
+}